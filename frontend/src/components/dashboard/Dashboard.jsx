@@ -1,7 +1,5 @@
 import React, { useState, useEffect } from 'react';
-import StockService from '../../services/stock.service';
-import ProduitService from '../../services/produit.service';
-import MappingLivreurService from '../../services/mapping-livreur.service';
+import apiService from '../../services/api.service';
 import { Link } from 'react-router-dom'; // Pour les liens
 
 // Composant simple pour une carte KPI
@@ -38,65 +36,45 @@ const KpiCard = ({ title, value, icon, linkTo, loading, error }) => (
 );
 
 const Dashboard = () => {
-  const [stockCount, setStockCount] = useState(0);
-  const [produitCount, setProduitCount] = useState(0);
-  const [livreurCount, setLivreurCount] = useState(0);
-  // Ajoutez des états pour le chargement et les erreurs par KPI
-  const [loadingStocks, setLoadingStocks] = useState(true);
-  const [loadingProduits, setLoadingProduits] = useState(true);
-  const [loadingLivreurs, setLoadingLivreurs] = useState(true);
-  const [errorStocks, setErrorStocks] = useState('');
-  const [errorProduits, setErrorProduits] = useState('');
-  const [errorLivreurs, setErrorLivreurs] = useState('');
+  // Compteurs fournis en une seule requête par /api/dashboard/summary
+  const [summary, setSummary] = useState(null);
+  const [loading, setLoading] = useState(true);
+  const [error, setError] = useState('');
 
   useEffect(() => {
-    const fetchData = async () => {
-      // Fetch Stock Count
+    const fetchData = async (silencieux) => {
       try {
-        setLoadingStocks(true);
-        setErrorStocks('');
-        // Idéalement, utiliser une API qui renvoie juste le compte
-        const response = await StockService.getAllStocks();
-        setStockCount(response.data.length);
+        if (!silencieux) setLoading(true);
+        setError('');
+        const response = await apiService.getDashboardSummary();
+        setSummary(response.data.summary);
       } catch (err) {
-        console.error("Erreur chargement stocks:", err);
-        setErrorStocks('Chargement impossible');
+        console.error("Erreur chargement tableau de bord:", err);
+        setError('Chargement impossible');
       } finally {
-        setLoadingStocks(false);
+        setLoading(false);
       }
+    };
 
-      // Fetch Produit Count
-      try {
-        setLoadingProduits(true);
-        setErrorProduits('');
-        // Idéalement, utiliser une API qui renvoie juste le compte
-        const response = await ProduitService.getAllProduits();
-        setProduitCount(response.data.length);
-      } catch (err) {
-         console.error("Erreur chargement produits:", err);
-         setErrorProduits('Chargement impossible');
-      } finally {
-        setLoadingProduits(false);
-      }
+    fetchData(false);
 
-      // Fetch Livreur Count
-      try {
-         setLoadingLivreurs(true);
-         setErrorLivreurs('');
-         // Idéalement, utiliser une API qui renvoie juste le compte
-         const response = await MappingLivreurService.getAllMappings();
-         setLivreurCount(response.data.length);
-      } catch (err) {
-         console.error("Erreur chargement livreurs:", err);
-         setErrorLivreurs('Chargement impossible');
-      } finally {
-         setLoadingLivreurs(false);
-      }
+    // Rechargement sur changement de stock (au plus un toutes les 2 s), sans interroger le serveur en boucle
+    let rechargement = null;
+    const desabonner = apiService.abonnerFluxStocks(() => {
+      if (rechargement) return;
+      rechargement = setTimeout(() => {
+        rechargement = null;
+        fetchData(true);
+      }, 2000);
+    });
+    return () => {
+      desabonner();
+      clearTimeout(rechargement);
     };
-
-    fetchData();
   }, []); // Le tableau vide assure que cela s'exécute une seule fois au montage
 
+  const compteurs = summary ? summary.compteurs : {};
+
   return (
     <div className="container mt-4">
       <h2 className="mb-4">Tableau de Bord</h2>
@@ -104,27 +82,27 @@ const Dashboard = () => {
       <div className="row">
         <KpiCard
           title="Nombre de Stocks"
-          value={stockCount}
+          value={compteurs.stocks}
           icon="fa-warehouse"
           linkTo="/stocks"
-          loading={loadingStocks}
-          error={errorStocks}
+          loading={loading}
+          error={error}
         />
         <KpiCard
           title="Nombre de Produits"
-          value={produitCount}
+          value={compteurs.produits}
           icon="fa-tags"
           linkTo="/produits"
-          loading={loadingProduits}
-          error={errorProduits}
+          loading={loading}
+          error={error}
         />
         <KpiCard
           title="Nombre de Livreurs"
-          value={livreurCount}
+          value={compteurs.livreurs}
           icon="fa-truck"
           linkTo="/mapping-livreurs"
-          loading={loadingLivreurs}
-          error={errorLivreurs}
+          loading={loading}
+          error={error}
         />
         {/* Ajoutez d'autres KpiCard ici si nécessaire */}
         {/* Exemple: Produits en alerte (nécessiterait une API spécifique) */}
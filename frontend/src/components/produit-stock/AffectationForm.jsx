@@ -24,6 +24,7 @@ const AffectationForm = () => {
   const [produits, setProduits] = useState([]);
   const [stocks, setStocks] = useState([]);
   const [produitId, setProduitId] = useState("");
+  const [rechercheProduit, setRechercheProduit] = useState("");
   const [stockId, setStockId] = useState("");
   const [quantite, setQuantite] = useState(1);
   const [loading, setLoading] = useState(false);
@@ -31,19 +32,26 @@ const AffectationForm = () => {
   const navigate = useNavigate();
 
   useEffect(() => {
-    fetchProduits();
     fetchStocks();
   }, []);
 
-  const fetchProduits = async () => {
-    try {
-      const response = await apiService.getAllProduits();
-      setProduits(response.data);
-    } catch (error) {
-      console.error("Erreur:", error);
-      setMessage("Erreur lors du chargement des produits");
+  // Produits proposés: recherche côté serveur (nom ou référence), relancée 250 ms après la dernière frappe
+  useEffect(() => {
+    if (!rechercheProduit.trim()) {
+      setProduits([]);
+      return;
     }
-  };
+    const minuteur = setTimeout(async () => {
+      try {
+        const response = await apiService.rechercherProduits(rechercheProduit);
+        setProduits(response.data.produits);
+      } catch (error) {
+        console.error("Erreur:", error);
+        setMessage("Erreur lors de la recherche des produits");
+      }
+    }, 250);
+    return () => clearTimeout(minuteur);
+  }, [rechercheProduit]);
 
   const fetchStocks = async () => {
     try {
@@ -101,6 +109,13 @@ const AffectationForm = () => {
           <form onSubmit={handleSubmit}>
             <div className="form-group">
               <label htmlFor="produitId">Produit</label>
+              <input
+                type="text"
+                className="form-control mb-2"
+                placeholder="Rechercher par nom ou référence..."
+                value={rechercheProduit}
+                onChange={(e) => setRechercheProduit(e.target.value)}
+              />
               <select
                 className="form-control"
                 id="produitId"
@@ -108,7 +123,9 @@ const AffectationForm = () => {
                 onChange={(e) => setProduitId(e.target.value)}
                 required
               >
-                <option value="">Sélectionnez un produit</option>
+                <option value="">
+                  {rechercheProduit.trim() ? `Sélectionnez un produit (${produits.length} trouvés)` : "Saisissez un nom ou une référence"}
+                </option>
                 {produits.map((produit) => (
                   <option key={produit.id} value={produit.id}>
                     {produit.nom} ({produit.reference})
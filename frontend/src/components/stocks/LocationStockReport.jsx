@@ -66,9 +66,10 @@ const LocationStockReport = () => {
     const results = new Map();
     const promises = stocksToFetch.map(async (stock) => {
       try {
-        const response = await apiService.getProduitsByStock(stock.id);
+        // Seuls la référence et la quantité sont utiles ici
+        const response = await apiService.getProduitsByStock(stock.id, 'reference,quantite');
         const products = (response.data || []).map(item => ({
-            reference: String(item.produit?.reference || item.reference || 'N/A'),
+            reference: String(item.reference || 'N/A'),
             quantity: Number(item.quantite) || 0
         }));
         results.set(stock.id, { products: products.sort((a, b) => a.reference.localeCompare(b.reference)), error: false });
@@ -52,27 +52,20 @@ const StockDetail = () => {
       console.log("Récupération des produits pour le stock ID:", id);
       const response = await apiService.getProduitsByStock(id);
 
-      // La réponse contient des objets ProduitStock
+      // La réponse contient des vues à plat: { id, produitId, nom, reference, stockId, quantite, seuilAlerte, seuilEffectif }
       const rawProduitsStock = response.data || [];
       console.log("Données brutes ProduitStock reçues:", rawProduitsStock);
 
       // Traitement pour extraire les infos nécessaires (SANS la note)
-      const produitsProcessed = rawProduitsStock.map(item => {
-        const produitData = item.produit;
-        if (!produitData) {
-            console.warn("Produit manquant dans l'item ProduitStock:", item);
-            return null;
-        }
-        return {
-          id: produitData.id,
-          produitStockId: item.id,
-          nom: produitData.nom || 'Nom Inconnu',
-          reference: produitData.reference || 'Ref Inconnue',
-          quantite: item.quantite !== undefined ? item.quantite : 0,
-          // Pas de note ici
-          seuilAlerte: produitData.seuilAlerte
-        };
-      }).filter(p => p !== null);
+      const produitsProcessed = rawProduitsStock.map(item => ({
+        id: item.produitId,
+        produitStockId: item.id,
+        nom: item.nom || 'Nom Inconnu',
+        reference: item.reference || 'Ref Inconnue',
+        quantite: item.quantite !== undefined ? item.quantite : 0,
+        // Seuil du stock, sinon celui du produit
+        seuilAlerte: item.seuilEffectif
+      }));
 
       console.log("Produits traités:", produitsProcessed);
       setProduitsAvecNoms(produitsProcessed);
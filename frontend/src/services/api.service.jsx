@@ -35,6 +35,9 @@ axiosInstance.interceptors.request.use(
 // Définition du service API qui utilise l'instance Axios configurée
 const apiService = {
 
+  // === Tableau de bord ===
+  getDashboardSummary: () => axiosInstance.get('/dashboard/summary'),
+
   // === Stocks ===
   getAllStocks: () => axiosInstance.get('/stocks'),
   getStockById: (id) => axiosInstance.get(`/stocks/${id}`),
@@ -42,22 +45,37 @@ const apiService = {
   updateStock: (id, stock) => axiosInstance.put(`/stocks/${id}`, stock),
   deleteStock: (id) => axiosInstance.delete(`/stocks/${id}`),
   getStocksByCountry: () => axiosInstance.get('/stocks/by-country'), // Endpoint pour rapport
+  // Page par curseur: filtres { nom, pays, ville, typeStock, prestataire }, tri: id, nom, pays, ville, prestataire.
+  // La réponse contient page.elements et page.curseurSuivant (null sur la dernière page)
+  getStocksPage: (filtres = {}, taille = 50, curseur = null, tri = 'id', sens = 'asc') =>
+    axiosInstance.get('/stocks', { params: { ...filtres, taille, curseur, tri, sens } }),
 
   // === Produits ===
   getAllProduits: () => axiosInstance.get('/produits'), // Une seule définition
+  // Page par curseur: filtres { nom, reference }, tri: id, nom, reference
+  getProduitsPage: (filtres = {}, taille = 50, curseur = null, tri = 'id', sens = 'asc') =>
+    axiosInstance.get('/produits', { params: { ...filtres, taille, curseur, tri, sens } }),
+  // Autocomplétion: produits classés par pertinence (référence exacte, puis préfixes des mots du nom)
+  rechercherProduits: (q, limite = 20) => axiosInstance.get('/produits/search', { params: { q, limite } }),
   getProduitById: (id) => axiosInstance.get(`/produits/${id}`),
   createProduit: (produit) => axiosInstance.post('/produits', produit),
   updateProduit: (id, produit) => axiosInstance.put(`/produits/${id}`, produit),
   deleteProduit: (id) => axiosInstance.delete(`/produits/${id}`),
+  modifierSeuilAlerteProduit: (id, seuil) => axiosInstance.put(`/produits/${id}/seuil-alerte`, null, { params: { seuil } }),
   getStatsProduit: (produitId) => axiosInstance.get(`/produits/${produitId}/stats`),
   getStatsProduits: (produitIds) => axiosInstance.post('/produits/stats', { produitIds }),
 
   // === ProduitStock / Affectation ===
-  getProduitsByStock: (stockId) => {
+  // fields: champs à renvoyer, séparés par des virgules (ex: 'reference,quantite'); tous par défaut
+  getProduitsByStock: (stockId, fields = null) => {
     console.log("API: getProduitsByStock pour stockId:", stockId);
-    return axiosInstance.get(`/produit-stock/stock/${stockId}/produits`);
+    return axiosInstance.get(`/produit-stock/stock/${stockId}/produits`, { params: { fields } });
   },
 
+  // Page par curseur des produits d'un stock: filtres { nom, reference }, tri: id, quantite
+  getProduitsByStockPage: (stockId, filtres = {}, taille = 50, curseur = null, tri = 'id', sens = 'asc') =>
+    axiosInstance.get(`/produit-stock/stock/${stockId}/produits`, { params: { ...filtres, taille, curseur, tri, sens } }),
+
   // Affecter un produit à un stock (SANS note)
   affecterProduit: (produitId, stockId, quantite) => {
     console.log(`API: affecterProduit - pId:${produitId}, sId:${stockId}, qte:${quantite}`);
@@ -71,6 +89,13 @@ const apiService = {
     });
   },
 
+  // Affecter en masse: lignes = [{ produitId, stockId, quantite }, ...]
+  // Les associations existantes voient leur quantité remplacée
+  affecterProduitsEnMasse: (lignes) => {
+    console.log(`API: affecterProduitsEnMasse - ${lignes.length} lignes`);
+    return axiosInstance.post('/produit-stock/affecter-masse', lignes);
+  },
+
   // Modifier SEULEMENT la quantité
   modifierQuantite: (produitId, stockId, nouvelleQuantite) => {
     console.log(`API: modifierQuantite - pId:${produitId}, sId:${stockId}, qte:${nouvelleQuantite}`);
@@ -83,6 +108,14 @@ const apiService = {
     });
   },
 
+  // Seuil d'alerte propre à un stock (seuil null: celui du produit s'applique)
+  modifierSeuilAlerteStock: (produitId, stockId, seuil) => {
+    console.log(`API: modifierSeuilAlerteStock - pId:${produitId}, sId:${stockId}, seuil:${seuil}`);
+    return axiosInstance.put('/produit-stock/seuil-alerte', null, {
+      params: { produitId, stockId, seuil }
+    });
+  },
+
   annulerAffectation: (produitId, stockId) => {
     console.log(`API: annulerAffectation - pId:${produitId}, sId:${stockId}`);
     return axiosInstance.delete('/produit-stock/annuler-affectation', {
@@ -115,6 +148,95 @@ const apiService = {
   getStockStatistics: () => {
     console.log("API: getStockStatistics");
     return axiosInstance.get('/produit-stock/statistics');
+  },
+
+  // Détail paginé des produits d'un stock pour les statistiques
+  getStockStatisticsDetails: (stockId, page = 0, taille = 50) => {
+    console.log(`API: getStockStatisticsDetails - sId:${stockId}, page:${page}`);
+    return axiosInstance.get(`/produit-stock/statistics/${stockId}/produits`, {
+      params: { page, taille }
+    });
+  },
+
+  // Les lignes les plus critiques (plus faible rapport quantité / seuil), au total ou par pays
+  getLignesCritiques: (limite = 50, seuil = 10, pays = null, parPays = false) => {
+    console.log(`API: getLignesCritiques - limite:${limite}, pays:${pays}, parPays:${parPays}`);
+    return axiosInstance.get('/produit-stock/critiques', {
+      params: { limite, seuil, pays, parPays }
+    });
+  },
+
+  // Jours de couverture estimés (consommation moyenne des livraisons), du plus urgent au moins urgent
+  getCouvertures: (limite = 50) => {
+    console.log(`API: getCouvertures - limite:${limite}`);
+    return axiosInstance.get('/produit-stock/couverture', {
+      params: { limite }
+    });
+  },
+
+  // === Historique (dates au format AAAA-MM-JJ) ===
+  getHistoriqueProduit: (produitId, debut, fin, stockId) => {
+    console.log(`API: getHistoriqueProduit - pId:${produitId}, ${debut} -> ${fin}`);
+    return axiosInstance.get(`/historique/produits/${produitId}`, {
+      params: { debut, fin, stockId }
+    });
+  },
+
+  getHistoriqueStock: (stockId, debut, fin, produitId) => {
+    console.log(`API: getHistoriqueStock - sId:${stockId}, ${debut} -> ${fin}`);
+    return axiosInstance.get(`/historique/stocks/${stockId}`, {
+      params: { debut, fin, produitId }
+    });
+  },
+
+  // === Flux des changements de stock (SSE) ===
+  // Lu avec fetch: EventSource ne permet pas d'envoyer l'en-tête Authorization.
+  // onEvenement(nom, donnees) reçoit "changements" ([{ stockId, produitId, quantite }], quantite null:
+  // association supprimée) et "resync" (recharger les données). Reconnexion automatique.
+  // Retourne la fonction de désabonnement.
+  abonnerFluxStocks: (onEvenement) => {
+    const controleur = new AbortController();
+    const lire = async () => {
+      while (!controleur.signal.aborted) {
+        try {
+          const reponse = await fetch(`${API_URL}/stream/stocks`, {
+            headers: { ...authHeader(), Accept: 'text/event-stream' },
+            signal: controleur.signal
+          });
+          if (!reponse.ok) {
+            throw new Error(`HTTP ${reponse.status}`);
+          }
+          const lecteur = reponse.body.pipeThrough(new TextDecoderStream()).getReader();
+          let tampon = '';
+          for (;;) {
+            const { value, done } = await lecteur.read();
+            if (done) break;
+            tampon += value;
+            let fin;
+            // Un événement se termine par une ligne vide
+            while ((fin = tampon.indexOf('\n\n')) >= 0) {
+              const bloc = tampon.slice(0, fin);
+              tampon = tampon.slice(fin + 2);
+              let nom = 'message';
+              const donnees = [];
+              bloc.split('\n').forEach((ligne) => {
+                if (ligne.startsWith('event:')) nom = ligne.slice(6).trim();
+                else if (ligne.startsWith('data:')) donnees.push(ligne.slice(5));
+              });
+              if (donnees.length > 0) {
+                onEvenement(nom, JSON.parse(donnees.join('\n')));
+              }
+            }
+          }
+        } catch (err) {
+          if (controleur.signal.aborted) return;
+          console.error("Flux des stocks interrompu:", err);
+        }
+        await new Promise((resolve) => setTimeout(resolve, 5000));
+      }
+    };
+    lire();
+    return () => controleur.abort();
   }
 
 };
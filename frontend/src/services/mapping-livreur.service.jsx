@@ -12,6 +12,15 @@ class MappingLivreurService {
     return axios.get(API_URL, { headers: authHeader() });
   }
 
+  // Page par curseur: filtres { nom, pays, ville, typeStock, prestataire }, tri: id, nom, pays, ville, prestataire.
+  // La réponse contient page.elements et page.curseurSuivant (null sur la dernière page)
+  getMappingsPage(filtres = {}, taille = 50, curseur = null, tri = 'id', sens = 'asc') {
+    return axios.get(API_URL, {
+      headers: authHeader(),
+      params: { ...filtres, taille, curseur, tri, sens }
+    });
+  }
+
   /**
    * Récupérer un mapping par son ID
    * @param {number} id - ID du mapping
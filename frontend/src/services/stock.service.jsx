@@ -49,6 +49,18 @@ class StockService {
     });
   }
 
+  // Export global en ZIP (un fichier par stock); filtres: { pays, ville, typeStock, actif }, format: 'xlsx' ou 'csv'
+  exportStocks(filtres = {}, format = 'xlsx') {
+    return axios.get(`${API_URL}/stocks/export`, {
+      headers: {
+        ...authHeader(),
+        'Accept': 'application/zip'
+      },
+      params: { ...filtres, format },
+      responseType: 'blob'
+    });
+  }
+
   importStocks(file) {
     const formData = new FormData();
     formData.append('file', file);
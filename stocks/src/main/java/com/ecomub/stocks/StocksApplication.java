@@ -5,10 +5,12 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(scanBasePackages = "com.ecomub.stocks")
 @EntityScan(basePackages = "com.ecomub.stocks.model")
 @EnableJpaRepositories(basePackages = "com.ecomub.stocks.repository")
+@EnableScheduling
 public class StocksApplication {
     public static void main(String[] args) {
         SpringApplication.run(StocksApplication.class, args);
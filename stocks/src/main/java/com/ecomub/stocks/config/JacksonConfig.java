@@ -0,0 +1,46 @@
+package com.ecomub.stocks.config;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Champs partiels des réponses (paramètre fields=nom,quantite,...): les classes annotées
+ * {@code @JsonFilter(FILTRE_CHAMPS)} ne sérialisent que les champs demandés. Sans paramètre,
+ * tous les champs sont écrits.
+ */
+@Configuration
+public class JacksonConfig {
+
+    public static final String FILTRE_CHAMPS = "champs";
+
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer filtreChampsParDefaut() {
+        return builder -> builder.filters(
+                new SimpleFilterProvider().addFilter(FILTRE_CHAMPS, SimpleBeanPropertyFilter.serializeAll()));
+    }
+
+    /**
+     * Enveloppe un corps de réponse pour n'en écrire que les champs demandés.
+     * @param fields Liste de champs séparés par des virgules (null ou vide: tous les champs)
+     */
+    public static MappingJacksonValue champs(Object corps, String fields) {
+        MappingJacksonValue valeur = new MappingJacksonValue(corps);
+        if (fields != null && !fields.isBlank()) {
+            Set<String> champs = Arrays.stream(fields.split(","))
+                    .map(String::trim)
+                    .filter(champ -> !champ.isEmpty())
+                    .collect(Collectors.toSet());
+            valeur.setFilters(new SimpleFilterProvider()
+                    .addFilter(FILTRE_CHAMPS, SimpleBeanPropertyFilter.filterOutAllExcept(champs)));
+        }
+        return valeur;
+    }
+}
@@ -1,6 +1,7 @@
 package com.ecomub.stocks.config;
 
 import jakarta.annotation.Resource;
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -51,6 +52,9 @@ public class SecurityConfig {
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers("/api/auth/**").permitAll()
+                        // Fin des réponses écrites en continu (StreamingResponseBody): la requête
+                        // d'origine a déjà été authentifiée, le JwtAuthFilter ne repasse pas sur ce dispatch
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         //.requestMatchers("/api/test/public").permitAll()
                         .requestMatchers("/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
                         .anyRequest().authenticated()
@@ -91,9 +95,11 @@ public class SecurityConfig {
                 "x-auth-token",
                 "Access-Control-Allow-Headers",
                 "Access-Control-Allow-Origin",
-                "Accept"
+                "Accept",
+                "Idempotency-Key",
+                "If-None-Match"
         ));
-        configuration.setExposedHeaders(Arrays.asList("Authorization", "x-auth-token"));
+        configuration.setExposedHeaders(Arrays.asList("Authorization", "x-auth-token", "Idempotent-Replayed", "ETag"));
         configuration.setAllowCredentials(true);
         configuration.setMaxAge(3600L);
 
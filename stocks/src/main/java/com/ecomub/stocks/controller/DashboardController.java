@@ -0,0 +1,35 @@
+package com.ecomub.stocks.controller;
+
+import com.ecomub.stocks.service.DashboardService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/dashboard")
+@CrossOrigin(origins = "http://localhost:3000/", maxAge = 3600)
+public class DashboardController {
+
+    @Autowired
+    private DashboardService dashboardService;
+
+    // Compteurs et listes du tableau de bord en une seule requête
+    @GetMapping("/summary")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getSummary() {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "summary", dashboardService.getResume()
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(Map.of(
+                "success", false,
+                "message", "Erreur lors du calcul du tableau de bord: " + e.getMessage()
+            ));
+        }
+    }
+}
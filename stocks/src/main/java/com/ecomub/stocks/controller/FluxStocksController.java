@@ -0,0 +1,40 @@
+package com.ecomub.stocks.controller;
+
+import com.ecomub.stocks.service.FluxStocksService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stream")
+@CrossOrigin(origins = "http://localhost:3000/", maxAge = 3600)
+public class FluxStocksController {
+
+    @Autowired
+    private FluxStocksService fluxStocksService;
+
+    // Flux SSE des changements de quantité (événements "changements" et "resync")
+    @GetMapping(value = "/stocks", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> streamStocks() {
+        try {
+            return ResponseEntity.ok()
+                    .header("X-Accel-Buffering", "no") // Pas de mise en tampon par un proxy nginx
+                    .body(fluxStocksService.abonner());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("success", false, "message", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.internalServerError()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of("success", false, "message", "Ouverture du flux impossible: " + e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.ecomub.stocks.controller;
+
+import com.ecomub.stocks.service.HistoriqueStockService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/historique")
+@CrossOrigin(origins = "http://localhost:3000/", maxAge = 3600)
+public class HistoriqueStockController {
+
+    @Autowired
+    private HistoriqueStockService historiqueStockService;
+
+    // Historique des quantités d'un produit (dans tous les stocks, ou dans un seul)
+    @GetMapping("/produits/{produitId}")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getHistoriqueProduit(
+            @PathVariable Long produitId,
+            @RequestParam(required = false) Long stockId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate debut,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin) {
+        return historique(produitId, stockId, debut, fin);
+    }
+
+    // Historique des quantités des produits d'un stock (tous, ou un seul)
+    @GetMapping("/stocks/{stockId}")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getHistoriqueStock(
+            @PathVariable Long stockId,
+            @RequestParam(required = false) Long produitId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate debut,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fin) {
+        return historique(produitId, stockId, debut, fin);
+    }
+
+    // Capturer immédiatement le snapshot du jour (en plus du job planifié)
+    @PostMapping("/snapshots")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> capturerSnapshot() {
+        try {
+            Map<String, Long> resultat = historiqueStockService.capturer(LocalDate.now());
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Snapshot enregistré",
+                "data", resultat
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors de l'enregistrement du snapshot: " + e.getMessage()
+            ));
+        }
+    }
+
+    private ResponseEntity<?> historique(Long produitId, Long stockId, LocalDate debut, LocalDate fin) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "historique", historiqueStockService.getHistorique(produitId, stockId, debut, fin)
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", e.getMessage()
+            ));
+        }
+    }
+}
@@ -1,11 +1,17 @@
 package com.ecomub.stocks.controller;
 
+import com.ecomub.stocks.config.JacksonConfig;
 import com.ecomub.stocks.model.MappingLivreur;
+import com.ecomub.stocks.model.TypeStock;
 import com.ecomub.stocks.service.MappingLivreurService;
+import com.ecomub.stocks.service.VersionsDonnees;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.HashMap;
@@ -21,12 +27,55 @@ public class MappingLivreurController {
     @Autowired
     private MappingLivreurService mappingLivreurService;
 
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    // 304 sans requête si l'ETag du client est à jour
     @GetMapping
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public List<MappingLivreur> getAllMappings() {
-        return mappingLivreurService.getAllMappings();
+    public ResponseEntity<?> getAllMappings(@RequestParam(required = false) String fields, WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.MAPPING_LIVREUR);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .eTag(etag)
+            .body(JacksonConfig.champs(mappingLivreurService.getAllMappings(), fields));
     }
     
+    // Page de mappings par curseur (?taille=..., puis ?curseur=<curseurSuivant>), filtrée et triée côté serveur
+    @GetMapping(params = "taille")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getMappingsPage(
+            @RequestParam(required = false) String nom,
+            @RequestParam(required = false) String pays,
+            @RequestParam(required = false) String ville,
+            @RequestParam(required = false) TypeStock typeStock,
+            @RequestParam(required = false) String prestataire,
+            @RequestParam(required = false) String tri,
+            @RequestParam(required = false) String sens,
+            @RequestParam(required = false) String curseur,
+            @RequestParam int taille,
+            @RequestParam(required = false) String fields,
+            WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.MAPPING_LIVREUR);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(JacksonConfig.champs(Map.of(
+                "success", true,
+                "page", mappingLivreurService.getMappingsPage(nom, pays, ville, typeStock, prestataire, tri, sens, curseur, taille)
+            ), fields));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors de la lecture de la page de mappings: " + e.getMessage()
+            ));
+        }
+    }
+
     @GetMapping("/{id}")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
     public ResponseEntity<MappingLivreur> getMappingById(@PathVariable Long id) {
@@ -1,13 +1,22 @@
 package com.ecomub.stocks.controller;
 
+import com.ecomub.stocks.config.JacksonConfig;
 import com.ecomub.stocks.model.Produit;
 import com.ecomub.stocks.service.ProduitService;
+import com.ecomub.stocks.service.RapportFluxService;
+import com.ecomub.stocks.service.RechercheProduitsService;
+import com.ecomub.stocks.service.VersionsDonnees;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -22,6 +31,15 @@ public class ProduitController {
     @Autowired
     private ProduitService produitService;
 
+    @Autowired
+    private RapportFluxService rapportFluxService;
+
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    @Autowired
+    private RechercheProduitsService rechercheProduitsService;
+
     // Créer un produit
     @PostMapping
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
@@ -29,11 +47,74 @@ public class ProduitController {
         return produitService.createProduit(produit);
     }
 
-    // Récupérer tous les produits
+    // Récupérer tous les produits (304 sans requête si l'ETag du client est à jour)
     @GetMapping
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public List<Produit> getAllProduits() {
-        return produitService.getAllProduits();
+    public ResponseEntity<?> getAllProduits(@RequestParam(required = false) String fields, WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .eTag(etag)
+            .body(JacksonConfig.champs(produitService.getAllProduits(), fields));
+    }
+
+    // Page de produits par curseur (?taille=..., puis ?curseur=<curseurSuivant>), filtrée et triée côté serveur
+    @GetMapping(params = "taille")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getProduitsPage(
+            @RequestParam(required = false) String nom,
+            @RequestParam(required = false) Integer reference,
+            @RequestParam(required = false) String tri,
+            @RequestParam(required = false) String sens,
+            @RequestParam(required = false) String curseur,
+            @RequestParam int taille,
+            @RequestParam(required = false) String fields,
+            WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(JacksonConfig.champs(Map.of(
+                "success", true,
+                "page", produitService.getProduitsPage(nom, reference, tri, sens, curseur, taille)
+            ), fields));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors de la lecture de la page de produits: " + e.getMessage()
+            ));
+        }
+    }
+
+    // Récupérer tous les produits, écrits en continu depuis un curseur
+    @GetMapping(params = "stream=true")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<StreamingResponseBody> streamAllProduits() {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(rapportFluxService::ecrireProduits);
+    }
+
+    // Autocomplétion: produits par référence exacte ou par préfixes des mots du nom (index en mémoire)
+    @GetMapping("/search")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> rechercherProduits(@RequestParam String q,
+                                                @RequestParam(defaultValue = "20") int limite) {
+        try {
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "produits", rechercheProduitsService.rechercher(q, limite)
+            ));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors de la recherche de produits: " + e.getMessage()
+            ));
+        }
     }
 
     // Récupérer un produit par ID
@@ -50,6 +131,20 @@ public class ProduitController {
         return produitService.updateProduit(id, produitDetails);
     }
 
+    // Définir le seuil d'alerte d'un produit (sans paramètre: le seuil global s'applique)
+    @PutMapping("/{id}/seuil-alerte")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> modifierSeuilAlerte(@PathVariable Long id, @RequestParam(required = false) Integer seuil) {
+        try {
+            return ResponseEntity.ok(produitService.modifierSeuilAlerte(id, seuil));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", e.getMessage()
+            ));
+        }
+    }
+
     // Supprimer un produit
     @DeleteMapping("/{id}")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
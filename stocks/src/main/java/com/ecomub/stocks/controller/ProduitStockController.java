@@ -1,12 +1,26 @@
 package com.ecomub.stocks.controller;
 
 
+import com.ecomub.stocks.config.JacksonConfig;
+import com.ecomub.stocks.model.AffectationLigne;
+import com.ecomub.stocks.model.CouvertureStock;
 import com.ecomub.stocks.model.ProduitStock;
+import com.ecomub.stocks.model.TransfertRequest;
+import com.ecomub.stocks.service.ConsommationService;
+import com.ecomub.stocks.service.IdempotenceService;
 import com.ecomub.stocks.service.ProduitStockService;
+import com.ecomub.stocks.service.RapportFluxService;
+import com.ecomub.stocks.service.RollupService;
+import com.ecomub.stocks.service.VersionsDonnees;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
@@ -20,44 +34,159 @@ public class ProduitStockController {
     @Autowired
     private ProduitStockService produitStockService;
 
+    // Les endpoints de mutation acceptent un en-tête Idempotency-Key: une requête rejouée
+    // avec la même clé (et la même requête) reçoit la réponse mémorisée sans être réappliquée
+    @Autowired
+    private IdempotenceService idempotenceService;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private ConsommationService consommationService;
+
+    // ETag des rapports: 304 sans calcul tant que leurs données n'ont pas changé
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    // Variantes ?stream=true: la réponse JSON est écrite au fil d'un curseur
+    @Autowired
+    private RapportFluxService rapportFluxService;
+
     // Affecter un produit à un stock avec une quantité
     @PostMapping("/affecter")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
     public ResponseEntity<?> affecterProduitAuStock(
             @RequestParam Long produitId,
             @RequestParam Long stockId,
-            @RequestParam int quantite) {
-        try {
-            // Vérifier si l'association existe déjà
-            Optional<ProduitStock> existingAssociation = produitStockService.findByStockAndProduit(stockId, produitId);
+            @RequestParam int quantite,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        return idempotenceService.executer(cleIdempotence, "affecter", List.of(produitId, stockId, quantite), () -> {
+            try {
+                // Vérifier si l'association existe déjà
+                Optional<ProduitStock> existingAssociation = produitStockService.findByStockAndProduit(stockId, produitId);
+            
+                if (existingAssociation.isPresent()) {
+                    return ResponseEntity.badRequest().body(Map.of(
+                        "success", false,
+                        "message", "Ce produit est déjà affecté à ce stock"
+                    ));
+                }
+
+                // Si pas d'association existante, procéder à l'affectation
+                ProduitStock produitStock = produitStockService.affecterProduitAuStock(produitId, stockId, quantite);
             
-            if (existingAssociation.isPresent()) {
+                return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Produit affecté avec succès",
+                    "data", produitStock
+                ));
+            } catch (RuntimeException e) {
                 return ResponseEntity.badRequest().body(Map.of(
                     "success", false,
-                    "message", "Ce produit est déjà affecté à ce stock"
+                    "message", e.getMessage()
                 ));
             }
+        });
+    }
 
-            // Si pas d'association existante, procéder à l'affectation
-            ProduitStock produitStock = produitStockService.affecterProduitAuStock(produitId, stockId, quantite);
-            
-            return ResponseEntity.ok(Map.of(
+    // Affecter en masse une matrice (produit, stock, quantité), avec mise à jour des associations existantes
+    @PostMapping("/affecter-masse")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> affecterEnMasse(
+            @RequestBody List<AffectationLigne> lignes,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        return idempotenceService.executer(cleIdempotence, "affecter-masse", lignes, () -> {
+            try {
+                Map<String, Object> resultat = produitStockService.affecterEnMasse(lignes);
+                return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Affectations enregistrées avec succès",
+                    "data", resultat
+                ));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+                ));
+            }
+        });
+    }
+
+    // Transférer des quantités d'un stock vers un autre, en une seule transaction
+    @PostMapping("/transfert")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> transfererStock(
+            @RequestBody TransfertRequest demande,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        return idempotenceService.executer(cleIdempotence, "transfert", demande, () -> {
+            try {
+                Map<String, Object> resultat = produitStockService.transfererStock(demande);
+                return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Transfert effectué avec succès",
+                    "data", resultat
+                ));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+                ));
+            }
+        });
+    }
+
+    @GetMapping("/stock/{stockId}/produits")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getProduitsByStock(@PathVariable Long stockId,
+                                                @RequestParam(required = false) String fields,
+                                                WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT_STOCK, TypeDonnee.PRODUIT);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .eTag(etag)
+            .body(JacksonConfig.champs(produitStockService.getProduitsByStock(stockId), fields));
+    }
+
+    // Page par curseur des produits d'un stock (?taille=..., puis ?curseur=<curseurSuivant>)
+    @GetMapping(value = "/stock/{stockId}/produits", params = "taille")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getProduitsByStockPage(
+            @PathVariable Long stockId,
+            @RequestParam(required = false) String nom,
+            @RequestParam(required = false) Integer reference,
+            @RequestParam(required = false) String tri,
+            @RequestParam(required = false) String sens,
+            @RequestParam(required = false) String curseur,
+            @RequestParam int taille,
+            @RequestParam(required = false) String fields,
+            WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT_STOCK, TypeDonnee.PRODUIT, TypeDonnee.STOCK);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(JacksonConfig.champs(Map.of(
                 "success", true,
-                "message", "Produit affecté avec succès",
-                "data", produitStock
-            ));
-        } catch (RuntimeException e) {
+                "page", produitStockService.getProduitsByStockPage(stockId, nom, reference, tri, sens, curseur, taille)
+            ), fields));
+        } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(Map.of(
                 "success", false,
-                "message", e.getMessage()
+                "message", "Erreur lors de la lecture de la page de produits du stock: " + e.getMessage()
             ));
         }
     }
 
-    @GetMapping("/stock/{stockId}/produits")
+    @GetMapping(value = "/stock/{stockId}/produits", params = "stream=true")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public List<ProduitStock> getProduitsByStock(@PathVariable Long stockId) {
-        return produitStockService.getProduitsByStock(stockId);
+    public ResponseEntity<StreamingResponseBody> streamProduitsByStock(@PathVariable Long stockId) {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(sortie -> rapportFluxService.ecrireProduitsParStock(stockId, sortie));
     }
     
     // Modifier la quantité d'un produit dans un stock
@@ -66,25 +195,49 @@ public class ProduitStockController {
     public ResponseEntity<?> modifierQuantite(
             @RequestParam Long produitId,
             @RequestParam Long stockId,
-            @RequestParam("modification") int quantite) {
+            @RequestParam("modification") int quantite,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        return idempotenceService.executer(cleIdempotence, "modifier-quantite", List.of(produitId, stockId, quantite), () -> {
+            try {
+                ProduitStock produitStock = produitStockService.modifierQuantite(produitId, stockId, quantite);
+                return ResponseEntity.ok(produitStock);
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "message", e.getMessage(),
+                    "success", false
+                ));
+            }
+        });
+    }
+    
+    // Définir le seuil d'alerte d'un produit dans un stock (sans seuil: celui du produit s'applique)
+    @PutMapping("/seuil-alerte")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> modifierSeuilAlerte(
+            @RequestParam Long produitId,
+            @RequestParam Long stockId,
+            @RequestParam(required = false) Integer seuil) {
         try {
-            ProduitStock produitStock = produitStockService.modifierQuantite(produitId, stockId, quantite);
-            return ResponseEntity.ok(produitStock);
+            return ResponseEntity.ok(produitStockService.modifierSeuilAlerte(produitId, stockId, seuil));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of(
-                "message", e.getMessage(),
-                "success", false
+                "success", false,
+                "message", e.getMessage()
             ));
         }
     }
-    
+
     // Générer un rapport des produits par pays
     @GetMapping("/rapport-par-pays")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public ResponseEntity<?> genererRapportParPays() {
+    public ResponseEntity<?> genererRapportParPays(WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.STOCK, TypeDonnee.PRODUIT_STOCK);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
         try {
             Map<String, Object> rapport = produitStockService.genererRapportParPays();
-            return ResponseEntity.ok(Map.of(
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(Map.of(
                 "success", true,
                 "message", "Rapport généré avec succès",
                 "rapport", rapport
@@ -97,6 +250,14 @@ public class ProduitStockController {
         }
     }
     
+    @GetMapping(value = "/rapport-par-pays", params = "stream=true")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<StreamingResponseBody> streamRapportParPays() {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(rapportFluxService::ecrireRapportParPays);
+    }
+
     // Récupérer les produits à stock faible (en-dessous du seuil)
     @GetMapping("/stock-faible")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
@@ -116,12 +277,61 @@ public class ProduitStockController {
         }
     }
 
+    // Les lignes les plus critiques (plus faible rapport quantité / seuil), au total ou par pays
+    @GetMapping("/critiques")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getLignesCritiques(
+            @RequestParam(defaultValue = "50") int limite,
+            @RequestParam(defaultValue = "10") int seuil,
+            @RequestParam(required = false) String pays,
+            @RequestParam(defaultValue = "false") boolean parPays,
+            WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            Map<String, Object> critiques = produitStockService.getLignesCritiques(limite, seuil, pays, parPays);
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(Map.of(
+                "success", true,
+                "critiques", critiques
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors du classement des lignes critiques: " + e.getMessage()
+            ));
+        }
+    }
+
+    // Associations classées par jours de couverture (les premières à s'épuiser d'abord), tous stocks confondus
+    @GetMapping("/couverture")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getCouvertures(@RequestParam(defaultValue = "50") int limite) {
+        try {
+            List<CouvertureStock> couvertures = consommationService.getCouvertures(limite);
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "couvertures", couvertures
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors du calcul des jours de couverture: " + e.getMessage()
+            ));
+        }
+    }
+
     @GetMapping("/statistics")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public ResponseEntity<?> getStockStatistics() {
+    public ResponseEntity<?> getStockStatistics(WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
         try {
             Map<String, Object> stats = produitStockService.getStockStatistics();
-            return ResponseEntity.ok(Map.of(
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(Map.of(
                 "success", true,
                 "statistics", stats
             ));
@@ -133,22 +343,73 @@ public class ProduitStockController {
         }
     }
 
-    @DeleteMapping("/annuler-affectation")
+    @GetMapping(value = "/statistics", params = "stream=true")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public ResponseEntity<?> annulerAffectation(
-            @RequestParam Long produitId,
-            @RequestParam Long stockId) {
+    public ResponseEntity<StreamingResponseBody> streamStockStatistics() {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(rapportFluxService::ecrireStatistiques);
+    }
+
+    // Détail paginé des produits d'un stock (chargé à la demande depuis les statistiques)
+    @GetMapping("/statistics/{stockId}/produits")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getDetailsStatistiques(
+            @PathVariable Long stockId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int taille) {
         try {
-            produitStockService.annulerAffectation(produitId, stockId);
+            Map<String, Object> details = produitStockService.getDetailsStatistiques(stockId, page, taille);
             return ResponseEntity.ok(Map.of(
                 "success", true,
-                "message", "Affectation annulée avec succès"
+                "details", details
             ));
-        } catch (RuntimeException e) {
+        } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of(
                 "success", false,
-                "message", e.getMessage()
+                "message", "Erreur lors du chargement du détail des statistiques: " + e.getMessage()
+            ));
+        }
+    }
+
+    // Recalculer entièrement les agrégats par localisation et compter les écarts constatés
+    @PostMapping("/rollups/reconstruire")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> reconstruireRollups() {
+        try {
+            Map<String, Long> resultat = rollupService.reconstruire();
+            return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Agrégats reconstruits",
+                "data", resultat
+            ));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors de la reconstruction des agrégats: " + e.getMessage()
             ));
         }
     }
+
+    @DeleteMapping("/annuler-affectation")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> annulerAffectation(
+            @RequestParam Long produitId,
+            @RequestParam Long stockId,
+            @RequestHeader(value = IdempotenceService.EN_TETE, required = false) String cleIdempotence) {
+        return idempotenceService.executer(cleIdempotence, "annuler-affectation", List.of(produitId, stockId), () -> {
+            try {
+                produitStockService.annulerAffectation(produitId, stockId);
+                return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Affectation annulée avec succès"
+                ));
+            } catch (RuntimeException e) {
+                return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()
+                ));
+            }
+        });
+    }
 }
@@ -1,18 +1,24 @@
 package com.ecomub.stocks.controller;
 
 
+import com.ecomub.stocks.config.JacksonConfig;
 import com.ecomub.stocks.model.Stock;
+import com.ecomub.stocks.model.TypeStock;
+import com.ecomub.stocks.service.ExportStocksService;
+import com.ecomub.stocks.service.RapportFluxService;
 import com.ecomub.stocks.service.StockService;
+import com.ecomub.stocks.service.VersionsDonnees;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayInputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -25,6 +31,16 @@ public class StockController {
     @Autowired
     private StockService stockService;
 
+    @Autowired
+    private RapportFluxService rapportFluxService;
+
+    @Autowired
+    private ExportStocksService exportStocksService;
+
+    // Les GET de listes et de rapports répondent 304 sans requête tant que leurs données n'ont pas changé
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
     // Créer un stock
     @PostMapping
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
@@ -35,8 +51,56 @@ public class StockController {
     // Récupérer tous les stocks
     @GetMapping
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public List<Stock> getAllStocks() {
-        return stockService.getAllStocks();
+    public ResponseEntity<?> getAllStocks(@RequestParam(required = false) String fields, WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.STOCK);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .eTag(etag)
+            .body(JacksonConfig.champs(stockService.getAllStocks(), fields));
+    }
+
+    // Page de stocks par curseur (?taille=..., puis ?curseur=<curseurSuivant>), filtrée et triée côté serveur
+    @GetMapping(params = "taille")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> getStocksPage(
+            @RequestParam(required = false) String nom,
+            @RequestParam(required = false) String pays,
+            @RequestParam(required = false) String ville,
+            @RequestParam(required = false) TypeStock typeStock,
+            @RequestParam(required = false) String prestataire,
+            @RequestParam(required = false) String tri,
+            @RequestParam(required = false) String sens,
+            @RequestParam(required = false) String curseur,
+            @RequestParam int taille,
+            @RequestParam(required = false) String fields,
+            WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.STOCK);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
+        try {
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(JacksonConfig.champs(Map.of(
+                "success", true,
+                "page", stockService.getStocksPage(nom, pays, ville, typeStock, prestataire, tri, sens, curseur, taille)
+            ), fields));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "Erreur lors de la lecture de la page de stocks: " + e.getMessage()
+            ));
+        }
+    }
+
+    // Récupérer tous les stocks, écrits en continu depuis un curseur
+    @GetMapping(params = "stream=true")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<StreamingResponseBody> streamAllStocks() {
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(rapportFluxService::ecrireStocks);
     }
 
     // Récupérer un stock par ID
@@ -49,10 +113,18 @@ public class StockController {
     // Récupérer les stocks groupés par pays
     @GetMapping("/by-country")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public ResponseEntity<Map<String, List<Stock>>> getStocksByCountry() {
+    public ResponseEntity<Map<String, List<Stock>>> getStocksByCountry(WebRequest requete) {
         try {
-            Map<String, List<Stock>> stocksByCountry = stockService.getStocksByCountry();
-            return ResponseEntity.ok(stocksByCountry);
+            // ETag de l'instantané servi, qui peut précéder la dernière écriture
+            StockService.StocksParPays stocksByCountry = stockService.getStocksByCountry();
+            String etag = versionsDonnees.etag(stocksByCountry.version());
+            if (requete.checkNotModified(etag)) {
+                return null;
+            }
+            return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(stocksByCountry.groupes());
         } catch (Exception e) {
             return ResponseEntity.badRequest().build();
         }
@@ -102,33 +174,75 @@ public class StockController {
         }
     }
 
-    // Exporter les détails d'un stock
+    // Exporter les détails d'un stock, écrits directement dans la réponse
     @GetMapping("/export/{id}")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public ResponseEntity<Resource> exportStockDetails(@PathVariable Long id) {
+    public ResponseEntity<StreamingResponseBody> exportStockDetails(@PathVariable Long id) {
+        // Vérifié avant l'écriture: une fois la réponse commencée, l'erreur ne peut plus être renvoyée
+        if (stockService.getStockById(id).isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("Content-Disposition", "attachment; filename=stock_details.xlsx");
+
+        return ResponseEntity.ok()
+            .headers(headers)
+            .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
+            .body(sortie -> stockService.exportStockDetails(id, sortie));
+    }
+
+
+    // Exporter plusieurs stocks (filtres optionnels) dans une archive ZIP, un fichier par stock
+    @GetMapping("/export")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> exportStocks(
+            @RequestParam(required = false) String pays,
+            @RequestParam(required = false) String ville,
+            @RequestParam(required = false) TypeStock typeStock,
+            @RequestParam(required = false) Boolean actif,
+            @RequestParam(defaultValue = ExportStocksService.FORMAT_XLSX) String format) {
         try {
-            ByteArrayInputStream excel = stockService.exportStockDetails(id);
-            
+            String formatFichier = exportStocksService.verifierFormat(format);
+            StreamingResponseBody corps = sortie ->
+                    exportStocksService.exporterStocks(pays, ville, typeStock, actif, formatFichier, sortie);
+
             HttpHeaders headers = new HttpHeaders();
-            headers.add("Content-Disposition", "attachment; filename=stock_details.xlsx");
-            
+            headers.add("Content-Disposition", "attachment; filename=stocks_export.zip");
             return ResponseEntity.ok()
                 .headers(headers)
-                .contentType(MediaType.parseMediaType("application/vnd.ms-excel"))
-                .body(new InputStreamResource(excel));
-                
-        } catch (Exception e) {
-            return ResponseEntity.badRequest().build();
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .body(corps);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
         }
     }
 
+    // Rapport par localisation écrit en continu, produit par produit (même format)
+    @GetMapping(value = "/report/by-location", params = "stream=true")
+    @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
+    public ResponseEntity<?> streamStockReportByLocation(@RequestParam String groupBy) {
+        try {
+            String critere = rapportFluxService.verifierGroupBy(groupBy);
+            StreamingResponseBody corps = sortie -> rapportFluxService.ecrireRapportParLocalisation(critere, sortie);
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(corps);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
+        }
+    }
 
     @GetMapping("/report/by-location")
     @PreAuthorize("hasAuthority('GESTIONNAIRE_STOCK')")
-    public ResponseEntity<?> getStockReportByLocation(@RequestParam String groupBy) {
+    public ResponseEntity<?> getStockReportByLocation(@RequestParam String groupBy, WebRequest requete) {
+        String etag = versionsDonnees.etag(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT);
+        if (requete.checkNotModified(etag)) {
+            return null;
+        }
         try {
             Map<String, Object> report = stockService.generateStockReportByLocation(groupBy);
-            return ResponseEntity.ok(report);
+            return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(etag)
+                .body(report);
         } catch (IllegalArgumentException e) {
             // Erreur si groupBy est invalide
             return ResponseEntity.badRequest().body(Map.of("success", false, "message", e.getMessage()));
@@ -0,0 +1,17 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ligne d'une affectation en masse: un produit, un stock et une quantité.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AffectationLigne {
+    private Long produitId;
+    private Long stockId;
+    private Integer quantite;
+}
@@ -0,0 +1,18 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Quantité courante d'une association (stock, produit) diffusée aux abonnés du flux des stocks.
+ * Une quantité null signifie que l'association n'existe plus.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangementStock {
+    private Long stockId;
+    private Long produitId;
+    private Integer quantite;
+}
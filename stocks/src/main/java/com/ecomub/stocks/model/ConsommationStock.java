@@ -0,0 +1,43 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Moyenne mobile exponentielle de la consommation journalière (livraisons) d'un produit dans un stock.
+ *
+ * L'état est de taille fixe et mis à jour en O(1) à chaque lot de livraisons appliqué: la moyenne est
+ * exprimée au dernierJour, et décroît d'un facteur (1 - lissage) par jour sans livraison.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "consommation_stock", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_consommation_stock", columnNames = {"stock_id", "produit_id"})
+})
+public class ConsommationStock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stock_id", nullable = false)
+    private Long stockId;
+
+    @Column(name = "produit_id", nullable = false)
+    private Long produitId;
+
+    // Consommation journalière moyenne au dernierJour
+    @Column(name = "moyenne_journaliere", nullable = false)
+    private double moyenneJournaliere;
+
+    // Premier jour observé: ses livraisons initialisent la moyenne avec un poids plein
+    @Column(name = "premier_jour", nullable = false)
+    private LocalDate premierJour;
+
+    @Column(name = "dernier_jour", nullable = false)
+    private LocalDate dernierJour;
+}
@@ -0,0 +1,24 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Jours de couverture d'une association: quantité en stock divisée par la consommation journalière estimée.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CouvertureStock {
+    private Long stockId;
+    private String stockNom;
+    private String ville;
+    private String pays;
+    private Long produitId;
+    private Integer produitReference;
+    private String produitNom;
+    private Integer quantite;
+    private Double consommationJournaliere;
+    private Double joursCouverture;
+}
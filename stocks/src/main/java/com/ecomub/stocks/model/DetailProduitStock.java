@@ -0,0 +1,20 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Projection d'une association pour le détail paginé des statistiques d'un stock.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DetailProduitStock {
+    private Long produitStockId;
+    private Long produitId;
+    private String nom;
+    private Integer reference;
+    private Integer quantite;
+    private Integer seuil;
+}
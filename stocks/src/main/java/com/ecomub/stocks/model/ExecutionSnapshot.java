@@ -0,0 +1,33 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Trace d'un snapshot journalier: le premier snapshot borne la période couverte par l'historique.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "execution_snapshot")
+public class ExecutionSnapshot {
+
+    @Id
+    @Column(name = "date_snapshot")
+    private LocalDate dateSnapshot;
+
+    // Nombre d'associations présentes lors du snapshot
+    @Column(nullable = false)
+    private long lignes;
+
+    // Nombre de lignes écrites dans historique_stock (créations, modifications, suppressions)
+    @Column(nullable = false)
+    private long changements;
+
+    @Column(name = "date_execution", nullable = false)
+    private LocalDateTime dateExecution;
+}
@@ -0,0 +1,39 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/**
+ * Historique journalier des quantités, encodé en delta: une ligne n'est écrite que les jours où
+ * la quantité d'une association (stock, produit) a changé depuis le snapshot précédent.
+ * La quantité à une date D est celle de la dernière ligne datée au plus tard de D.
+ * Une quantité null indique que l'association a été supprimée ce jour-là.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "historique_stock", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_historique_produit_stock_date", columnNames = {"produit_id", "stock_id", "date_snapshot"})
+}, indexes = {
+    @Index(name = "idx_historique_stock_produit_date", columnList = "stock_id, produit_id, date_snapshot")
+})
+public class HistoriqueStock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stock_id", nullable = false)
+    private Long stockId;
+
+    @Column(name = "produit_id", nullable = false)
+    private Long produitId;
+
+    @Column(name = "date_snapshot", nullable = false)
+    private LocalDate dateSnapshot;
+
+    private Integer quantite;
+}
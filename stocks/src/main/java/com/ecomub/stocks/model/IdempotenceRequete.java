@@ -0,0 +1,41 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Réponse mémorisée d'une requête de mutation identifiée par un en-tête Idempotency-Key.
+ * Une requête rejouée avec la même clé (et la même empreinte) reçoit cette réponse sans être réexécutée.
+ * La ligne est réservée (statut 0) dès le début de l'exécution, pour que toutes les instances voient la clé en cours.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "idempotence_requete", indexes = {
+    @Index(name = "idx_idempotence_date_creation", columnList = "date_creation")
+})
+public class IdempotenceRequete {
+
+    // Clé composée: utilisateur, opération et valeur de l'en-tête
+    @Id
+    @Column(length = 255)
+    private String cle;
+
+    // Empreinte SHA-256 (hexadécimal) des paramètres et du corps de la requête d'origine
+    @Column(length = 64)
+    private String empreinte;
+
+    // 0 tant que la requête est en cours d'exécution
+    @Column(name = "statut_http", nullable = false)
+    private int statutHttp;
+
+    @Lob
+    @Column(columnDefinition = "MEDIUMTEXT")
+    private String reponse;
+
+    @Column(name = "date_creation", nullable = false)
+    private LocalDateTime dateCreation;
+}
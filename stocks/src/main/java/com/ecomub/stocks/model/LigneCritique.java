@@ -0,0 +1,19 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ligne candidate au classement des lignes critiques, lue en flux: juste de quoi la classer.
+ * Le seuil est null pour les lignes sans seuil spécifique (le seuil global s'applique).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LigneCritique {
+    private Long produitStockId;
+    private String pays;
+    private Integer quantite;
+    private Integer seuil;
+}
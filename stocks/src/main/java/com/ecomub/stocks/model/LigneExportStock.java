@@ -0,0 +1,18 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Ligne produit d'un export Excel/CSV de stock (projection, sans entité chargée).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LigneExportStock {
+    private Long stockId;
+    private Integer reference;
+    private String nom;
+    private Integer quantite;
+}
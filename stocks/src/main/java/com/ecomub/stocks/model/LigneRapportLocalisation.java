@@ -0,0 +1,23 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Projection d'une association produit/stock pour le rapport par localisation:
+ * uniquement les colonnes utiles, sans charger les entités Produit et Stock.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LigneRapportLocalisation {
+    private Long stockId;
+    private String stockNom;
+    private String ville;
+    private String pays;
+    private Long produitId;
+    private Integer produitReference;
+    private String produitNom;
+    private Integer quantite;
+}
@@ -0,0 +1,26 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Projection d'une association sous son seuil d'alerte, avec produit et stock joints.
+ * Le seuil est celui du stock ou du produit, ou à défaut le seuil global demandé.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LigneStockFaible {
+    private Long produitStockId;
+    private Long produitId;
+    private String produitNom;
+    private Integer produitReference;
+    private Long stockId;
+    private String stockNom;
+    private String ville;
+    private String pays;
+    private TypeStock typeStock;
+    private Integer quantite;
+    private Integer seuil;
+}
@@ -1,10 +1,24 @@
 package com.ecomub.stocks.model;
 
+import com.ecomub.stocks.config.JacksonConfig;
+import com.ecomub.stocks.service.SuiviModificationsListener;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import jakarta.persistence.*;
 import lombok.*;
 
+@JsonFilter(JacksonConfig.FILTRE_CHAMPS)
 @Entity
-@Table(name = "mapping_livreur")
+@EntityListeners(SuiviModificationsListener.class)
+@Table(name = "mapping_livreur", indexes = {
+    // Tris des listes paginées: une entrée (clé de tri, id) par tri autorisé, sans filesort.
+    // (pays, ville) sert les filtres pays + tri ville; l'id complète chaque index InnoDB
+    @Index(name = "idx_mapping_livreur_nom", columnList = "nom_livreur"),
+    @Index(name = "idx_mapping_livreur_pays", columnList = "pays, id"),
+    @Index(name = "idx_mapping_livreur_pays_ville", columnList = "pays, ville"),
+    @Index(name = "idx_mapping_livreur_ville", columnList = "ville"),
+    @Index(name = "idx_mapping_livreur_type_stock", columnList = "type_stock"),
+    @Index(name = "idx_mapping_livreur_prestataire", columnList = "prestataire")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -0,0 +1,19 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Page d'une liste paginée par curseur (keyset). Le curseur suivant, opaque, est à renvoyer tel quel
+ * pour obtenir la page suivante; il est null sur la dernière page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageCurseur<T> {
+    private List<T> elements;
+    private String curseurSuivant;
+}
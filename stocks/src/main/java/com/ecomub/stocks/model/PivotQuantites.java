@@ -0,0 +1,169 @@
+package com.ecomub.stocks.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tableau croisé produits x stocks d'une localisation, stocké dans une matrice int[] dense.
+ *
+ * Produits et stocks reçoivent un index dense à leur première apparition; les cellules sont
+ * accumulées sous forme de triplets (produit, stock, quantité) puis reportées dans la matrice
+ * par {@link #figer()}. La sérialisation JSON écrit les lignes directement depuis les tableaux,
+ * sans Map intermédiaire par ligne:
+ * {"stocks": [noms triés], "products": [{"ref", "nom", "quantities": {nomStock: quantité}}]}
+ */
+public class PivotQuantites extends JsonSerializable.Base {
+
+    private final Map<Long, Integer> indexStock = new HashMap<>();
+    private final List<String> nomsStocks = new ArrayList<>();
+    private final Map<Long, Integer> indexProduit = new HashMap<>();
+    private final List<String> nomsProduits = new ArrayList<>();
+    private int[] referencesProduits = new int[16];
+    private int[] cellules = new int[48];
+    private int nbCellules;
+
+    // Résultat de figer()
+    private String[] entetes;
+    private int[] lignes;
+    private int[] matrice;
+
+    public void ajouter(Long stockId, String stockNom, Long produitId, int produitReference, String produitNom, int quantite) {
+        Integer stock = indexStock.get(stockId);
+        if (stock == null) {
+            stock = nomsStocks.size();
+            indexStock.put(stockId, stock);
+            nomsStocks.add(stockNom);
+        }
+        Integer produit = indexProduit.get(produitId);
+        if (produit == null) {
+            produit = nomsProduits.size();
+            indexProduit.put(produitId, produit);
+            nomsProduits.add(produitNom);
+            if (produit == referencesProduits.length) {
+                referencesProduits = Arrays.copyOf(referencesProduits, produit * 2);
+            }
+            referencesProduits[produit] = produitReference;
+        }
+        if (nbCellules + 3 > cellules.length) {
+            cellules = Arrays.copyOf(cellules, cellules.length * 2);
+        }
+        cellules[nbCellules++] = produit;
+        cellules[nbCellules++] = stock;
+        cellules[nbCellules++] = quantite;
+        matrice = null;
+    }
+
+    /**
+     * Construit la matrice: colonnes = stocks nommés triés sans tenir compte de la casse
+     * (le premier stock rencontré l'emporte en cas d'homonymie), lignes = produits triés par référence.
+     */
+    public PivotQuantites figer() {
+        int nbStocks = nomsStocks.size();
+        Integer[] ordreStocks = new Integer[nbStocks];
+        for (int i = 0; i < nbStocks; i++) {
+            ordreStocks[i] = i;
+        }
+        // Tri stable: à nom égal, l'ordre d'apparition est conservé
+        Arrays.sort(ordreStocks, Comparator.comparing(nomsStocks::get, Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+
+        int[] colonneParStock = new int[nbStocks];
+        Arrays.fill(colonneParStock, -1);
+        List<String> colonnes = new ArrayList<>(nbStocks);
+        for (int stock : ordreStocks) {
+            String nom = nomsStocks.get(stock);
+            if (nom == null || nom.trim().isEmpty()) {
+                continue; // Les stocks sans nom n'ont pas de colonne
+            }
+            if (!colonnes.isEmpty() && colonnes.get(colonnes.size() - 1).equalsIgnoreCase(nom)) {
+                continue;
+            }
+            colonneParStock[stock] = colonnes.size();
+            colonnes.add(nom);
+        }
+        entetes = colonnes.toArray(new String[0]);
+
+        int nbProduits = nomsProduits.size();
+        lignes = new int[nbProduits];
+        boolean tries = true;
+        for (int i = 0; i < nbProduits; i++) {
+            lignes[i] = i;
+            if (i > 0 && referencesProduits[i] < referencesProduits[i - 1]) {
+                tries = false;
+            }
+        }
+        if (!tries) {
+            lignes = Arrays.stream(lignes).boxed()
+                    .sorted(Comparator.comparingInt(p -> referencesProduits[p]))
+                    .mapToInt(Integer::intValue)
+                    .toArray();
+        }
+
+        int largeur = entetes.length;
+        matrice = new int[nbProduits * largeur];
+        for (int i = 0; i < nbCellules; i += 3) {
+            int colonne = colonneParStock[cellules[i + 1]];
+            if (colonne >= 0) {
+                matrice[cellules[i] * largeur + colonne] = cellules[i + 2];
+            }
+        }
+        return this;
+    }
+
+    public List<String> getStocks() {
+        verifierFige();
+        return Arrays.asList(entetes);
+    }
+
+    public int getNombreProduits() {
+        return nomsProduits.size();
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        verifierFige();
+        int largeur = entetes.length;
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("stocks");
+        for (String entete : entetes) {
+            gen.writeString(entete);
+        }
+        gen.writeEndArray();
+        gen.writeArrayFieldStart("products");
+        for (int produit : lignes) {
+            gen.writeStartObject();
+            gen.writeNumberField("ref", referencesProduits[produit]);
+            gen.writeStringField("nom", nomsProduits.get(produit));
+            gen.writeObjectFieldStart("quantities");
+            int debut = produit * largeur;
+            for (int colonne = 0; colonne < largeur; colonne++) {
+                gen.writeNumberField(entetes[colonne], matrice[debut + colonne]);
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        // Pas d'information de type polymorphe pour ce rapport
+        serialize(gen, serializers);
+    }
+
+    private void verifierFige() {
+        if (matrice == null) {
+            figer();
+        }
+    }
+}
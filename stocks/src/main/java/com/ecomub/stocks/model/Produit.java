@@ -1,12 +1,17 @@
 package com.ecomub.stocks.model;
 
 
+import com.ecomub.stocks.config.JacksonConfig;
+import com.ecomub.stocks.service.SuiviModificationsListener;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import jakarta.persistence.*;
 import lombok.*;
 
 
+@JsonFilter(JacksonConfig.FILTRE_CHAMPS)
 @Data
 @Entity
+@EntityListeners(SuiviModificationsListener.class)
 @Table(name = "produits", uniqueConstraints = {
     @UniqueConstraint(columnNames = {"nom"}, name = "uk_produit_nom"),
     @UniqueConstraint(columnNames = {"reference"}, name = "uk_produit_reference")
@@ -25,19 +30,8 @@ public class Produit {
 
     private String description;
 
-    /*@Column(name = "seuil_alerte", nullable = false)
-    private Integer seuilAlerte = 30; // Default threshold value
-
-    // Validation methods
-    public void validateBeforeSave() {
-        if (nom == null || nom.trim().isEmpty()) {
-            throw new IllegalArgumentException("Le nom du produit ne peut pas être vide");
-        }
-        if (reference == null) {
-            throw new IllegalArgumentException("La référence du produit ne peut pas être nulle");
-        }
-        if (seuilAlerte == null) {
-            seuilAlerte = 30; // Set default if null
-        }
-    }*/
+    // Seuil d'alerte du produit (null: le seuil global de la requête s'applique).
+    // Modifié via ProduitService.modifierSeuilAlerte, qui le répercute sur les associations.
+    @Column(name = "seuil_alerte")
+    private Integer seuilAlerte;
 }
@@ -1,10 +1,22 @@
 package com.ecomub.stocks.model;
+import com.ecomub.stocks.service.SuiviModificationsListener;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import lombok.*;
 
 @Entity
+@EntityListeners(SuiviModificationsListener.class)
 @Data
-@Table(name = "produit_stock")
+@Table(name = "produit_stock", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"produit_id", "centre_stock_id"}, name = "uk_produit_stock")
+}, indexes = {
+    // Lignes sous leur seuil spécifique: ecart_seuil < 0
+    @Index(name = "idx_produit_stock_ecart_seuil", columnList = "ecart_seuil"),
+    // Lignes sans seuil spécifique, comparées au seuil global: seuil_effectif IS NULL AND quantite < ?
+    @Index(name = "idx_produit_stock_seuil_quantite", columnList = "seuil_effectif, quantite"),
+    // Produits d'un stock paginés par quantité
+    @Index(name = "idx_produit_stock_stock_quantite", columnList = "centre_stock_id, quantite")
+})
 public class ProduitStock {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,4 +31,25 @@ public class ProduitStock {
     private Stock stock;
 
     private Integer quantite;
+
+    // Seuil d'alerte propre à ce stock (prioritaire sur celui du produit)
+    @Column(name = "seuil_alerte")
+    private Integer seuilAlerte;
+
+    // Seuil spécifique applicable (stock, sinon produit), dénormalisé pour être indexé
+    @JsonIgnore
+    @Column(name = "seuil_effectif")
+    private Integer seuilEffectif;
+
+    // Calculé par MySQL: négatif si la ligne est sous son seuil spécifique, null sans seuil spécifique
+    @JsonIgnore
+    @Column(name = "ecart_seuil", insertable = false, updatable = false,
+            columnDefinition = "INT GENERATED ALWAYS AS (quantite - seuil_effectif) STORED")
+    private Integer ecartSeuil;
+
+    @PrePersist
+    @PreUpdate
+    void calculerSeuilEffectif() {
+        seuilEffectif = seuilAlerte != null ? seuilAlerte : (produit != null ? produit.getSeuilAlerte() : null);
+    }
 }
@@ -0,0 +1,34 @@
+package com.ecomub.stocks.model;
+
+import com.ecomub.stocks.config.JacksonConfig;
+import com.fasterxml.jackson.annotation.JsonFilter;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Vue en lecture d'une association produit/stock: uniquement les colonnes affichées, lues par une requête
+ * à constructeur (aucune entité chargée, ni Produit ni Stock complets).
+ * Le seuil effectif est celui du stock, sinon celui du produit (null: le seuil global s'applique).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonFilter(JacksonConfig.FILTRE_CHAMPS)
+public class ProduitStockVue {
+    private Long id;
+    private Long produitId;
+    private String nom;
+    private Integer reference;
+    private Long stockId;
+    private Integer quantite;
+    private Integer seuilAlerte;
+    private Integer seuilEffectif;
+
+    public static ProduitStockVue de(ProduitStock produitStock) {
+        return new ProduitStockVue(produitStock.getId(), produitStock.getProduit().getId(),
+                produitStock.getProduit().getNom(), produitStock.getProduit().getReference(),
+                produitStock.getStock().getId(), produitStock.getQuantite(),
+                produitStock.getSeuilAlerte(), produitStock.getSeuilEffectif());
+    }
+}
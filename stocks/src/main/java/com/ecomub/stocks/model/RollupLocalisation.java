@@ -0,0 +1,46 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Agrégat matérialisé des quantités par (pays, ville, stock, produit).
+ * Pays et ville sont normalisés ("Non défini" si absents) pour que les rapports
+ * puissent lire et trier cette table directement. Maintenu par RollupService dans
+ * la même transaction que chaque mutation de ProduitStock.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "rollup_localisation", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_rollup_localisation", columnNames = {"stock_id", "produit_id"})
+}, indexes = {
+    @Index(name = "idx_rollup_localisation_pays_ville", columnList = "pays, ville"),
+    @Index(name = "idx_rollup_localisation_ville", columnList = "ville"),
+    @Index(name = "idx_rollup_localisation_produit", columnList = "produit_id")
+})
+public class RollupLocalisation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stock_id", nullable = false)
+    private Long stockId;
+
+    @Column(name = "produit_id", nullable = false)
+    private Long produitId;
+
+    @Column(nullable = false)
+    private String pays;
+
+    @Column(nullable = false)
+    private String ville;
+
+    @Column(name = "type_stock", length = 50)
+    private String typeStock;
+
+    @Column(nullable = false)
+    private Integer quantite;
+}
@@ -0,0 +1,46 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Agrégat matérialisé des quantités et du nombre d'associations par (pays, type de stock, produit),
+ * maintenu par deltas signés calculés sur les lignes de rollup_localisation touchées par une mutation.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "rollup_pays", uniqueConstraints = {
+    // Cible des upserts par delta (type_stock_cle: type_stock sans NULL, qu'une clé unique ne compare pas)
+    @UniqueConstraint(name = "uk_rollup_pays", columnNames = {"pays", "type_stock_cle", "produit_id"})
+}, indexes = {
+    @Index(name = "idx_rollup_pays_pays", columnList = "pays, type_stock"),
+    @Index(name = "idx_rollup_pays_produit", columnList = "produit_id")
+})
+public class RollupPays {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String pays;
+
+    @Column(name = "type_stock", length = 50)
+    private String typeStock;
+
+    // Calculé par MySQL, pour la clé unique: préfixe distinguant NULL de la chaîne vide
+    @Column(name = "type_stock_cle", insertable = false, updatable = false,
+            columnDefinition = "VARCHAR(51) GENERATED ALWAYS AS (CONCAT(IF(type_stock IS NULL, '0', '1'), COALESCE(type_stock, ''))) STORED")
+    private String typeStockCle;
+
+    @Column(name = "produit_id", nullable = false)
+    private Long produitId;
+
+    @Column(nullable = false)
+    private long quantite;
+
+    @Column(name = "nombre_lignes", nullable = false)
+    private long nombreLignes;
+}
@@ -0,0 +1,30 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Copie de produit_stock au dernier snapshot journalier, base de comparaison pour
+ * n'écrire dans historique_stock que les lignes modifiées.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "snapshot_etat", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_snapshot_etat", columnNames = {"stock_id", "produit_id"})
+})
+public class SnapshotEtat {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "stock_id", nullable = false)
+    private Long stockId;
+
+    @Column(name = "produit_id", nullable = false)
+    private Long produitId;
+
+    private Integer quantite;
+}
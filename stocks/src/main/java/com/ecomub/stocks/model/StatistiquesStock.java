@@ -0,0 +1,18 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Compteurs agrégés des associations d'un stock, calculés en une requête groupée.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StatistiquesStock {
+    private Long stockId;
+    private Long totalProduits;
+    private Long produitsEnRupture;
+    private Long produitsStockBas;
+}
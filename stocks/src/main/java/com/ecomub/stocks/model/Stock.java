@@ -1,16 +1,29 @@
 package com.ecomub.stocks.model;
 
 
+import com.ecomub.stocks.config.JacksonConfig;
+import com.ecomub.stocks.service.SuiviModificationsListener;
+import com.fasterxml.jackson.annotation.JsonFilter;
 import jakarta.persistence.*;
 import lombok.*;
 
+@JsonFilter(JacksonConfig.FILTRE_CHAMPS)
 @Data
 @Getter
 @Setter
 @Entity
+@EntityListeners(SuiviModificationsListener.class)
 @AllArgsConstructor
 @NoArgsConstructor
-@Table(name = "Stocks")
+@Table(name = "Stocks", indexes = {
+    // Tris des listes paginées: une entrée (clé de tri, id) par tri autorisé, sans filesort.
+    // (pays, ville) sert les filtres pays + tri ville; l'id complète chaque index InnoDB
+    @Index(name = "idx_stocks_pays", columnList = "pays, id"),
+    @Index(name = "idx_stocks_pays_ville", columnList = "pays, ville"),
+    @Index(name = "idx_stocks_ville", columnList = "ville"),
+    @Index(name = "idx_stocks_type_stock", columnList = "type_stock"),
+    @Index(name = "idx_stocks_prestataire", columnList = "prestataire")
+})
 public class Stock {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -0,0 +1,27 @@
+package com.ecomub.stocks.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Demande de transfert de quantités d'un stock source vers un stock destination.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransfertRequest {
+    private Long stockSourceId;
+    private Long stockDestinationId;
+    private List<Ligne> lignes;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Ligne {
+        private Long produitId;
+        private Integer quantite;
+    }
+}
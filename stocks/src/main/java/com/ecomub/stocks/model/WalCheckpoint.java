@@ -0,0 +1,24 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Point de reprise du journal d'écriture différée (WAL): plus haute séquence attribuée lors du dernier
+ * vidage, pour que la numérotation ne reparte pas en arrière une fois les segments supprimés.
+ * L'application unique des enregistrements repose sur {@link WalTransaction}.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "wal_checkpoint")
+public class WalCheckpoint {
+
+    @Id
+    private String nom;
+
+    // Plus haute séquence attribuée au moment du dernier vidage
+    @Column(name = "derniere_sequence", nullable = false)
+    private long derniereSequence;
+}
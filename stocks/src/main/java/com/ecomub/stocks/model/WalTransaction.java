@@ -0,0 +1,26 @@
+package com.ecomub.stocks.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * Groupe d'enregistrements du journal d'écriture différée (WAL) écrit par une transaction validée.
+ * Inséré dans la transaction qui a produit les deltas, après leur écriture synchronisée dans le journal:
+ * au redémarrage, seuls les enregistrements d'un groupe présent ici sont rejoués. Supprimé dans la
+ * transaction qui applique le groupe en base, ce qui garantit qu'il n'est appliqué qu'une seule fois.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "wal_transaction")
+public class WalTransaction {
+
+    // Séquence du premier enregistrement du groupe
+    @Id
+    @Column(name = "premiere_sequence")
+    private long premiereSequence;
+
+    @Column(name = "derniere_sequence", nullable = false)
+    private long derniereSequence;
+}
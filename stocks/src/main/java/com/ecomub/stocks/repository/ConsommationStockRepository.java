@@ -0,0 +1,9 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.ConsommationStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ConsommationStockRepository extends JpaRepository<ConsommationStock, Long>, ConsommationStockRepositoryCustom {
+}
@@ -0,0 +1,25 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.AffectationLigne;
+import com.ecomub.stocks.model.CouvertureStock;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Mise à jour de la vitesse de consommation et classement des associations par jours de couverture, en SQL.
+ */
+public interface ConsommationStockRepositoryCustom {
+
+    /**
+     * Associations dont la consommation estimée à la date donnée dépasse tauxMinimal,
+     * triées par jours de couverture croissants (ce qui sera épuisé en premier).
+     */
+    List<CouvertureStock> findCouvertures(double lissage, LocalDate aujourdhui, double tauxMinimal, int limite);
+
+    /**
+     * Intègre les livraisons d'un jour (quantité livrée par association) à la moyenne mobile,
+     * en un upsert par association: la première livraison crée la ligne, les suivantes la mettent à jour.
+     */
+    void integrerLivraisons(List<AffectationLigne> livraisons, LocalDate jour, double lissage);
+}
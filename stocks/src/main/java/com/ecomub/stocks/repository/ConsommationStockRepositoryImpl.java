@@ -0,0 +1,69 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.AffectationLigne;
+import com.ecomub.stocks.model.CouvertureStock;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public class ConsommationStockRepositoryImpl implements ConsommationStockRepositoryCustom {
+
+    // Moyenne décrue des jours sans livraison depuis le dernier jour observé
+    private static final String TAUX_ESTIME =
+            "c.moyenne_journaliere * POW(1 - :lissage, GREATEST(DATEDIFF(:aujourdhui, c.dernier_jour), 0))";
+
+    // Les affectations de ON DUPLICATE KEY UPDATE sont évaluées dans l'ordre: la moyenne est calculée
+    // avec l'ancien dernier_jour, mis à jour ensuite. Livraison le même jour (ou antérieure): moyenne
+    // += lissage * quantité, poids plein si seul le premier jour a été observé; après g jours:
+    // moyenne = moyenne * (1 - lissage)^g + lissage * quantité.
+    private static final String SQL_INTEGRER_LIVRAISON =
+            "INSERT INTO consommation_stock (stock_id, produit_id, moyenne_journaliere, premier_jour, dernier_jour) " +
+            "VALUES (:stockId, :produitId, :quantite, :jour, :jour) " +
+            "ON DUPLICATE KEY UPDATE moyenne_journaliere = IF(DATEDIFF(VALUES(dernier_jour), dernier_jour) <= 0, " +
+            "moyenne_journaliere + IF(dernier_jour = premier_jour, 1, :lissage) * VALUES(moyenne_journaliere), " +
+            "moyenne_journaliere * POW(1 - :lissage, DATEDIFF(VALUES(dernier_jour), dernier_jour)) " +
+            "+ :lissage * VALUES(moyenne_journaliere)), " +
+            "dernier_jour = GREATEST(dernier_jour, VALUES(dernier_jour))";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public void integrerLivraisons(List<AffectationLigne> livraisons, LocalDate jour, double lissage) {
+        SqlParameterSource[] lignes = livraisons.stream()
+                .map(livraison -> new MapSqlParameterSource()
+                        .addValue("stockId", livraison.getStockId())
+                        .addValue("produitId", livraison.getProduitId())
+                        .addValue("quantite", livraison.getQuantite())
+                        .addValue("jour", jour)
+                        .addValue("lissage", lissage))
+                .toArray(SqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(SQL_INTEGRER_LIVRAISON, lignes);
+    }
+
+    @Override
+    public List<CouvertureStock> findCouvertures(double lissage, LocalDate aujourdhui, double tauxMinimal, int limite) {
+        MapSqlParameterSource parametres = new MapSqlParameterSource()
+                .addValue("lissage", lissage)
+                .addValue("aujourdhui", aujourdhui)
+                .addValue("tauxMinimal", tauxMinimal)
+                .addValue("limite", limite);
+        return jdbcTemplate.query(
+                "SELECT s.id AS stock_id, s.nom AS stock_nom, s.ville, s.pays, p.id AS produit_id, p.reference, " +
+                "p.nom AS produit_nom, COALESCE(ps.quantite, 0) AS quantite, t.taux, " +
+                "GREATEST(COALESCE(ps.quantite, 0), 0) / t.taux AS jours " +
+                "FROM (SELECT c.stock_id, c.produit_id, " + TAUX_ESTIME + " AS taux FROM consommation_stock c) t " +
+                "JOIN produit_stock ps ON ps.centre_stock_id = t.stock_id AND ps.produit_id = t.produit_id " +
+                "JOIN stocks s ON s.id = t.stock_id JOIN produits p ON p.id = t.produit_id " +
+                "WHERE t.taux >= :tauxMinimal ORDER BY jours, t.taux DESC LIMIT :limite",
+                parametres,
+                (rs, i) -> new CouvertureStock(
+                        rs.getLong("stock_id"), rs.getString("stock_nom"), rs.getString("ville"), rs.getString("pays"),
+                        rs.getLong("produit_id"), rs.getObject("reference", Integer.class), rs.getString("produit_nom"),
+                        rs.getInt("quantite"), rs.getDouble("taux"), rs.getDouble("jours")));
+    }
+}
@@ -0,0 +1,15 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.ExecutionSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+
+@Repository
+public interface ExecutionSnapshotRepository extends JpaRepository<ExecutionSnapshot, LocalDate> {
+
+    @Query("SELECT MIN(e.dateSnapshot) FROM ExecutionSnapshot e")
+    LocalDate findPremiereDate();
+}
@@ -0,0 +1,32 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.HistoriqueStock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface HistoriqueStockRepository extends JpaRepository<HistoriqueStock, Long>, HistoriqueStockRepositoryCustom {
+
+    // Dernière valeur connue au plus tard à la date donnée, par association (filtres null ignorés).
+    // La sous-requête corrélée est résolue par les index (produit, stock, date) et (stock, produit, date)
+    @Query("SELECT h FROM HistoriqueStock h WHERE (:produitId IS NULL OR h.produitId = :produitId) " +
+           "AND (:stockId IS NULL OR h.stockId = :stockId) " +
+           "AND h.dateSnapshot = (SELECT MAX(h2.dateSnapshot) FROM HistoriqueStock h2 " +
+           "WHERE h2.produitId = h.produitId AND h2.stockId = h.stockId AND h2.dateSnapshot <= :date) " +
+           "ORDER BY h.stockId, h.produitId")
+    List<HistoriqueStock> findEtatALaDate(@Param("produitId") Long produitId, @Param("stockId") Long stockId,
+                                          @Param("date") LocalDate date);
+
+    // Changements dans l'intervalle ]debut, fin], triés par association puis par date
+    @Query("SELECT h FROM HistoriqueStock h WHERE (:produitId IS NULL OR h.produitId = :produitId) " +
+           "AND (:stockId IS NULL OR h.stockId = :stockId) " +
+           "AND h.dateSnapshot > :debut AND h.dateSnapshot <= :fin " +
+           "ORDER BY h.stockId, h.produitId, h.dateSnapshot")
+    List<HistoriqueStock> findChangements(@Param("produitId") Long produitId, @Param("stockId") Long stockId,
+                                          @Param("debut") LocalDate debut, @Param("fin") LocalDate fin);
+}
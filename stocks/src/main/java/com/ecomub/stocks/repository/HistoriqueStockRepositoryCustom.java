@@ -0,0 +1,43 @@
+package com.ecomub.stocks.repository;
+
+import java.time.LocalDate;
+
+/**
+ * Capture des snapshots journaliers de produit_stock, écrite en SQL ensembliste.
+ *
+ * La capture se fait par tranches de clé primaire, chacune dans sa propre transaction: les lectures de
+ * produit_stock des INSERT ... SELECT posent des verrous partagés (REPEATABLE READ), qui ne bloquent ainsi
+ * les mouvements de stock que sur une tranche et le temps de celle-ci.
+ */
+public interface HistoriqueStockRepositoryCustom {
+
+    /**
+     * @return Le dernier id de la tranche de produit_stock qui suit l'id donné, null s'il n'y en a plus
+     */
+    Long findFinTrancheAssociations(long apresId, int taille);
+
+    /**
+     * Compare les associations d'ids (apresId, jusquaId] à l'état du snapshot précédent (snapshot_etat),
+     * écrit dans historique_stock les seules lignes créées ou modifiées depuis, puis met l'état à jour.
+     * Rejouer la capture le même jour remplace les lignes de ce jour.
+     * @return Le nombre de lignes écrites dans l'historique
+     */
+    long capturerAssociations(LocalDate dateSnapshot, long apresId, long jusquaId);
+
+    /**
+     * @return Le dernier id de la tranche de snapshot_etat qui suit l'id donné, null s'il n'y en a plus
+     */
+    Long findFinTrancheEtat(long apresId, int taille);
+
+    /**
+     * Écrit une quantité null dans historique_stock pour les lignes d'ids (apresId, jusquaId] de snapshot_etat
+     * dont l'association a été supprimée, puis les retire de l'état.
+     * @return Le nombre de lignes écrites dans l'historique
+     */
+    long capturerSuppressions(LocalDate dateSnapshot, long apresId, long jusquaId);
+
+    /**
+     * @return Le nombre d'associations de l'état de référence
+     */
+    long countEtat();
+}
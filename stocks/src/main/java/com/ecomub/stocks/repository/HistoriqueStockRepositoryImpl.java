@@ -0,0 +1,90 @@
+package com.ecomub.stocks.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.time.LocalDate;
+
+public class HistoriqueStockRepositoryImpl implements HistoriqueStockRepositoryCustom {
+
+    private static final String JOINTURE_ETAT =
+            "e.stock_id = ps.centre_stock_id AND e.produit_id = ps.produit_id";
+
+    private static final String SQL_INSERT_HISTORIQUE =
+            "INSERT INTO historique_stock (stock_id, produit_id, date_snapshot, quantite) ";
+
+    private static final String SQL_MAJ_HISTORIQUE = " ON DUPLICATE KEY UPDATE quantite = VALUES(quantite)";
+
+    // Associations de la tranche nouvelles ou dont la quantité a changé depuis le snapshot précédent
+    private static final String SQL_CHANGEMENTS =
+            "FROM produit_stock ps LEFT JOIN snapshot_etat e ON " + JOINTURE_ETAT +
+            " WHERE ps.id > :apres AND ps.id <= :jusqua AND (e.id IS NULL OR NOT (e.quantite <=> ps.quantite))";
+
+    // Lignes de l'état de la tranche dont l'association n'existe plus
+    private static final String SQL_SUPPRESSIONS =
+            "FROM snapshot_etat e LEFT JOIN produit_stock ps ON " + JOINTURE_ETAT +
+            " WHERE e.id > :apres AND e.id <= :jusqua AND ps.id IS NULL";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public Long findFinTrancheAssociations(long apresId, int taille) {
+        return findFinTranche("produit_stock", apresId, taille);
+    }
+
+    @Override
+    public long capturerAssociations(LocalDate dateSnapshot, long apresId, long jusquaId) {
+        MapSqlParameterSource parametres = parametresTranche(dateSnapshot, apresId, jusquaId);
+
+        // 1. Historique: créations et modifications
+        long changements = jdbcTemplate.update(SQL_INSERT_HISTORIQUE +
+                "SELECT ps.centre_stock_id, ps.produit_id, :date, ps.quantite " + SQL_CHANGEMENTS +
+                SQL_MAJ_HISTORIQUE, parametres);
+
+        // 2. État de référence du prochain snapshot
+        jdbcTemplate.update("INSERT INTO snapshot_etat (stock_id, produit_id, quantite) " +
+                "SELECT ps.centre_stock_id, ps.produit_id, ps.quantite " + SQL_CHANGEMENTS +
+                " ON DUPLICATE KEY UPDATE quantite = VALUES(quantite)", parametres);
+        return changements;
+    }
+
+    @Override
+    public Long findFinTrancheEtat(long apresId, int taille) {
+        return findFinTranche("snapshot_etat", apresId, taille);
+    }
+
+    @Override
+    public long capturerSuppressions(LocalDate dateSnapshot, long apresId, long jusquaId) {
+        MapSqlParameterSource parametres = parametresTranche(dateSnapshot, apresId, jusquaId);
+
+        // 1. Historique: suppressions (quantité null)
+        long changements = jdbcTemplate.update(SQL_INSERT_HISTORIQUE +
+                "SELECT e.stock_id, e.produit_id, :date, NULL " + SQL_SUPPRESSIONS +
+                SQL_MAJ_HISTORIQUE, parametres);
+
+        // 2. État de référence du prochain snapshot
+        jdbcTemplate.update("DELETE e " + SQL_SUPPRESSIONS, parametres);
+        return changements;
+    }
+
+    @Override
+    public long countEtat() {
+        Long lignes = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM snapshot_etat",
+                new MapSqlParameterSource(), Long.class);
+        return lignes != null ? lignes : 0L;
+    }
+
+    private Long findFinTranche(String table, long apresId, int taille) {
+        return jdbcTemplate.queryForObject("SELECT MAX(t.id) FROM (SELECT id FROM " + table +
+                        " WHERE id > :apres ORDER BY id LIMIT :taille) t",
+                new MapSqlParameterSource("apres", apresId).addValue("taille", taille), Long.class);
+    }
+
+    private MapSqlParameterSource parametresTranche(LocalDate dateSnapshot, long apresId, long jusquaId) {
+        return new MapSqlParameterSource("date", dateSnapshot)
+                .addValue("apres", apresId)
+                .addValue("jusqua", jusquaId);
+    }
+}
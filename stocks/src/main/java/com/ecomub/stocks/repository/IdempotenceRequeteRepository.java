@@ -0,0 +1,43 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.IdempotenceRequete;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotenceRequeteRepository extends JpaRepository<IdempotenceRequete, String> {
+
+    @Modifying
+    @Query("DELETE FROM IdempotenceRequete i WHERE i.dateCreation < :limite")
+    int supprimerAnterieuresA(@Param("limite") LocalDateTime limite);
+
+    // Réserve une clé (statut 0 = en cours); 0 ligne insérée si la clé existe déjà
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO idempotence_requete (cle, empreinte, statut_http, date_creation) " +
+                   "VALUES (:cle, :empreinte, 0, :date)", nativeQuery = true)
+    int reserver(@Param("cle") String cle, @Param("empreinte") String empreinte, @Param("date") LocalDateTime date);
+
+    // Reprend une clé expirée, ou restée en cours au-delà du délai (instance arrêtée pendant l'exécution)
+    @Modifying
+    @Query("UPDATE IdempotenceRequete i SET i.empreinte = :empreinte, i.statutHttp = 0, i.reponse = NULL, i.dateCreation = :date " +
+           "WHERE i.cle = :cle AND (i.dateCreation < :limiteExpiration OR (i.statutHttp = 0 AND i.dateCreation < :limiteEnCours))")
+    int reprendre(@Param("cle") String cle, @Param("empreinte") String empreinte, @Param("date") LocalDateTime date,
+                  @Param("limiteExpiration") LocalDateTime limiteExpiration, @Param("limiteEnCours") LocalDateTime limiteEnCours);
+
+    // Enregistre la réponse d'une clé réservée; 0 ligne si la réservation a été reprise entre-temps
+    @Modifying
+    @Query("UPDATE IdempotenceRequete i SET i.statutHttp = :statut, i.reponse = :reponse, i.dateCreation = :date " +
+           "WHERE i.cle = :cle AND i.empreinte = :empreinte AND i.statutHttp = 0")
+    int terminer(@Param("cle") String cle, @Param("empreinte") String empreinte, @Param("statut") int statut,
+                 @Param("reponse") String reponse, @Param("date") LocalDateTime date);
+
+    // Libère une réservation dont la mutation a été annulée
+    @Modifying
+    @Query("DELETE FROM IdempotenceRequete i WHERE i.cle = :cle AND i.empreinte = :empreinte AND i.statutHttp = 0")
+    int liberer(@Param("cle") String cle, @Param("empreinte") String empreinte);
+}
@@ -2,14 +2,31 @@ package com.ecomub.stocks.repository;
 
 import com.ecomub.stocks.model.Produit;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.apache.commons.math3.stat.descriptive.summary.Product;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
-public interface ProduitRepository extends JpaRepository<Produit, Long> {
+public interface ProduitRepository extends JpaRepository<Produit, Long>, JpaSpecificationExecutor<Produit> {
     Produit findProduitByNom(String nom);
     Produit findProduitByReference(Integer reference);
 
+    @Query("SELECT p.id FROM Produit p WHERE p.id IN :ids")
+    List<Long> findIdsExistants(@Param("ids") Collection<Long> ids);
+
+    // Curseur en flux (fetch size MIN_VALUE: le pilote MySQL lit les lignes une à une)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT p FROM Produit p ORDER BY p.id")
+    Stream<Produit> streamTous();
+
 
 }
@@ -1,19 +1,41 @@
 package com.ecomub.stocks.repository;
 
+import com.ecomub.stocks.model.LigneExportStock;
+import com.ecomub.stocks.model.ChangementStock;
+import com.ecomub.stocks.model.DetailProduitStock;
+import com.ecomub.stocks.model.LigneCritique;
+import com.ecomub.stocks.model.LigneStockFaible;
 import com.ecomub.stocks.model.Produit;
 import com.ecomub.stocks.model.ProduitStock;
+import com.ecomub.stocks.model.ProduitStockVue;
+import com.ecomub.stocks.model.StatistiquesStock;
 import com.ecomub.stocks.model.Stock;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface ProduitStockRepository extends JpaRepository<ProduitStock, Long> {
+public interface ProduitStockRepository extends JpaRepository<ProduitStock, Long>, JpaSpecificationExecutor<ProduitStock>,
+        ProduitStockRepositoryCustom {
+
+    // Conditions d'alerte, quantité NULL comptée comme 0. ecart_seuil (quantite - seuil_effectif) est NULL
+    // pour une quantité NULL: ces lignes sont reprises par le second terme, sans renoncer aux index
+    String SOUS_SEUIL_SPECIFIQUE = "(ps.ecartSeuil < 0 OR (ps.quantite IS NULL AND ps.seuilEffectif > 0))";
+    String SOUS_SEUIL_GLOBAL = "(ps.seuilEffectif IS NULL AND (ps.quantite < :seuil OR (ps.quantite IS NULL AND :seuil > 0)))";
+
     ProduitStock findByProduitAndStock(Produit produit, Stock stock);
     List<ProduitStock> findByStockId(Long stockId);
     List<ProduitStock> findByProduitId(Long produitId);
@@ -27,13 +49,143 @@ public interface ProduitStockRepository extends JpaRepository<ProduitStock, Long
     @Query("SELECT ps FROM ProduitStock ps JOIN FETCH ps.produit p WHERE ps.stock.id = :stockId")
     List<ProduitStock> findByStockIdWithProduit(@Param("stockId") Long stockId);
 
+    @Query("SELECT ps.quantite FROM ProduitStock ps WHERE ps.stock.id = :stockId AND ps.produit.id = :produitId")
+    Optional<Integer> findQuantiteByStockIdAndProduitId(@Param("stockId") Long stockId, @Param("produitId") Long produitId);
 
+    @Query("SELECT ps.produit.id FROM ProduitStock ps WHERE ps.stock.id = :stockId AND ps.produit.id IN :produitIds")
+    List<Long> findProduitIdsAffectes(@Param("stockId") Long stockId, @Param("produitIds") Collection<Long> produitIds);
 
+    // Quantités des associations d'un stock, lignes verrouillées (FOR UPDATE) dans l'ordre des produits,
+    // sans charger les entités ni leurs relations: [produit_id, quantite]
+    @Query(value = "SELECT produit_id, COALESCE(quantite, 0) FROM produit_stock " +
+                   "WHERE centre_stock_id = :stockId AND produit_id IN (:produitIds) ORDER BY produit_id FOR UPDATE",
+           nativeQuery = true)
+    List<Object[]> findQuantitesVerrouillees(@Param("stockId") Long stockId, @Param("produitIds") Collection<Long> produitIds);
 
-    @Transactional
-    void deleteByStockId(Long stockId);
-    
-    @Transactional
-    void deleteByProduitId(Long produitId);
+    // Totaux par stock, parcours du seul index (centre_stock_id, quantite):
+    // [stockId, nombre d'associations, somme des quantités, nombre de quantités renseignées]
+    @Query("SELECT ps.stock.id, COUNT(ps.id), COALESCE(SUM(ps.quantite), 0), COUNT(ps.quantite) " +
+           "FROM ProduitStock ps GROUP BY ps.stock.id")
+    List<Object[]> findTotauxParStock();
+
+    // Quantité d'une association, lecture non verrouillante
+    @Query(value = "SELECT COALESCE(quantite, 0) FROM produit_stock WHERE centre_stock_id = :stockId AND produit_id = :produitId",
+           nativeQuery = true)
+    Optional<Integer> findQuantite(@Param("stockId") Long stockId, @Param("produitId") Long produitId);
+
+    // Quantité d'une association, ligne verrouillée (FOR UPDATE) jusqu'à la fin de la transaction appelante
+    @Query(value = "SELECT COALESCE(quantite, 0) FROM produit_stock WHERE centre_stock_id = :stockId AND produit_id = :produitId FOR UPDATE",
+           nativeQuery = true)
+    Optional<Integer> findQuantiteVerrouillee(@Param("stockId") Long stockId, @Param("produitId") Long produitId);
+
+    // Applique un delta de quantité sans charger l'entité (utilisé par l'écriture différée)
+    @Modifying
+    @Query("UPDATE ProduitStock ps SET ps.quantite = COALESCE(ps.quantite, 0) + :delta WHERE ps.stock.id = :stockId AND ps.produit.id = :produitId")
+    int ajouterDelta(@Param("stockId") Long stockId, @Param("produitId") Long produitId, @Param("delta") int delta);
+
+
+    // Lignes sous leur seuil spécifique (stock ou produit): parcours de l'index sur ecart_seuil
+    @Query("SELECT new com.ecomub.stocks.model.LigneStockFaible(" +
+           "ps.id, p.id, p.nom, p.reference, s.id, s.nom, s.ville, s.pays, s.typeStock, ps.quantite, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.produit p JOIN ps.stock s WHERE " + SOUS_SEUIL_SPECIFIQUE)
+    List<LigneStockFaible> findSousSeuilSpecifique();
+
+    // Candidates au classement des lignes critiques, lues en flux (mêmes parcours d'index que ci-dessous)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.LigneCritique(ps.id, s.pays, ps.quantite, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.stock s WHERE " + SOUS_SEUIL_SPECIFIQUE + " " +
+           "AND (:pays IS NULL OR LOWER(TRIM(s.pays)) = LOWER(:pays))")
+    Stream<LigneCritique> streamCritiquesSeuilSpecifique(@Param("pays") String pays);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.LigneCritique(ps.id, s.pays, ps.quantite, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.stock s WHERE " + SOUS_SEUIL_GLOBAL + " " +
+           "AND (:pays IS NULL OR LOWER(TRIM(s.pays)) = LOWER(:pays))")
+    Stream<LigneCritique> streamCritiquesSeuilGlobal(@Param("seuil") int seuil, @Param("pays") String pays);
+
+    // Détail des lignes retenues par le classement des lignes critiques
+    @Query("SELECT new com.ecomub.stocks.model.LigneStockFaible(" +
+           "ps.id, p.id, p.nom, p.reference, s.id, s.nom, s.ville, s.pays, s.typeStock, ps.quantite, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.produit p JOIN ps.stock s WHERE ps.id IN :ids")
+    List<LigneStockFaible> findLignesStockFaibleParIds(@Param("ids") Collection<Long> ids);
+
+    // Quantités courantes des associations modifiées (flux des stocks): sur-ensemble filtré par couple côté appelant
+    @Query("SELECT new com.ecomub.stocks.model.ChangementStock(ps.stock.id, ps.produit.id, ps.quantite) " +
+           "FROM ProduitStock ps WHERE ps.stock.id IN :stockIds AND ps.produit.id IN :produitIds")
+    List<ChangementStock> findQuantitesAssociations(@Param("stockIds") Collection<Long> stockIds,
+                                                    @Param("produitIds") Collection<Long> produitIds);
+
+    // Lignes sans seuil spécifique sous le seuil global: parcours de l'index (seuil_effectif, quantite).
+    // Le seuil renvoyé est null: c'est le seuil global qui s'applique
+    @Query("SELECT new com.ecomub.stocks.model.LigneStockFaible(" +
+           "ps.id, p.id, p.nom, p.reference, s.id, s.nom, s.ville, s.pays, s.typeStock, ps.quantite, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.produit p JOIN ps.stock s " +
+           "WHERE " + SOUS_SEUIL_GLOBAL)
+    List<LigneStockFaible> findSousSeuilGlobal(@Param("seuil") Integer seuil);
+
+    // Statistiques de tous les stocks en une requête groupée (stocks sans association inclus).
+    // Une ligne est "basse" si sa quantité ne dépasse pas son seuil spécifique, ou à défaut le seuil donné
+    @Query("SELECT new com.ecomub.stocks.model.StatistiquesStock(s.id, COUNT(ps.id), " +
+           "SUM(CASE WHEN ps.id IS NOT NULL AND (ps.quantite IS NULL OR ps.quantite <= 0) THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN ps.quantite > 0 AND ps.quantite <= COALESCE(ps.seuilEffectif, :seuil) THEN 1 ELSE 0 END)) " +
+           "FROM Stock s LEFT JOIN ProduitStock ps ON ps.stock = s GROUP BY s.id")
+    List<StatistiquesStock> findStatistiquesParStock(@Param("seuil") int seuil);
+
+    // Variante en flux (curseur MySQL), pour l'écriture en continu de la réponse
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.StatistiquesStock(s.id, COUNT(ps.id), " +
+           "SUM(CASE WHEN ps.id IS NOT NULL AND (ps.quantite IS NULL OR ps.quantite <= 0) THEN 1 ELSE 0 END), " +
+           "SUM(CASE WHEN ps.quantite > 0 AND ps.quantite <= COALESCE(ps.seuilEffectif, :seuil) THEN 1 ELSE 0 END)) " +
+           "FROM Stock s LEFT JOIN ProduitStock ps ON ps.stock = s GROUP BY s.id")
+    Stream<StatistiquesStock> streamStatistiquesParStock(@Param("seuil") int seuil);
+
+    // Vues en lecture des produits d'un stock (requête à constructeur: aucune entité chargée)
+    @Query("SELECT new com.ecomub.stocks.model.ProduitStockVue(" +
+           "ps.id, p.id, p.nom, p.reference, ps.stock.id, ps.quantite, ps.seuilAlerte, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.produit p WHERE ps.stock.id = :stockId ORDER BY ps.id")
+    List<ProduitStockVue> findVuesParStock(@Param("stockId") Long stockId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.ProduitStockVue(" +
+           "ps.id, p.id, p.nom, p.reference, ps.stock.id, ps.quantite, ps.seuilAlerte, ps.seuilEffectif) " +
+           "FROM ProduitStock ps JOIN ps.produit p WHERE ps.stock.id = :stockId ORDER BY ps.id")
+    Stream<ProduitStockVue> streamVuesParStock(@Param("stockId") Long stockId);
+
+    @Query(value = "SELECT new com.ecomub.stocks.model.DetailProduitStock(" +
+                   "ps.id, p.id, p.nom, p.reference, ps.quantite, ps.seuilEffectif) " +
+                   "FROM ProduitStock ps JOIN ps.produit p WHERE ps.stock.id = :stockId ORDER BY p.reference, ps.id",
+           countQuery = "SELECT COUNT(ps) FROM ProduitStock ps WHERE ps.stock.id = :stockId")
+    Page<DetailProduitStock> findDetailsParStock(@Param("stockId") Long stockId, Pageable pageable);
+
+    // Lignes des exports de stocks en flux (curseur MySQL), regroupées par stock puis triées par référence
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.LigneExportStock(ps.stock.id, p.reference, p.nom, ps.quantite) " +
+           "FROM ProduitStock ps JOIN ps.produit p WHERE ps.stock.id IN :stockIds ORDER BY ps.stock.id, p.reference, ps.id")
+    Stream<LigneExportStock> streamLignesExport(@Param("stockIds") Collection<Long> stockIds);
+
+    // Répercute le seuil d'un produit sur ses associations sans seuil propre
+    @Modifying
+    @Query(value = "UPDATE produit_stock SET seuil_effectif = :seuil WHERE produit_id = :produitId AND seuil_alerte IS NULL", nativeQuery = true)
+    int majSeuilEffectifProduit(@Param("produitId") Long produitId, @Param("seuil") Integer seuil);
+
+    long countByStock_Id(Long stockId);
+
+    long countByProduit_Id(Long produitId);
+
+    // Suppressions ensemblistes par lots bornés, sans charger les entités: les ids du lot sont lus
+    // d'abord pour que les agrégats par localisation puissent être recalculés dans la même transaction
+    @Query(value = "SELECT produit_id FROM produit_stock WHERE centre_stock_id = :stockId LIMIT :limite", nativeQuery = true)
+    List<Long> findLotProduitIdsParStock(@Param("stockId") Long stockId, @Param("limite") int limite);
+
+    @Query(value = "SELECT centre_stock_id FROM produit_stock WHERE produit_id = :produitId LIMIT :limite", nativeQuery = true)
+    List<Long> findLotStockIdsParProduit(@Param("produitId") Long produitId, @Param("limite") int limite);
+
+    @Modifying
+    @Query(value = "DELETE FROM produit_stock WHERE centre_stock_id = :stockId AND produit_id IN (:produitIds)", nativeQuery = true)
+    int supprimerParStockEtProduits(@Param("stockId") Long stockId, @Param("produitIds") Collection<Long> produitIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM produit_stock WHERE produit_id = :produitId AND centre_stock_id IN (:stockIds)", nativeQuery = true)
+    int supprimerParProduitEtStocks(@Param("produitId") Long produitId, @Param("stockIds") Collection<Long> stockIds);
 
 }
@@ -0,0 +1,30 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.AffectationLigne;
+
+import java.util.List;
+
+/**
+ * Opérations ProduitStock écrites en JDBC pour les traitements en masse.
+ */
+public interface ProduitStockRepositoryCustom {
+
+    /**
+     * Insère ou met à jour (INSERT ... ON DUPLICATE KEY UPDATE) les quantités d'un lot d'affectations.
+     * Le lot est envoyé en un seul aller-retour (rewriteBatchedStatements=true).
+     */
+    void upsertQuantites(List<AffectationLigne> lignes);
+
+    /**
+     * Crée les associations absentes d'un lot, sans modifier celles qui existent déjà.
+     */
+    void upsertQuantitesSiAbsentes(List<AffectationLigne> lignes);
+
+    /**
+     * Crée la clé unique (produit_id, centre_stock_id) si elle manque, après avoir fusionné les associations
+     * en double: la ligne de plus petit id est gardée et reçoit la somme des quantités (les rapports
+     * additionnaient déjà les doublons), les autres sont supprimées.
+     * @return Le nombre de lignes en double supprimées
+     */
+    int assurerCleUnique();
+}
@@ -0,0 +1,66 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.AffectationLigne;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+public class ProduitStockRepositoryImpl implements ProduitStockRepositoryCustom {
+
+    // Une association créée hérite du seuil d'alerte de son produit (seuil_effectif)
+    private static final String SQL_UPSERT_QUANTITE =
+            "INSERT INTO produit_stock (produit_id, centre_stock_id, quantite, seuil_effectif) " +
+            "VALUES (?, ?, ?, (SELECT p.seuil_alerte FROM produits p WHERE p.id = ?)) " +
+            "ON DUPLICATE KEY UPDATE quantite = VALUES(quantite)";
+
+    private static final String SQL_INSERT_SI_ABSENTE =
+            "INSERT INTO produit_stock (produit_id, centre_stock_id, quantite, seuil_effectif) " +
+            "VALUES (?, ?, ?, (SELECT p.seuil_alerte FROM produits p WHERE p.id = ?)) " +
+            "ON DUPLICATE KEY UPDATE quantite = quantite";
+
+    private static final String SQL_CLE_UNIQUE_EXISTE =
+            "SELECT COUNT(*) FROM information_schema.statistics " +
+            "WHERE table_schema = DATABASE() AND table_name = 'produit_stock' AND index_name = 'uk_produit_stock'";
+
+    private static final String SQL_DOUBLONS =
+            "SELECT produit_id, centre_stock_id, MIN(id) AS id_garde, SUM(COALESCE(quantite, 0)) AS total " +
+            "FROM produit_stock GROUP BY produit_id, centre_stock_id HAVING COUNT(*) > 1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void upsertQuantites(List<AffectationLigne> lignes) {
+        jdbcTemplate.batchUpdate(SQL_UPSERT_QUANTITE, lignes, lignes.size(), (ps, ligne) -> {
+            ps.setLong(1, ligne.getProduitId());
+            ps.setLong(2, ligne.getStockId());
+            ps.setInt(3, ligne.getQuantite());
+            ps.setLong(4, ligne.getProduitId());
+        });
+    }
+
+    @Override
+    public void upsertQuantitesSiAbsentes(List<AffectationLigne> lignes) {
+        jdbcTemplate.batchUpdate(SQL_INSERT_SI_ABSENTE, lignes, lignes.size(), (ps, ligne) -> {
+            ps.setLong(1, ligne.getProduitId());
+            ps.setLong(2, ligne.getStockId());
+            ps.setInt(3, ligne.getQuantite());
+            ps.setLong(4, ligne.getProduitId());
+        });
+    }
+
+    @Override
+    public int assurerCleUnique() {
+        Integer existe = jdbcTemplate.queryForObject(SQL_CLE_UNIQUE_EXISTE, Integer.class);
+        if (existe != null && existe > 0) {
+            return 0;
+        }
+        jdbcTemplate.update("UPDATE produit_stock ps JOIN (" + SQL_DOUBLONS + ") d ON ps.id = d.id_garde " +
+                "SET ps.quantite = d.total");
+        int supprimees = jdbcTemplate.update("DELETE ps FROM produit_stock ps JOIN (" + SQL_DOUBLONS + ") d " +
+                "ON ps.produit_id = d.produit_id AND ps.centre_stock_id = d.centre_stock_id AND ps.id <> d.id_garde");
+        jdbcTemplate.execute("ALTER TABLE produit_stock ADD CONSTRAINT uk_produit_stock UNIQUE (produit_id, centre_stock_id)");
+        return supprimees;
+    }
+}
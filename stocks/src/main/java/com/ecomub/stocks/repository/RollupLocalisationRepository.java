@@ -0,0 +1,82 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.LigneRapportLocalisation;
+import com.ecomub.stocks.model.RollupLocalisation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Repository
+public interface RollupLocalisationRepository extends JpaRepository<RollupLocalisation, Long>, RollupLocalisationRepositoryCustom {
+
+    // Lignes du rapport par localisation lues depuis l'agrégat (localisations déjà normalisées)
+    @Query("SELECT new com.ecomub.stocks.model.LigneRapportLocalisation(" +
+           "r.stockId, s.nom, r.ville, r.pays, r.produitId, p.reference, p.nom, r.quantite) " +
+           "FROM RollupLocalisation r JOIN Stock s ON s.id = r.stockId JOIN Produit p ON p.id = r.produitId " +
+           "ORDER BY r.ville, p.reference, r.stockId")
+    List<LigneRapportLocalisation> findLignesRapportParVille();
+
+    @Query("SELECT new com.ecomub.stocks.model.LigneRapportLocalisation(" +
+           "r.stockId, s.nom, r.ville, r.pays, r.produitId, p.reference, p.nom, r.quantite) " +
+           "FROM RollupLocalisation r JOIN Stock s ON s.id = r.stockId JOIN Produit p ON p.id = r.produitId " +
+           "ORDER BY r.pays, p.reference, r.stockId")
+    List<LigneRapportLocalisation> findLignesRapportParPays();
+
+    // Variantes en flux (curseur MySQL) pour l'écriture en continu du rapport
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.LigneRapportLocalisation(" +
+           "r.stockId, s.nom, r.ville, r.pays, r.produitId, p.reference, p.nom, r.quantite) " +
+           "FROM RollupLocalisation r JOIN Stock s ON s.id = r.stockId JOIN Produit p ON p.id = r.produitId " +
+           "ORDER BY r.ville, p.reference, r.stockId")
+    Stream<LigneRapportLocalisation> streamLignesRapportParVille();
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT new com.ecomub.stocks.model.LigneRapportLocalisation(" +
+           "r.stockId, s.nom, r.ville, r.pays, r.produitId, p.reference, p.nom, r.quantite) " +
+           "FROM RollupLocalisation r JOIN Stock s ON s.id = r.stockId JOIN Produit p ON p.id = r.produitId " +
+           "ORDER BY r.pays, p.reference, r.stockId")
+    Stream<LigneRapportLocalisation> streamLignesRapportParPays();
+
+    // Colonnes du rapport: stocks de chaque localisation [localisation, stockId, nom du stock]
+    @Query("SELECT DISTINCT r.ville, s.id, s.nom FROM RollupLocalisation r JOIN Stock s ON s.id = r.stockId ORDER BY s.id")
+    List<Object[]> findStocksParVille();
+
+    @Query("SELECT DISTINCT r.pays, s.id, s.nom FROM RollupLocalisation r JOIN Stock s ON s.id = r.stockId ORDER BY s.id")
+    List<Object[]> findStocksParPays();
+
+    // Variantes exactes (binaires) de chaque localisation et leur clé de comparaison dans la collation
+    // de la colonne (insensible à la casse et aux accents): [variante, clé]
+    @Query(value = "SELECT DISTINCT ville COLLATE utf8mb4_bin, HEX(WEIGHT_STRING(ville)) FROM rollup_localisation",
+           nativeQuery = true)
+    List<Object[]> findVariantesVilles();
+
+    @Query(value = "SELECT DISTINCT pays COLLATE utf8mb4_bin, HEX(WEIGHT_STRING(pays)) FROM rollup_localisation",
+           nativeQuery = true)
+    List<Object[]> findVariantesPays();
+
+    /**
+     * Nom du groupe de chaque variante de localisation. Les variantes égales pour la collation de la base
+     * (celle du ORDER BY des rapports) forment une seule localisation, nommée d'après la plus petite variante:
+     * rapports en continu et en mémoire regroupent ainsi les lignes de la même façon.
+     */
+    default Map<String, String> findNomsLocalisations(boolean parVille) {
+        List<Object[]> variantes = parVille ? findVariantesVilles() : findVariantesPays();
+        Map<String, String> nomParCle = new HashMap<>();
+        for (Object[] variante : variantes) {
+            nomParCle.merge((String) variante[1], (String) variante[0], (a, b) -> a.compareTo(b) <= 0 ? a : b);
+        }
+        Map<String, String> noms = new HashMap<>();
+        for (Object[] variante : variantes) {
+            noms.put((String) variante[0], nomParCle.get((String) variante[1]));
+        }
+        return noms;
+    }
+}
@@ -0,0 +1,25 @@
+package com.ecomub.stocks.repository;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Maintenance des agrégats rollup_localisation et rollup_pays, écrite en SQL ensembliste.
+ */
+public interface RollupLocalisationRepositoryCustom {
+
+    /**
+     * Recalcule les agrégats des associations (stock, produit) du produit cartésien des deux listes,
+     * à partir de produit_stock: les lignes disparues sont supprimées, les autres insérées ou mises à jour.
+     * rollup_pays reçoit les deltas signés (quantité, nombre d'associations) de ces seules lignes.
+     * Une liste null signifie "sans filtre" (au moins l'une des deux doit être fournie).
+     */
+    void rafraichir(Collection<Long> stockIds, Collection<Long> produitIds);
+
+    /**
+     * Compte les écarts entre les agrégats et un recalcul complet depuis produit_stock,
+     * puis reconstruit entièrement les deux tables.
+     * @return Les écarts constatés et le nombre de lignes reconstruites
+     */
+    Map<String, Long> reconstruire();
+}
@@ -0,0 +1,180 @@
+package com.ecomub.stocks.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class RollupLocalisationRepositoryImpl implements RollupLocalisationRepositoryCustom {
+
+    // Taille maximale des lots d'instructions envoyés en un aller-retour
+    private static final int TAILLE_LOT = 1000;
+
+    private static final String PAYS_NORMALISE = "COALESCE(NULLIF(TRIM(s.pays), ''), 'Non défini')";
+    private static final String VILLE_NORMALISEE = "COALESCE(NULLIF(TRIM(s.ville), ''), 'Non défini')";
+
+    // Agrégat recalculé depuis produit_stock (une ligne par association)
+    private static final String SQL_SOURCE_LOCALISATION =
+            "SELECT ps.centre_stock_id AS stock_id, ps.produit_id AS produit_id, " +
+            PAYS_NORMALISE + " AS pays, " + VILLE_NORMALISEE + " AS ville, " +
+            "s.type_stock AS type_stock, COALESCE(ps.quantite, 0) AS quantite " +
+            "FROM produit_stock ps JOIN stocks s ON s.id = ps.centre_stock_id";
+
+    private static final String SQL_INSERT_LOCALISATION =
+            "INSERT INTO rollup_localisation (stock_id, produit_id, pays, ville, type_stock, quantite) ";
+
+    private static final String SQL_MAJ_LOCALISATION =
+            " ON DUPLICATE KEY UPDATE pays = VALUES(pays), ville = VALUES(ville), " +
+            "type_stock = VALUES(type_stock), quantite = VALUES(quantite)";
+
+    private static final String SQL_SOURCE_PAYS =
+            "SELECT pays, type_stock, produit_id, SUM(quantite) AS quantite, COUNT(*) AS nombre_lignes " +
+            "FROM rollup_localisation";
+
+    private static final String SQL_INSERT_PAYS =
+            "INSERT INTO rollup_pays (pays, type_stock, produit_id, quantite, nombre_lignes) ";
+
+    // Contributions des associations touchées à l'agrégat par pays
+    private static final String SQL_CONTRIBUTIONS = "SELECT r.pays, r.type_stock, r.produit_id, r.quantite FROM rollup_localisation r";
+
+    private static final String SQL_DELTA_PAYS = SQL_INSERT_PAYS + "VALUES (?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE quantite = quantite + VALUES(quantite), nombre_lignes = nombre_lignes + VALUES(nombre_lignes)";
+
+    private static final String SQL_SUPPRIMER_PAYS_VIDE =
+            "DELETE FROM rollup_pays WHERE pays = ? AND type_stock <=> ? AND produit_id = ? AND nombre_lignes <= 0";
+
+    // Clé de l'agrégat par pays, triée pour que les upserts verrouillent toujours dans le même ordre
+    private record ClePays(String pays, String typeStock, long produitId) implements Comparable<ClePays> {
+        private static final Comparator<ClePays> ORDRE = Comparator.comparing(ClePays::pays)
+                .thenComparing(ClePays::typeStock, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingLong(ClePays::produitId);
+
+        @Override
+        public int compareTo(ClePays autre) {
+            return ORDRE.compare(this, autre);
+        }
+    }
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Override
+    public void rafraichir(Collection<Long> stockIds, Collection<Long> produitIds) {
+        if (stockIds == null && produitIds == null) {
+            throw new IllegalArgumentException("Au moins un filtre (stocks ou produits) est requis.");
+        }
+        if ((stockIds != null && stockIds.isEmpty()) || (produitIds != null && produitIds.isEmpty())) {
+            return;
+        }
+        MapSqlParameterSource parametres = new MapSqlParameterSource()
+                .addValue("stockIds", stockIds)
+                .addValue("produitIds", produitIds);
+
+        // 1. Agrégat par association: suppression des lignes disparues puis upsert depuis produit_stock,
+        // en relevant les contributions avant et après (lignes verrouillées jusqu'à la fin de la transaction)
+        String filtreRollup = (stockIds != null ? " AND r.stock_id IN (:stockIds)" : "")
+                + (produitIds != null ? " AND r.produit_id IN (:produitIds)" : "");
+        Map<ClePays, long[]> deltas = new TreeMap<>();
+        cumulerContributions(deltas, SQL_CONTRIBUTIONS + " WHERE 1 = 1" + filtreRollup + " FOR UPDATE", parametres, -1);
+
+        jdbcTemplate.update(
+                "DELETE r FROM rollup_localisation r LEFT JOIN produit_stock ps " +
+                "ON ps.centre_stock_id = r.stock_id AND ps.produit_id = r.produit_id " +
+                "WHERE ps.id IS NULL" + filtreRollup, parametres);
+
+        String filtreSource = (stockIds != null ? " AND ps.centre_stock_id IN (:stockIds)" : "")
+                + (produitIds != null ? " AND ps.produit_id IN (:produitIds)" : "");
+        jdbcTemplate.update(SQL_INSERT_LOCALISATION + SQL_SOURCE_LOCALISATION +
+                " WHERE 1 = 1" + filtreSource + SQL_MAJ_LOCALISATION, parametres);
+
+        cumulerContributions(deltas, SQL_CONTRIBUTIONS + " WHERE 1 = 1" + filtreRollup, parametres, 1);
+
+        // 2. Agrégat par pays: application des deltas signés, sans relire les autres associations du produit
+        deltas.values().removeIf(delta -> delta[0] == 0 && delta[1] == 0);
+        if (deltas.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<ClePays, long[]>> aAppliquer = new ArrayList<>(deltas.entrySet());
+        JdbcTemplate jdbc = jdbcTemplate.getJdbcTemplate();
+        jdbc.batchUpdate(SQL_DELTA_PAYS, aAppliquer, TAILLE_LOT, (ps, entree) -> {
+            ps.setString(1, entree.getKey().pays());
+            ps.setString(2, entree.getKey().typeStock());
+            ps.setLong(3, entree.getKey().produitId());
+            ps.setLong(4, entree.getValue()[0]);
+            ps.setLong(5, entree.getValue()[1]);
+        });
+        // Groupes dont la dernière association a disparu
+        List<ClePays> videsPossibles = aAppliquer.stream()
+                .filter(entree -> entree.getValue()[1] < 0)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!videsPossibles.isEmpty()) {
+            jdbc.batchUpdate(SQL_SUPPRIMER_PAYS_VIDE, videsPossibles, TAILLE_LOT, (ps, cle) -> {
+                ps.setString(1, cle.pays());
+                ps.setString(2, cle.typeStock());
+                ps.setLong(3, cle.produitId());
+            });
+        }
+    }
+
+    // Ajoute (signe 1) ou retire (signe -1) la quantité et l'association de chaque ligne à son groupe par pays
+    private void cumulerContributions(Map<ClePays, long[]> deltas, String sql, MapSqlParameterSource parametres, int signe) {
+        jdbcTemplate.query(sql, parametres, (RowCallbackHandler) rs -> {
+            long[] delta = deltas.computeIfAbsent(
+                    new ClePays(rs.getString(1), rs.getString(2), rs.getLong(3)), cle -> new long[2]);
+            delta[0] += signe * rs.getLong(4);
+            delta[1] += signe;
+        });
+    }
+
+    @Override
+    public Map<String, Long> reconstruire() {
+        MapSqlParameterSource aucun = new MapSqlParameterSource();
+
+        // Écarts de l'agrégat par association: lignes manquantes ou différentes, puis lignes en trop
+        long ecartsLocalisation = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (" + SQL_SOURCE_LOCALISATION + ") f " +
+                "LEFT JOIN rollup_localisation r ON r.stock_id = f.stock_id AND r.produit_id = f.produit_id " +
+                "WHERE r.id IS NULL OR r.quantite <> f.quantite OR r.pays <> f.pays OR r.ville <> f.ville " +
+                "OR NOT (r.type_stock <=> f.type_stock)", aucun, Long.class)
+                + jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM rollup_localisation r LEFT JOIN produit_stock ps " +
+                "ON ps.centre_stock_id = r.stock_id AND ps.produit_id = r.produit_id WHERE ps.id IS NULL",
+                aucun, Long.class);
+
+        // Écarts de l'agrégat par pays, comparé à un recalcul direct depuis produit_stock
+        String sourcePays = "SELECT pays, type_stock, produit_id, SUM(quantite) AS quantite, COUNT(*) AS nombre_lignes " +
+                "FROM (" + SQL_SOURCE_LOCALISATION + ") l GROUP BY pays, type_stock, produit_id";
+        String jointurePays = "r.pays = f.pays AND r.type_stock <=> f.type_stock AND r.produit_id = f.produit_id";
+        long ecartsPays = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (" + sourcePays + ") f LEFT JOIN rollup_pays r ON " + jointurePays +
+                " WHERE r.id IS NULL OR r.quantite <> f.quantite OR r.nombre_lignes <> f.nombre_lignes",
+                aucun, Long.class)
+                + jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM rollup_pays r LEFT JOIN (" + sourcePays + ") f ON " + jointurePays +
+                " WHERE f.produit_id IS NULL", aucun, Long.class);
+
+        // Reconstruction complète (DELETE plutôt que TRUNCATE, qui validerait implicitement la transaction)
+        jdbcTemplate.update("DELETE FROM rollup_pays", aucun);
+        jdbcTemplate.update("DELETE FROM rollup_localisation", aucun);
+        long lignesLocalisation = jdbcTemplate.update(SQL_INSERT_LOCALISATION + SQL_SOURCE_LOCALISATION, aucun);
+        long lignesPays = jdbcTemplate.update(SQL_INSERT_PAYS + SQL_SOURCE_PAYS +
+                " GROUP BY pays, type_stock, produit_id", aucun);
+
+        Map<String, Long> resultat = new LinkedHashMap<>();
+        resultat.put("ecartsLocalisation", ecartsLocalisation);
+        resultat.put("ecartsPays", ecartsPays);
+        resultat.put("lignesLocalisation", lignesLocalisation);
+        resultat.put("lignesPays", lignesPays);
+        return resultat;
+    }
+}
@@ -0,0 +1,16 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.RollupPays;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface RollupPaysRepository extends JpaRepository<RollupPays, Long> {
+
+    // Totaux par (pays, type de stock): [pays, typeStock, quantité totale, nombre d'associations]
+    @Query("SELECT r.pays, r.typeStock, SUM(r.quantite), SUM(r.nombreLignes) FROM RollupPays r GROUP BY r.pays, r.typeStock")
+    List<Object[]> findTotauxParPaysEtType();
+}
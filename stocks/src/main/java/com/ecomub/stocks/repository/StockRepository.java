@@ -3,16 +3,44 @@ package com.ecomub.stocks.repository;
 import com.ecomub.stocks.model.Stock;
 import com.ecomub.stocks.model.TypeStock;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface StockRepository extends JpaRepository<Stock, Long> {
+public interface StockRepository extends JpaRepository<Stock, Long>, JpaSpecificationExecutor<Stock> {
     Optional<Stock> findByVilleAndTypeStock(String ville, TypeStock typeStock);
     List<Stock> findAllByVilleAndTypeStock(String ville, TypeStock typeStock);
     Optional<Stock> findByNom(String nom);
     Optional<Stock> findByPrestataireAndVilleAndTypeStock(String prestataire, String ville, TypeStock typeStock);
     Optional<Stock> findByNomAndVilleAndTypeStock(String nom, String ville, TypeStock typeStock);
+
+    @Query("SELECT s.id FROM Stock s WHERE s.id IN :ids")
+    List<Long> findIdsExistants(@Param("ids") Collection<Long> ids);
+
+    // Localisation de tous les stocks: [id, pays, ville, typeStock]
+    @Query("SELECT s.id, s.pays, s.ville, s.typeStock FROM Stock s")
+    List<Object[]> findLocalisations();
+
+    // Stocks de l'export global; un filtre null est ignoré (pays et ville comparés sans tenir compte de la casse)
+    @Query("SELECT s FROM Stock s WHERE (:pays IS NULL OR LOWER(TRIM(s.pays)) = LOWER(TRIM(:pays))) " +
+           "AND (:ville IS NULL OR LOWER(TRIM(s.ville)) = LOWER(TRIM(:ville))) " +
+           "AND (:typeStock IS NULL OR s.typeStock = :typeStock) " +
+           "AND (:actif IS NULL OR s.actif = :actif) ORDER BY s.id")
+    List<Stock> findPourExport(@Param("pays") String pays, @Param("ville") String ville,
+                               @Param("typeStock") TypeStock typeStock, @Param("actif") Boolean actif);
+
+    // Curseur en flux (fetch size MIN_VALUE: le pilote MySQL lit les lignes une à une)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE))
+    @Query("SELECT s FROM Stock s ORDER BY s.id")
+    Stream<Stock> streamTous();
 }
@@ -0,0 +1,9 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.WalCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface WalCheckpointRepository extends JpaRepository<WalCheckpoint, String> {
+}
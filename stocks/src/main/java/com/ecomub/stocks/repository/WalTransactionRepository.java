@@ -0,0 +1,24 @@
+package com.ecomub.stocks.repository;
+
+import com.ecomub.stocks.model.WalTransaction;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+
+@Repository
+public interface WalTransactionRepository extends JpaRepository<WalTransaction, Long> {
+
+    // Insertion directe (sans SELECT préalable de merge), dans la transaction qui a écrit le groupe
+    @Modifying
+    @Query(value = "INSERT INTO wal_transaction (premiere_sequence, derniere_sequence) VALUES (:premiere, :derniere)",
+           nativeQuery = true)
+    void inserer(@Param("premiere") long premiereSequence, @Param("derniere") long derniereSequence);
+
+    @Modifying
+    @Query("DELETE FROM WalTransaction t WHERE t.premiereSequence IN :premieres")
+    int supprimer(@Param("premieres") Collection<Long> premieresSequences);
+}
@@ -0,0 +1,100 @@
+package com.ecomub.stocks.service;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cache mémoire des rapports, invalidé par les compteurs de {@link VersionsDonnees}.
+ *
+ * Chaque entrée mémorise les versions des données dont elle dépend, lues avant le calcul:
+ * elle est servie tant qu'aucune de ces données n'a été modifiée depuis.
+ */
+@Service
+public class CacheRapports {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheRapports.class);
+
+    @Value("${stocks.cache-rapports.capacite:256}")
+    private int capacite;
+
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    // LRU (ordre d'accès): au-delà de la capacité, seule l'entrée la moins récemment servie est évincée
+    private Map<String, Entree> entrees;
+
+    private record Entree(long[] versions, Object valeur) {}
+
+    @PostConstruct
+    public void initialiser() {
+        entrees = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entree> eldest) {
+                return size() > capacite;
+            }
+        };
+    }
+
+    /**
+     * Renvoie le rapport mémorisé sous cette clé s'il est à jour, sinon le calcule et le mémorise.
+     * Le rapport renvoyé est partagé entre les appelants: ses Map, List et Set sont non modifiables.
+     *
+     * @param cle         Nom du rapport et valeurs de ses paramètres (ex: "stock-faible:10")
+     * @param dependances Types de données lus par le rapport
+     * @param calcul      Calcul du rapport
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtenir(String cle, EnumSet<VersionsDonnees.TypeDonnee> dependances, Supplier<T> calcul) {
+        long[] versions = versionsDonnees.versions(dependances);
+        Entree entree;
+        synchronized (entrees) {
+            entree = entrees.get(cle);
+        }
+        if (entree != null && Arrays.equals(entree.versions(), versions)) {
+            log.debug("Rapport {} servi depuis le cache", cle);
+            return (T) entree.valeur();
+        }
+
+        // Calcul hors verrou: deux calculs concurrents d'un même rapport produisent la même valeur
+        T valeur = (T) figer(calcul.get());
+        synchronized (entrees) {
+            entrees.put(cle, new Entree(versions, valeur));
+        }
+        return valeur;
+    }
+
+    // Copie non modifiable, en profondeur, des collections du rapport (ordre d'itération et valeurs null conservés)
+    private static Object figer(Object valeur) {
+        if (valeur instanceof Map<?, ?> map) {
+            Map<Object, Object> copie = new LinkedHashMap<>(map.size() * 4 / 3 + 1);
+            map.forEach((k, v) -> copie.put(k, figer(v)));
+            return Collections.unmodifiableMap(copie);
+        }
+        if (valeur instanceof List<?> liste) {
+            List<Object> copie = new ArrayList<>(liste.size());
+            liste.forEach(element -> copie.add(figer(element)));
+            return Collections.unmodifiableList(copie);
+        }
+        if (valeur instanceof Set<?> ensemble) {
+            Set<Object> copie = new LinkedHashSet<>(ensemble.size() * 4 / 3 + 1);
+            ensemble.forEach(element -> copie.add(figer(element)));
+            return Collections.unmodifiableSet(copie);
+        }
+        return valeur;
+    }
+}
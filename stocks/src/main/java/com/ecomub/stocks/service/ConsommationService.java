@@ -0,0 +1,83 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.AffectationLigne;
+import com.ecomub.stocks.model.ConsommationStock;
+import com.ecomub.stocks.model.CouvertureStock;
+import com.ecomub.stocks.repository.ConsommationStockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Vitesse de consommation par (stock, produit) et jours de couverture.
+ *
+ * Chaque lot de livraisons appliqué met à jour une moyenne mobile exponentielle de la consommation
+ * journalière (voir {@link ConsommationStock}), sans relire l'historique, à la date de livraison de chaque ligne:
+ * - livraison le même jour: moyenne += lissage * quantité (poids plein le premier jour observé);
+ * - premier lot après g jours: moyenne = moyenne * (1 - lissage)^g + lissage * quantité.
+ * La mise à jour est un upsert SQL par association (ConsommationStockRepositoryImpl), sûr face aux imports simultanés.
+ */
+@Service
+public class ConsommationService {
+
+    private static final Logger log = LoggerFactory.getLogger(ConsommationService.class);
+
+    // Consommation journalière en-dessous de laquelle une association n'est pas classée (couverture non significative)
+    private static final double TAUX_MINIMAL = 0.01;
+    private static final int LIMITE_MAX = 1000;
+
+    @Value("${stocks.consommation.lissage:0.2}")
+    private double lissage;
+
+    @Autowired
+    private ConsommationStockRepository consommationStockRepository;
+
+    public record Cle(long stockId, long produitId) {
+    }
+
+    private static final Comparator<Cle> ORDRE_CLES = Comparator.comparingLong(Cle::stockId).thenComparingLong(Cle::produitId);
+
+    /**
+     * Intègre les livraisons appliquées par un import, groupées par date de livraison
+     * (quantités livrées par association).
+     */
+    @Transactional
+    public void enregistrer(Map<LocalDate, Map<Cle, Integer>> livraisonsParJour) {
+        int lignes = 0;
+        // Jours croissants et associations triées: deux imports simultanés verrouillent dans le même ordre
+        for (Map.Entry<LocalDate, Map<Cle, Integer>> jour : new TreeMap<>(livraisonsParJour).entrySet()) {
+            List<AffectationLigne> livraisons = jour.getValue().entrySet().stream()
+                    .filter(livraison -> livraison.getValue() != null && livraison.getValue() > 0)
+                    .sorted(Map.Entry.comparingByKey(ORDRE_CLES))
+                    .map(livraison -> new AffectationLigne(
+                            livraison.getKey().produitId(), livraison.getKey().stockId(), livraison.getValue()))
+                    .toList();
+            if (!livraisons.isEmpty()) {
+                consommationStockRepository.integrerLivraisons(livraisons, jour.getKey(), lissage);
+                lignes += livraisons.size();
+            }
+        }
+        log.debug("Consommation mise à jour pour {} associations et jours", lignes);
+    }
+
+    /**
+     * Associations classées par jours de couverture croissants (les premières à s'épuiser).
+     */
+    @Transactional(readOnly = true)
+    public List<CouvertureStock> getCouvertures(int limite) {
+        if (limite <= 0) {
+            throw new IllegalArgumentException("La limite doit être strictement positive.");
+        }
+        return consommationStockRepository.findCouvertures(
+                lissage, LocalDate.now(), TAUX_MINIMAL, Math.min(limite, LIMITE_MAX));
+    }
+}
@@ -0,0 +1,55 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.repository.MappingLivreurRepository;
+import com.ecomub.stocks.repository.ProduitRepository;
+import com.ecomub.stocks.repository.StockRepository;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Résumé du tableau de bord: les compteurs affichés par la page, en une seule réponse.
+ *
+ * Chaque compteur est mémorisé par {@link CacheRapports} avec ses propres dépendances: une écriture
+ * ne fait recompter que la table modifiée, et les écritures sur produit_stock (imports, vidages de
+ * l'écriture différée) n'invalident rien. Chaque comptage est un simple COUNT sur sa table.
+ */
+@Service
+public class DashboardService {
+
+    private static final Logger log = LoggerFactory.getLogger(DashboardService.class);
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private ProduitRepository produitRepository;
+
+    @Autowired
+    private MappingLivreurRepository mappingLivreurRepository;
+
+    @Autowired
+    private CacheRapports cacheRapports;
+
+    public Map<String, Object> getResume() {
+        long debut = System.currentTimeMillis();
+        Map<String, Object> compteurs = new HashMap<>();
+        compteurs.put("stocks", cacheRapports.obtenir("dashboard:stocks", EnumSet.of(TypeDonnee.STOCK),
+                stockRepository::count));
+        compteurs.put("produits", cacheRapports.obtenir("dashboard:produits", EnumSet.of(TypeDonnee.PRODUIT),
+                produitRepository::count));
+        compteurs.put("livreurs", cacheRapports.obtenir("dashboard:livreurs", EnumSet.of(TypeDonnee.MAPPING_LIVREUR),
+                mappingLivreurRepository::count));
+
+        Map<String, Object> resume = new HashMap<>();
+        resume.put("compteurs", compteurs);
+        log.debug("Résumé du tableau de bord servi en {} ms", System.currentTimeMillis() - debut);
+        return resume;
+    }
+}
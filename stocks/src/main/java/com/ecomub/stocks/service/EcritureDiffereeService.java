@@ -0,0 +1,659 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.WalCheckpoint;
+import com.ecomub.stocks.model.WalTransaction;
+import com.ecomub.stocks.repository.ProduitStockRepository;
+import com.ecomub.stocks.repository.WalCheckpointRepository;
+import com.ecomub.stocks.repository.WalTransactionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * Écriture différée (write-behind) des mouvements de quantité ProduitStock.
+ *
+ * Un décrément est contrôlé contre une quantité projetée tenue en mémoire (quantité en base, lue une
+ * fois par couple (stock, produit), plus les deltas pas encore appliqués), puis réservé: aucune lecture
+ * ni verrou en base par mouvement. Juste avant la validation de la transaction de l'appelant, ses deltas
+ * sont ajoutés au journal local (WAL) en un seul groupe synchronisé sur disque, et le groupe est
+ * enregistré dans wal_transaction par cette même transaction: un échec d'écriture du journal l'annule.
+ * Après validation, les deltas sont regroupés en mémoire; après annulation, la réservation est libérée.
+ *
+ * Un vidage périodique applique les deltas regroupés en base dans une seule transaction, qui supprime
+ * aussi les groupes appliqués de wal_transaction: au redémarrage, seuls les groupes encore présents
+ * sont rejoués (reprise exactement une fois, en même temps que les autres effets de la transaction).
+ *
+ * Les autres écritures sur produit_stock (formulaires, affectations, suppressions) signalent leurs
+ * lignes via {@link #invalider}: la projection est relue après leur validation.
+ *
+ * Désactivé par défaut (propriété stocks.ecriture-differee.active).
+ */
+@Service
+public class EcritureDiffereeService {
+
+    private static final Logger log = LoggerFactory.getLogger(EcritureDiffereeService.class);
+
+    private static final String CHECKPOINT_NOM = "produit_stock";
+    private static final String PREFIXE_SEGMENT = "wal-";
+    private static final String SUFFIXE_SEGMENT = ".log";
+    // seq (8) + stockId (8) + produitId (8) + delta (4) + crc (4)
+    private static final int TAILLE_ENREGISTREMENT = 32;
+
+    /**
+     * Mouvement refusé pour une raison métier (produit non affecté au stock, stock insuffisant).
+     */
+    public static class MouvementRefuseException extends RuntimeException {
+        public MouvementRefuseException(String message) {
+            super(message);
+        }
+    }
+
+    @Value("${stocks.ecriture-differee.active:false}")
+    private boolean active;
+
+    @Value("${stocks.ecriture-differee.wal-repertoire:./data/wal}")
+    private String walRepertoire;
+
+    @Autowired
+    private ProduitStockRepository produitStockRepository;
+
+    @Autowired
+    private WalCheckpointRepository walCheckpointRepository;
+
+    @Autowired
+    private WalTransactionRepository walTransactionRepository;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private FluxStocksService fluxStocksService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Protège les états en mémoire ci-dessous (sections courtes, sans entrée/sortie)
+    private final Object verrou = new Object();
+    // Protège le fichier du journal; jamais pris en détenant verrou
+    private final Object verrouJournal = new Object();
+    // Exclut un vidage en cours pendant le chargement d'une projection; pris avant verrou et verrouJournal
+    private final Object verrouVidage = new Object();
+
+    // Quantité projetée par ligne: base + deltas journalisés non appliqués + retraits réservés
+    private final Map<Cle, Integer> projections = new HashMap<>();
+    // Retraits réservés par des transactions pas encore terminées
+    private final Map<Cle, Integer> reserves = new HashMap<>();
+    // Lignes écrites hors journal par une transaction en cours (nombre de transactions)
+    private final Map<Cle, Integer> clesEnEcriture = new HashMap<>();
+    // Incrémenté à chaque invalidation, pour écarter une projection lue avant celle-ci
+    private long generationBase = 0;
+    // Deltas des groupes validés, pas encore pris en charge par un vidage
+    private Map<Cle, Integer> enAttente = new HashMap<>();
+    private List<Long> groupesEnAttente = new ArrayList<>();
+
+    // Protégés par verrouJournal
+    private final TreeSet<Long> groupesNonAppliques = new TreeSet<>();
+    private long sequence = 0;
+    private Path repertoire;
+    private FileChannel canal;
+
+    private TransactionTemplate transactionEcriture;
+    private TransactionTemplate transactionLecture;
+
+    private record Cle(long stockId, long produitId) {
+    }
+
+    @PostConstruct
+    public void initialiser() {
+        if (!active) {
+            return;
+        }
+        transactionEcriture = new TransactionTemplate(transactionManager);
+        // Lecture de la dernière valeur validée, hors de l'instantané de la transaction de l'appelant
+        transactionLecture = new TransactionTemplate(transactionManager);
+        transactionLecture.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transactionLecture.setReadOnly(true);
+
+        try {
+            repertoire = Paths.get(walRepertoire);
+            Files.createDirectories(repertoire);
+            rejouerJournal();
+            ouvrirNouveauSegment();
+            log.info("Écriture différée active - journal: {}", repertoire.toAbsolutePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible d'initialiser le journal d'écriture différée", e);
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Décrémente la quantité d'un produit dans un stock via le journal, dans la transaction de l'appelant.
+     *
+     * Contrôlé et réservé contre la quantité projetée en mémoire; seule la première utilisation d'une
+     * ligne la lit en base. Le delta est journalisé à la validation et oublié en cas d'annulation.
+     *
+     * @return la nouvelle quantité projetée (base + deltas non appliqués)
+     * @throws IllegalStateException si aucune transaction n'est active
+     * @throws MouvementRefuseException si le produit n'est pas affecté au stock ou si le stock est insuffisant
+     */
+    public int decrementer(Long stockId, Long produitId, int quantite) {
+        if (quantite <= 0) {
+            throw new IllegalArgumentException("La quantité à décrémenter doit être positive.");
+        }
+        JournalisationTransaction transaction = transactionCourante();
+        Cle cle = new Cle(stockId, produitId);
+        while (true) {
+            synchronized (verrou) {
+                Integer projetee = clesEnEcriture.containsKey(cle) ? null : projections.get(cle);
+                if (projetee != null) {
+                    return reserver(transaction, cle, projetee, quantite);
+                }
+            }
+            synchronized (verrouVidage) {
+                long generation;
+                boolean enEcriture;
+                synchronized (verrou) {
+                    generation = generationBase;
+                    enEcriture = clesEnEcriture.containsKey(cle);
+                }
+                // Ligne écrite hors journal par une transaction en cours: lecture verrouillante dans la
+                // transaction de l'appelant, qui attend sa validation; la valeur n'est pas conservée
+                Integer quantiteEnBase = enEcriture
+                        ? produitStockRepository.findQuantiteVerrouillee(stockId, produitId).orElse(null)
+                        : transactionLecture.execute(status ->
+                                produitStockRepository.findQuantite(stockId, produitId).orElse(null));
+                if (quantiteEnBase == null) {
+                    throw new MouvementRefuseException("Ce produit n'est pas affecté à ce stock");
+                }
+                synchronized (verrou) {
+                    // Aucun vidage en cours (verrouVidage): les deltas non appliqués sont tous en mémoire
+                    int projetee = quantiteEnBase + enAttente.getOrDefault(cle, 0) + reserves.getOrDefault(cle, 0);
+                    if (enEcriture) {
+                        return reserver(transaction, cle, projetee, quantite);
+                    }
+                    if (generation == generationBase) {
+                        projections.put(cle, projetee);
+                    }
+                }
+            }
+        }
+    }
+
+    // Appelé sous verrou
+    private int reserver(JournalisationTransaction transaction, Cle cle, int disponible, int quantite) {
+        if (disponible < quantite) {
+            throw new MouvementRefuseException("Stock insuffisant. Disponible: " + disponible);
+        }
+        projections.computeIfPresent(cle, (c, projetee) -> projetee - quantite);
+        reserves.merge(cle, -quantite, Integer::sum);
+        transaction.retraits.merge(cle, -quantite, Integer::sum);
+        return disponible - quantite;
+    }
+
+    /**
+     * Incrémente la quantité d'un produit dans un stock via le journal, dans la transaction de l'appelant.
+     * L'ajout ne compte dans la quantité projetée qu'après validation.
+     */
+    public void incrementer(Long stockId, Long produitId, int quantite) {
+        if (quantite <= 0) {
+            throw new IllegalArgumentException("La quantité à incrémenter doit être positive.");
+        }
+        JournalisationTransaction transaction = transactionCourante();
+        synchronized (verrou) {
+            transaction.ajouts.merge(new Cle(stockId, produitId), quantite, Integer::sum);
+        }
+    }
+
+    /**
+     * Signale une écriture hors journal sur une ligne produit_stock: sa projection est oubliée, et
+     * relue (verrouillée) tant que la transaction qui l'écrit n'est pas terminée.
+     */
+    public void invalider(Long stockId, Long produitId) {
+        if (!active || stockId == null || produitId == null) {
+            return;
+        }
+        Cle cle = new Cle(stockId, produitId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            synchronized (verrou) {
+                projections.remove(cle);
+                generationBase++;
+            }
+            return;
+        }
+        InvalidationApresValidation invalidation = null;
+        for (TransactionSynchronization synchronisation : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronisation instanceof InvalidationApresValidation existante && existante.service() == this) {
+                invalidation = existante;
+                break;
+            }
+        }
+        if (invalidation == null) {
+            invalidation = new InvalidationApresValidation();
+            TransactionSynchronizationManager.registerSynchronization(invalidation);
+        }
+        if (invalidation.cles.add(cle)) {
+            synchronized (verrou) {
+                projections.remove(cle);
+                clesEnEcriture.merge(cle, 1, Integer::sum);
+                generationBase++;
+            }
+        }
+    }
+
+    private JournalisationTransaction transactionCourante() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Le mouvement différé doit être appelé dans une transaction.");
+        }
+        for (TransactionSynchronization synchronisation : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronisation instanceof JournalisationTransaction journalisation && journalisation.service() == this) {
+                return journalisation;
+            }
+        }
+        JournalisationTransaction journalisation = new JournalisationTransaction();
+        TransactionSynchronizationManager.registerSynchronization(journalisation);
+        return journalisation;
+    }
+
+    // Avant validation: le groupe est écrit et synchronisé, puis enregistré dans la transaction;
+    // une exception ici annule la transaction
+    private void journaliser(JournalisationTransaction transaction) {
+        Map<Cle, Integer> deltas;
+        synchronized (verrou) {
+            deltas = transaction.deltas();
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        long premiere;
+        long derniere;
+        ByteBuffer groupe = ByteBuffer.allocate(deltas.size() * TAILLE_ENREGISTREMENT);
+        synchronized (verrouJournal) {
+            premiere = sequence + 1;
+            long seq = premiere;
+            for (Map.Entry<Cle, Integer> entree : deltas.entrySet()) {
+                int debut = groupe.position();
+                groupe.putLong(seq++).putLong(entree.getKey().stockId()).putLong(entree.getKey().produitId())
+                        .putInt(entree.getValue());
+                groupe.putInt(crc(groupe.array(), debut, TAILLE_ENREGISTREMENT - 4));
+            }
+            groupe.flip();
+            derniere = seq - 1;
+            long taille = -1;
+            try {
+                taille = canal.size();
+                while (groupe.hasRemaining()) {
+                    canal.write(groupe);
+                }
+                canal.force(false);
+            } catch (IOException e) {
+                reparerSegment(taille);
+                throw new UncheckedIOException("Écriture dans le journal impossible, transaction annulée", e);
+            }
+            sequence = derniere;
+            groupesNonAppliques.add(premiere);
+        }
+        transaction.premiereSequence = premiere;
+        walTransactionRepository.inserer(premiere, derniere);
+    }
+
+    // Retire un groupe partiellement écrit, pour que les suivants restent lisibles au rejeu
+    private void reparerSegment(long taille) {
+        try {
+            if (taille < 0) {
+                throw new IOException("Taille du segment inconnue");
+            }
+            canal.truncate(taille);
+        } catch (IOException e) {
+            log.error("Troncature du journal impossible, ouverture d'un nouveau segment", e);
+            try {
+                ouvrirNouveauSegment();
+            } catch (IOException ex) {
+                log.error("Ouverture d'un nouveau segment du journal impossible", ex);
+            }
+        }
+    }
+
+    // Après la fin de la transaction: réservation convertie en delta en attente, ou libérée
+    private void terminer(JournalisationTransaction transaction, int status) {
+        boolean validee = status == TransactionSynchronization.STATUS_COMMITTED;
+        Map<Cle, Integer> deltas;
+        synchronized (verrou) {
+            deltas = transaction.deltas();
+            transaction.retraits.forEach((cle, retrait) -> {
+                reserves.merge(cle, -retrait, Integer::sum);
+                if (reserves.get(cle) == 0) {
+                    reserves.remove(cle);
+                }
+            });
+            if (validee) {
+                if (transaction.premiereSequence > 0) {
+                    deltas.forEach((cle, delta) -> enAttente.merge(cle, delta, Integer::sum));
+                    groupesEnAttente.add(transaction.premiereSequence);
+                }
+                transaction.ajouts.forEach((cle, ajout) -> projections.computeIfPresent(cle, (c, projetee) -> projetee + ajout));
+            } else {
+                transaction.retraits.forEach((cle, retrait) -> projections.computeIfPresent(cle, (c, projetee) -> projetee - retrait));
+            }
+        }
+        if (validee || transaction.premiereSequence <= 0) {
+            return;
+        }
+        if (status == TransactionSynchronization.STATUS_ROLLED_BACK) {
+            // Groupe journalisé mais jamais enregistré en base: ignoré au rejeu
+            synchronized (verrouJournal) {
+                groupesNonAppliques.remove(transaction.premiereSequence);
+            }
+        } else {
+            // Issue inconnue: le groupe est conservé dans le journal, le rejeu au redémarrage tranchera
+            log.error("Issue inconnue de la transaction du groupe {} du journal: deltas {} non regroupés en mémoire",
+                    transaction.premiereSequence, deltas);
+            synchronized (verrou) {
+                deltas.keySet().forEach(projections::remove);
+                generationBase++;
+            }
+        }
+    }
+
+    /**
+     * Applique en base les deltas regroupés, puis supprime les segments de journal entièrement appliqués.
+     */
+    @Scheduled(fixedDelayString = "${stocks.ecriture-differee.intervalle-ms:300}")
+    public void vider() {
+        if (!active) {
+            return;
+        }
+        synchronized (verrouVidage) {
+            Map<Cle, Integer> lot;
+            List<Long> groupes;
+            synchronized (verrou) {
+                if (groupesEnAttente.isEmpty()) {
+                    return;
+                }
+                lot = enAttente;
+                groupes = groupesEnAttente;
+                enAttente = new HashMap<>();
+                groupesEnAttente = new ArrayList<>();
+            }
+            long derniereSequence;
+            synchronized (verrouJournal) {
+                derniereSequence = sequence;
+                try {
+                    ouvrirNouveauSegment();
+                } catch (IOException e) {
+                    log.error("Rotation du journal impossible", e);
+                }
+            }
+
+            try {
+                transactionEcriture.executeWithoutResult(status -> appliquer(lot, groupes, derniereSequence));
+            } catch (RuntimeException e) {
+                log.error("❌ Échec du vidage de {} deltas, nouvelle tentative au prochain cycle", lot.size(), e);
+                synchronized (verrou) {
+                    enAttente = fusionner(lot, enAttente);
+                    groupes.addAll(groupesEnAttente);
+                    groupesEnAttente = groupes;
+                }
+                return;
+            }
+
+            List<Path> segmentsAppliques;
+            synchronized (verrouJournal) {
+                groupes.forEach(groupesNonAppliques::remove);
+                segmentsAppliques = segmentsAppliques();
+            }
+            supprimerSegments(segmentsAppliques);
+            log.debug("Vidage écriture différée: {} lignes, {} groupes", lot.size(), groupes.size());
+        }
+    }
+
+    @PreDestroy
+    public void arreter() {
+        if (!active) {
+            return;
+        }
+        vider();
+        try {
+            synchronized (verrouJournal) {
+                canal.close();
+            }
+        } catch (IOException e) {
+            log.warn("Fermeture du journal d'écriture différée impossible", e);
+        }
+    }
+
+    // --- Journal ---
+
+    private void ouvrirNouveauSegment() throws IOException {
+        if (canal != null) {
+            canal.close();
+        }
+        Path segment = repertoire.resolve(String.format("%s%019d%s", PREFIXE_SEGMENT, sequence + 1, SUFFIXE_SEGMENT));
+        canal = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> listerSegments() {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> flux = Files.newDirectoryStream(repertoire, PREFIXE_SEGMENT + "*" + SUFFIXE_SEGMENT)) {
+            flux.forEach(segments::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Lecture du répertoire du journal impossible", e);
+        }
+        // Le nom contient la première séquence sur 19 chiffres : l'ordre lexical est l'ordre du journal
+        segments.sort(null);
+        return segments;
+    }
+
+    // Segments clos dont tous les groupes sont appliqués ou annulés (appelé sous verrouJournal)
+    private List<Path> segmentsAppliques() {
+        long premierNonApplique = groupesNonAppliques.isEmpty() ? Long.MAX_VALUE : groupesNonAppliques.first();
+        List<Path> segments = listerSegments();
+        List<Path> appliques = new ArrayList<>();
+        // Le dernier segment est le segment courant; un segment finit juste avant le début du suivant
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (premiereSequence(segments.get(i + 1)) <= premierNonApplique) {
+                appliques.add(segments.get(i));
+            }
+        }
+        return appliques;
+    }
+
+    private static long premiereSequence(Path segment) {
+        String nom = segment.getFileName().toString();
+        return Long.parseLong(nom.substring(PREFIXE_SEGMENT.length(), nom.length() - SUFFIXE_SEGMENT.length()));
+    }
+
+    private void supprimerSegments(List<Path> segments) {
+        for (Path segment : segments) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                // Sans conséquence: ses groupes ne sont plus dans wal_transaction
+                log.warn("Suppression du segment {} impossible", segment, e);
+            }
+        }
+    }
+
+    /**
+     * Rejoue les enregistrements des groupes encore présents dans wal_transaction, puis supprime les segments.
+     */
+    private void rejouerJournal() throws IOException {
+        TreeMap<Long, Long> groupes = new TreeMap<>();
+        for (WalTransaction groupe : walTransactionRepository.findAll()) {
+            groupes.put(groupe.getPremiereSequence(), groupe.getDerniereSequence());
+        }
+        sequence = walCheckpointRepository.findById(CHECKPOINT_NOM)
+                .map(WalCheckpoint::getDerniereSequence)
+                .orElse(0L);
+        if (!groupes.isEmpty()) {
+            sequence = Math.max(sequence, groupes.lastEntry().getValue());
+        }
+
+        List<Path> segments = listerSegments();
+        Map<Cle, Integer> aRejouer = new HashMap<>();
+        int enregistrements = 0;
+        ByteBuffer lecture = ByteBuffer.allocate(TAILLE_ENREGISTREMENT);
+
+        for (Path segment : segments) {
+            try (FileChannel entree = FileChannel.open(segment, StandardOpenOption.READ)) {
+                while (true) {
+                    lecture.clear();
+                    while (lecture.hasRemaining() && entree.read(lecture) > 0) {
+                        // lecture complète de l'enregistrement
+                    }
+                    if (lecture.hasRemaining()) {
+                        break; // Fin du segment (ou enregistrement tronqué par un arrêt brutal)
+                    }
+                    lecture.flip();
+                    long seq = lecture.getLong();
+                    long stockId = lecture.getLong();
+                    long produitId = lecture.getLong();
+                    int delta = lecture.getInt();
+                    int crcLu = lecture.getInt();
+                    if (crcLu != crc(lecture.array(), 0, TAILLE_ENREGISTREMENT - 4)) {
+                        log.warn("Enregistrement corrompu ignoré dans {} (séquence {})", segment, seq);
+                        break;
+                    }
+                    sequence = Math.max(sequence, seq);
+                    // Un groupe absent de wal_transaction est déjà appliqué, ou sa transaction a été annulée
+                    Map.Entry<Long, Long> groupe = groupes.floorEntry(seq);
+                    if (groupe != null && seq <= groupe.getValue()) {
+                        aRejouer.merge(new Cle(stockId, produitId), delta, Integer::sum);
+                        enregistrements++;
+                    }
+                }
+            }
+        }
+
+        if (!groupes.isEmpty()) {
+            long derniereSequence = sequence;
+            List<Long> premieres = new ArrayList<>(groupes.keySet());
+            transactionEcriture.executeWithoutResult(status -> appliquer(aRejouer, premieres, derniereSequence));
+            log.info("Journal rejoué: {} groupes, {} enregistrements, {} lignes ProduitStock",
+                    groupes.size(), enregistrements, aRejouer.size());
+        }
+        supprimerSegments(segments);
+    }
+
+    private void appliquer(Map<Cle, Integer> lot, List<Long> groupes, long derniereSequence) {
+        Set<Long> stockIds = new HashSet<>();
+        Set<Long> produitIds = new HashSet<>();
+        for (Map.Entry<Cle, Integer> entree : lot.entrySet()) {
+            if (entree.getValue() == 0) {
+                continue;
+            }
+            Cle cle = entree.getKey();
+            int lignes = produitStockRepository.ajouterDelta(cle.stockId(), cle.produitId(), entree.getValue());
+            if (lignes == 0) {
+                log.warn("Delta {} ignoré: Produit ID {} n'est plus affecté au Stock ID {}",
+                        entree.getValue(), cle.produitId(), cle.stockId());
+            } else {
+                stockIds.add(cle.stockId());
+                produitIds.add(cle.produitId());
+                fluxStocksService.signaler(cle.stockId(), cle.produitId());
+            }
+        }
+        if (!stockIds.isEmpty()) {
+            rollupService.rafraichir(stockIds, produitIds);
+        }
+        walTransactionRepository.supprimer(groupes);
+        walCheckpointRepository.save(new WalCheckpoint(CHECKPOINT_NOM, derniereSequence));
+    }
+
+    private static Map<Cle, Integer> fusionner(Map<Cle, Integer> anciens, Map<Cle, Integer> recents) {
+        Map<Cle, Integer> resultat = new HashMap<>(anciens);
+        recents.forEach((cle, delta) -> resultat.merge(cle, delta, Integer::sum));
+        return resultat;
+    }
+
+    private static int crc(byte[] donnees, int debut, int longueur) {
+        CRC32 crc = new CRC32();
+        crc.update(donnees, debut, longueur);
+        return (int) crc.getValue();
+    }
+
+    private class JournalisationTransaction implements TransactionSynchronization {
+        // Protégés par verrou
+        private final Map<Cle, Integer> retraits = new HashMap<>();
+        private final Map<Cle, Integer> ajouts = new HashMap<>();
+        // Groupe écrit dans le journal avant validation (0 tant qu'il ne l'est pas)
+        private long premiereSequence;
+
+        EcritureDiffereeService service() {
+            return EcritureDiffereeService.this;
+        }
+
+        // Delta net par ligne, sans les lignes revenues à zéro
+        Map<Cle, Integer> deltas() {
+            Map<Cle, Integer> deltas = new HashMap<>(retraits);
+            ajouts.forEach((cle, ajout) -> deltas.merge(cle, ajout, Integer::sum));
+            deltas.values().removeIf(delta -> delta == 0);
+            return deltas;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            journaliser(this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            terminer(this, status);
+        }
+    }
+
+    private class InvalidationApresValidation implements TransactionSynchronization {
+        private final Set<Cle> cles = new HashSet<>();
+
+        EcritureDiffereeService service() {
+            return EcritureDiffereeService.this;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            synchronized (verrou) {
+                for (Cle cle : cles) {
+                    clesEnEcriture.merge(cle, -1, Integer::sum);
+                    if (clesEnEcriture.get(cle) == 0) {
+                        clesEnEcriture.remove(cle);
+                    }
+                    projections.remove(cle);
+                }
+                generationBase++;
+            }
+        }
+    }
+}
@@ -5,11 +5,16 @@ import com.ecomub.stocks.repository.ProduitRepository;
 import com.ecomub.stocks.repository.ProduitStockRepository;
 import com.ecomub.stocks.repository.StockRepository;
 import org.apache.poi.ss.usermodel.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -17,6 +22,11 @@ import java.util.stream.Collectors;
 @Transactional
 public class ExcelImportServiceImpl implements ExcelImportService {
 
+    private static final Logger log = LoggerFactory.getLogger(ExcelImportServiceImpl.class);
+
+    // Format des dates lues dans les fichiers (voir getCellValueAsString)
+    private static final DateTimeFormatter FORMAT_DATE_LIVRAISON = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
     @Autowired
     private StockRepository stockRepository;
 
@@ -35,6 +45,15 @@ public class ExcelImportServiceImpl implements ExcelImportService {
     @Autowired
     private MappingLivreurService mappingLivreurService;
 
+    @Autowired
+    private EcritureDiffereeService ecritureDiffereeService;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private ConsommationService consommationService;
+
     @Override
     @Transactional
     public Map<String, Object> importLivraisonData(MultipartFile file, String paysSpecifie, String villeSpecifiee, String dateSpecifiee) throws Exception {
@@ -47,6 +66,11 @@ public class ExcelImportServiceImpl implements ExcelImportService {
             int totalLivraisons = 0;
             int totalProduits = 0;
             Set<String> livreursUniques = new HashSet<>();
+            // Associations décrémentées, dont les agrégats par localisation sont recalculés en fin d'import
+            Set<Long> stocksTouches = new HashSet<>();
+            Set<Long> produitsTouches = new HashSet<>();
+            // Quantités livrées par association, intégrées à la vitesse de consommation en fin d'import
+            Map<LocalDate, Map<ConsommationService.Cle, Integer>> livraisons = new HashMap<>();
 
             // Lecture du fichier Excel
             Workbook workbook = WorkbookFactory.create(file.getInputStream());
@@ -123,6 +147,13 @@ public class ExcelImportServiceImpl implements ExcelImportService {
 
                 // Mise à jour du stock
                 boolean stockUpdated = decrementStock(stock, produit, quantite);
+                if (stockUpdated) {
+                    stocksTouches.add(stock.getId());
+                    produitsTouches.add(produit.getId());
+                    livraisons.computeIfAbsent(lireDateLivraison(columns[3] >= 0 ? row.getCell(columns[3]) : null, dateSpecifiee),
+                            jour -> new HashMap<>())
+                            .merge(new ConsommationService.Cle(stock.getId(), produit.getId()), quantite, Integer::sum);
+                }
                 String pays = determinerPays(stock, paysSpecifie);
 
                 // Vérifier le filtre de pays
@@ -142,6 +173,12 @@ public class ExcelImportServiceImpl implements ExcelImportService {
                 }
             }
 
+            // En écriture différée, les agrégats sont recalculés au vidage du journal
+            if (!stocksTouches.isEmpty() && !ecritureDiffereeService.isActive()) {
+                rollupService.rafraichir(stocksTouches, produitsTouches);
+            }
+            consommationService.enregistrer(livraisons);
+
             // Finaliser les résultats
             completeResults(resultat, resultatsParPays, totalLivraisons, totalProduits, livreursUniques);
             workbook.close();
@@ -469,6 +506,21 @@ public class ExcelImportServiceImpl implements ExcelImportService {
      * @return true si la mise à jour a réussi, false sinon
      */
     private boolean decrementStock(Stock stock, Produit produit, int quantiteADecrementer) {
+        if (ecritureDiffereeService.isActive()) {
+            // Le delta est journalisé avec la transaction de l'import, la base est mise à jour par lots.
+            // Seuls les refus métier sont ignorés: une erreur d'accès aux données annule l'import
+            try {
+                int nouvelleQuantite = ecritureDiffereeService.decrementer(stock.getId(), produit.getId(), quantiteADecrementer);
+                log.debug("Décrémentation journalisée - Stock ID {}, Produit ID {}: quantité projetée {}",
+                        stock.getId(), produit.getId(), nouvelleQuantite);
+                return true;
+            } catch (EcritureDiffereeService.MouvementRefuseException e) {
+                log.info("Décrémentation ignorée - Stock {} (ID {}), Produit {} (ID {}), quantité {}: {}",
+                        stock.getNom(), stock.getId(), produit.getNom(), produit.getId(), quantiteADecrementer, e.getMessage());
+                return false;
+            }
+        }
+
         try {
             System.out.println("\n=== MISE À JOUR STOCK (Décrémentation) ===");
             System.out.println("Stock: " + stock.getNom() + " (ID: " + stock.getId() + ")");
@@ -677,6 +729,19 @@ public class ExcelImportServiceImpl implements ExcelImportService {
         return dateValue.equals(dateSpecifiee); // Utiliser equals pour une correspondance exacte
     }
 
+    // Date de livraison de la ligne (colonne Date, format dd/MM/yyyy), sinon la date filtrée, sinon aujourd'hui
+    private LocalDate lireDateLivraison(Cell dateCell, String dateSpecifiee) {
+        String valeur = getCellValueAsString(dateCell).trim();
+        if (valeur.isEmpty() && dateSpecifiee != null) {
+            valeur = dateSpecifiee.trim();
+        }
+        try {
+            return LocalDate.parse(valeur, FORMAT_DATE_LIVRAISON);
+        } catch (DateTimeParseException e) {
+            return LocalDate.now();
+        }
+    }
+
     private int parseQuantite(String quantiteStr) {
         try {
             // Essayer de parser comme entier d'abord
@@ -0,0 +1,228 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.LigneExportStock;
+import com.ecomub.stocks.model.Stock;
+import com.ecomub.stocks.model.TypeStock;
+import com.ecomub.stocks.repository.ProduitStockRepository;
+import com.ecomub.stocks.repository.StockRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Export global de plusieurs stocks dans une archive ZIP écrite en continu (un fichier xlsx ou csv par stock).
+ *
+ * Les lignes de tous les stocks sélectionnés sont lues par une seule requête en flux, triée par stock:
+ * chaque fois que le stock change, ses lignes sont confiées à un worker qui génère le fichier. Les fichiers
+ * terminés sont ajoutés à l'archive dans leur ordre d'achèvement, par le seul thread de la réponse.
+ * Le nombre de stocks en cours de génération est borné, ce qui borne aussi la mémoire utilisée.
+ */
+@Service
+public class ExportStocksService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExportStocksService.class);
+
+    public static final String FORMAT_XLSX = "xlsx";
+    public static final String FORMAT_CSV = "csv";
+
+    private static final char SEPARATEUR_CSV = ';';
+
+    @Value("${stocks.export.parallelisme:0}")
+    private int parallelismeExport;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private ProduitStockRepository produitStockRepository;
+
+    @Autowired
+    private StockService stockService;
+
+    // Pool dédié aux exports, pour ne pas occuper les threads des requêtes
+    private ExecutorService poolExport;
+    private int parallelisme;
+
+    @PostConstruct
+    public void initialiser() {
+        parallelisme = parallelismeExport > 0 ? parallelismeExport : Runtime.getRuntime().availableProcessors();
+        poolExport = Executors.newFixedThreadPool(parallelisme);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        poolExport.shutdownNow();
+    }
+
+    /**
+     * Valide le format avant l'ouverture de la réponse.
+     * @return Le format en minuscules
+     */
+    public String verifierFormat(String format) {
+        if (!FORMAT_XLSX.equalsIgnoreCase(format) && !FORMAT_CSV.equalsIgnoreCase(format)) {
+            throw new IllegalArgumentException("Le paramètre 'format' doit être '" + FORMAT_XLSX + "' ou '" + FORMAT_CSV + "'.");
+        }
+        return format.toLowerCase();
+    }
+
+    /**
+     * Écrit l'archive ZIP des stocks correspondant aux filtres (un filtre null est ignoré).
+     * Les stocks sans produit ont aussi leur fichier.
+     */
+    @Transactional(readOnly = true)
+    public void exporterStocks(String pays, String ville, TypeStock typeStock, Boolean actif,
+                               String format, OutputStream sortie) throws IOException {
+        final String formatFichier = verifierFormat(format);
+
+        // Chargés avant l'ouverture du curseur: aucune autre requête n'est possible pendant sa lecture
+        Map<Long, Stock> stocks = new LinkedHashMap<>();
+        for (Stock stock : stockRepository.findPourExport(vide(pays), vide(ville), typeStock, actif)) {
+            stocks.put(stock.getId(), stock);
+        }
+        log.info("Export global de {} stocks au format {}", stocks.size(), formatFichier);
+
+        ZipOutputStream zip = new ZipOutputStream(sortie, StandardCharsets.UTF_8);
+        CompletionService<FichierExport> termines = new ExecutorCompletionService<>(poolExport);
+        List<Future<FichierExport>> soumis = new ArrayList<>();
+        int enCours = 0;
+        try {
+            if (!stocks.isEmpty()) {
+                try (Stream<LigneExportStock> lignes = produitStockRepository.streamLignesExport(stocks.keySet())) {
+                    Long stockCourant = null;
+                    List<LigneExportStock> lot = new ArrayList<>();
+                    for (LigneExportStock ligne : (Iterable<LigneExportStock>) lignes::iterator) {
+                        if (stockCourant != null && !stockCourant.equals(ligne.getStockId())) {
+                            enCours = soumettre(termines, soumis, enCours, stocks.remove(stockCourant), lot, formatFichier, zip);
+                            lot = new ArrayList<>();
+                        }
+                        stockCourant = ligne.getStockId();
+                        lot.add(ligne);
+                    }
+                    if (stockCourant != null) {
+                        enCours = soumettre(termines, soumis, enCours, stocks.remove(stockCourant), lot, formatFichier, zip);
+                    }
+                }
+            }
+            // Stocks restants: aucune ligne produit
+            for (Stock stock : stocks.values()) {
+                enCours = soumettre(termines, soumis, enCours, stock, List.of(), formatFichier, zip);
+            }
+            while (enCours > 0) {
+                ajouterEntree(zip, attendre(termines, soumis));
+                enCours--;
+            }
+            zip.finish();
+            zip.flush();
+        } finally {
+            // Interrompt les générations restantes si l'écriture a échoué (client déconnecté, erreur d'un worker)
+            soumis.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private int soumettre(CompletionService<FichierExport> termines, List<Future<FichierExport>> soumis, int enCours,
+                          Stock stock, List<LigneExportStock> lignes, String format, ZipOutputStream zip) throws IOException {
+        // Au-delà de deux lots par worker, le thread de la réponse écrit d'abord un fichier terminé
+        while (enCours >= parallelisme * 2) {
+            ajouterEntree(zip, attendre(termines, soumis));
+            enCours--;
+        }
+        soumis.add(termines.submit(() -> generer(stock, lignes, format)));
+        return enCours + 1;
+    }
+
+    private FichierExport attendre(CompletionService<FichierExport> termines, List<Future<FichierExport>> soumis) throws IOException {
+        try {
+            Future<FichierExport> termine = termines.take();
+            // Le contenu ne doit pas rester référencé une fois écrit
+            soumis.remove(termine);
+            return termine.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export global interrompu.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Erreur lors de la génération d'un fichier de l'export global.", e.getCause());
+        }
+    }
+
+    private void ajouterEntree(ZipOutputStream zip, FichierExport fichier) throws IOException {
+        zip.putNextEntry(new ZipEntry(fichier.nom()));
+        zip.write(fichier.contenu());
+        zip.closeEntry();
+        // Chaque fichier part vers le client dès qu'il est écrit
+        zip.flush();
+    }
+
+    private FichierExport generer(Stock stock, List<LigneExportStock> lignes, String format) throws IOException {
+        ByteArrayOutputStream contenu = new ByteArrayOutputStream();
+        if (FORMAT_CSV.equals(format)) {
+            ecrireCsv(lignes, contenu);
+        } else {
+            stockService.ecrireClasseurStock(stock, lignes, contenu);
+        }
+        return new FichierExport(nomFichier(stock, format), contenu.toByteArray());
+    }
+
+    private void ecrireCsv(List<LigneExportStock> lignes, OutputStream sortie) throws IOException {
+        Writer writer = new OutputStreamWriter(sortie, StandardCharsets.UTF_8);
+        // BOM: Excel ouvre alors le fichier en UTF-8
+        writer.write('\uFEFF');
+        writer.write("Réf." + SEPARATEUR_CSV + "Produit" + SEPARATEUR_CSV + "Quantité\r\n");
+        for (LigneExportStock ligne : lignes) {
+            writer.write(String.valueOf(ligne.getReference() != null ? ligne.getReference() : 0));
+            writer.write(SEPARATEUR_CSV);
+            writer.write(echapperCsv(ligne.getNom()));
+            writer.write(SEPARATEUR_CSV);
+            writer.write(String.valueOf(ligne.getQuantite() != null ? ligne.getQuantite() : 0));
+            writer.write("\r\n");
+        }
+        writer.flush();
+    }
+
+    private String echapperCsv(String valeur) {
+        if (valeur == null) {
+            return "";
+        }
+        if (valeur.indexOf(SEPARATEUR_CSV) < 0 && valeur.indexOf('"') < 0 && valeur.indexOf('\n') < 0 && valeur.indexOf('\r') < 0) {
+            return valeur;
+        }
+        return '"' + valeur.replace("\"", "\"\"") + '"';
+    }
+
+    private String nomFichier(Stock stock, String format) {
+        String nom = stock.getNom() != null ? stock.getNom().trim().replaceAll("[^\\p{L}\\p{N}._-]+", "_") : "";
+        // L'identifiant garantit l'unicité des noms dans l'archive
+        return (nom.isEmpty() ? "stock" : nom) + "_" + stock.getId() + "." + format;
+    }
+
+    private String vide(String filtre) {
+        return filtre == null || filtre.isBlank() ? null : filtre;
+    }
+
+    private record FichierExport(String nom, byte[] contenu) {
+    }
+}
@@ -0,0 +1,400 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.ChangementStock;
+import com.ecomub.stocks.repository.ProduitStockRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Diffusion des changements de quantité ProduitStock aux clients abonnés (Server-Sent Events).
+ *
+ * Les associations modifiées sont signalées après validation de leur transaction (listener JPA et
+ * écritures JDBC en masse). À chaque intervalle, les associations signalées depuis le précédent sont
+ * relues en une seule requête, quel que soit le nombre d'abonnés, puis ajoutées au tampon borné de chaque
+ * abonné, où les changements d'une même association se remplacent. Un abonné lent dont le tampon
+ * déborde reçoit un unique événement "resync": il doit alors recharger ses données.
+ * Les tampons sont vidés par un petit pool de threads partagé (stocks.flux.threads-envoi), une tâche par
+ * abonné ayant des données en attente: un abonné inactif n'occupe aucun thread. Un client dont l'envoi dure
+ * plus de stocks.flux.delai-envoi-ms est déconnecté, ce qui borne le temps pendant lequel un client lent
+ * occupe un thread du pool.
+ *
+ * Événements: "changements" (liste de {@link ChangementStock}) et "resync" (envoyé aussi à la connexion).
+ */
+@Service
+public class FluxStocksService {
+
+    private static final Logger log = LoggerFactory.getLogger(FluxStocksService.class);
+
+    public static final String EVENEMENT_CHANGEMENTS = "changements";
+    public static final String EVENEMENT_RESYNC = "resync";
+
+    // Au-delà, les associations modifiées ne sont pas relues: tous les abonnés se resynchronisent
+    private static final int LIMITE_ASSOCIATIONS = 20000;
+    // Nombre d'associations relues par requête
+    private static final int TAILLE_LOT_LECTURE = 500;
+    // Commentaire envoyé aux abonnés inactifs: maintient la connexion et détecte les clients partis
+    private static final long INTERVALLE_BATTEMENT_MS = 25000;
+
+    @Value("${stocks.flux.abonnes-max:500}")
+    private int abonnesMax;
+
+    @Value("${stocks.flux.tampon-max:2000}")
+    private int tamponMax;
+
+    @Value("${stocks.flux.duree-max-ms:1800000}")
+    private long dureeMaxConnexion;
+
+    @Value("${stocks.flux.delai-envoi-ms:10000}")
+    private long delaiEnvoi;
+
+    @Value("${stocks.flux.threads-envoi:4}")
+    private int threadsEnvoi;
+
+    @Autowired
+    private ProduitStockRepository produitStockRepository;
+
+    private record Cle(long stockId, long produitId) {
+    }
+
+    private final List<Abonne> abonnes = new CopyOnWriteArrayList<>();
+
+    // Associations validées depuis la dernière diffusion (protégées par this)
+    private Set<Cle> associationsModifiees = new HashSet<>();
+    private boolean debordement;
+
+    private long dernierBattement = System.currentTimeMillis();
+
+    // Threads d'envoi partagés par tous les abonnés
+    private ExecutorService poolEnvoi;
+    private final AtomicLong numeroThread = new AtomicLong();
+
+    @PostConstruct
+    public void initialiser() {
+        poolEnvoi = Executors.newFixedThreadPool(Math.max(1, threadsEnvoi), tache -> {
+            Thread thread = new Thread(tache, "flux-stocks-" + numeroThread.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void arreter() {
+        abonnes.forEach(Abonne::abandonner);
+        poolEnvoi.shutdownNow();
+    }
+
+    /**
+     * Ouvre un abonnement; le premier événement est un "resync" (le client charge alors ses données).
+     * @throws IllegalStateException si le nombre maximal d'abonnés est atteint
+     */
+    public SseEmitter abonner() throws IOException {
+        if (abonnes.size() >= abonnesMax) {
+            throw new IllegalStateException("Nombre maximal d'abonnés au flux des stocks atteint (" + abonnesMax + ").");
+        }
+        SseEmitter emitter = new SseEmitter(dureeMaxConnexion);
+        Abonne abonne = new Abonne(emitter);
+        emitter.onCompletion(abonne::abandonner);
+        emitter.onTimeout(abonne::abandonner);
+        emitter.onError(e -> abonne.abandonner());
+        emitter.send(SseEmitter.event().name(EVENEMENT_RESYNC).data(Map.of()));
+        abonnes.add(abonne);
+        log.info("Nouvel abonné au flux des stocks ({} abonnés)", abonnes.size());
+        return emitter;
+    }
+
+    /**
+     * Signale la modification de la quantité d'une association. Dans une transaction, le signalement
+     * est différé après validation; il est ignoré en cas d'annulation ou en l'absence d'abonné.
+     */
+    public void signaler(Long stockId, Long produitId) {
+        if (abonnes.isEmpty() || stockId == null || produitId == null) {
+            return;
+        }
+        Cle cle = new Cle(stockId, produitId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            ajouter(Set.of(cle));
+            return;
+        }
+        for (TransactionSynchronization synchronisation : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronisation instanceof SignalementApresValidation signalement && signalement.flux() == this) {
+                signalement.cles.add(cle);
+                return;
+            }
+        }
+        SignalementApresValidation signalement = new SignalementApresValidation();
+        signalement.cles.add(cle);
+        TransactionSynchronizationManager.registerSynchronization(signalement);
+    }
+
+    private synchronized void ajouter(Set<Cle> cles) {
+        if (debordement) {
+            return;
+        }
+        associationsModifiees.addAll(cles);
+        if (associationsModifiees.size() > LIMITE_ASSOCIATIONS) {
+            associationsModifiees = new HashSet<>();
+            debordement = true;
+        }
+    }
+
+    /**
+     * Relit les associations modifiées depuis la dernière diffusion et les transmet aux abonnés.
+     */
+    @Scheduled(fixedDelayString = "${stocks.flux.intervalle-ms:1000}")
+    public void diffuser() {
+        Set<Cle> lot;
+        boolean resync;
+        synchronized (this) {
+            lot = associationsModifiees;
+            resync = debordement;
+            associationsModifiees = new HashSet<>();
+            debordement = false;
+        }
+        if (abonnes.isEmpty()) {
+            return;
+        }
+        long maintenant = System.currentTimeMillis();
+        boolean battement = maintenant - dernierBattement >= INTERVALLE_BATTEMENT_MS;
+        if (battement) {
+            dernierBattement = maintenant;
+        }
+        if (lot.isEmpty() && !resync && !battement) {
+            return;
+        }
+
+        List<ChangementStock> changements = null;
+        if (!resync && !lot.isEmpty()) {
+            try {
+                changements = lireQuantites(lot);
+            } catch (RuntimeException e) {
+                log.error("Lecture des changements de stock impossible, resynchronisation des abonnés", e);
+                resync = true;
+            }
+        }
+        for (Abonne abonne : abonnes) {
+            if (abonne.bloque(maintenant)) {
+                log.warn("Abonné au flux des stocks déconnecté: envoi bloqué depuis plus de {} ms", delaiEnvoi);
+                abonne.abandonner();
+            } else {
+                abonne.publier(resync, changements, battement);
+            }
+        }
+    }
+
+    private List<ChangementStock> lireQuantites(Set<Cle> cles) {
+        List<Cle> liste = new ArrayList<>(cles);
+        List<ChangementStock> changements = new ArrayList<>(liste.size());
+        for (int debut = 0; debut < liste.size(); debut += TAILLE_LOT_LECTURE) {
+            List<Cle> lot = liste.subList(debut, Math.min(debut + TAILLE_LOT_LECTURE, liste.size()));
+            Set<Long> stockIds = new HashSet<>();
+            Set<Long> produitIds = new HashSet<>();
+            lot.forEach(cle -> {
+                stockIds.add(cle.stockId());
+                produitIds.add(cle.produitId());
+            });
+            Set<Cle> absentes = new HashSet<>(lot);
+            for (ChangementStock ligne : produitStockRepository.findQuantitesAssociations(stockIds, produitIds)) {
+                if (absentes.remove(new Cle(ligne.getStockId(), ligne.getProduitId()))) {
+                    changements.add(ligne);
+                }
+            }
+            // Associations supprimées depuis leur signalement
+            absentes.forEach(cle -> changements.add(new ChangementStock(cle.stockId(), cle.produitId(), null)));
+        }
+        return changements;
+    }
+
+    public int getNombreAbonnes() {
+        return abonnes.size();
+    }
+
+    /**
+     * Connexion d'un client: changements en attente d'envoi, fusionnés par association.
+     * Une seule tâche d'envoi à la fois par abonné, planifiée sur le pool partagé quand des données
+     * arrivent et replanifiée après chaque envoi tant qu'il en reste.
+     */
+    private class Abonne {
+        private final SseEmitter emitter;
+        private final Map<Cle, ChangementStock> enAttente = new LinkedHashMap<>();
+        private boolean resync;
+        private boolean battement;
+        private boolean termine;
+        // Une tâche d'envoi est en file ou en cours
+        private boolean planifie;
+        // Thread du pool qui exécute l'envoi en cours (null sans envoi)
+        private Thread envoyeur;
+        // Début de l'envoi en cours (0 sans envoi), surveillé par diffuser()
+        private volatile long debutEnvoi;
+
+        Abonne(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * Ajoute une diffusion au tampon et planifie son envoi.
+         */
+        synchronized void publier(boolean resyncGlobal, List<ChangementStock> changements, boolean battementDu) {
+            if (termine) {
+                return;
+            }
+            if (resyncGlobal) {
+                resync = true;
+            } else if (changements != null && !resync) {
+                for (ChangementStock changement : changements) {
+                    enAttente.put(new Cle(changement.getStockId(), changement.getProduitId()), changement);
+                }
+            }
+            // Client trop lent: ses changements sont remplacés par une demande de rechargement
+            if (resync || enAttente.size() > tamponMax) {
+                resync = true;
+                enAttente.clear();
+            }
+            battement |= battementDu;
+            if (!planifie) {
+                planifier();
+            }
+        }
+
+        // Appelée sous le verrou de l'abonné
+        private void planifier() {
+            try {
+                poolEnvoi.execute(this::envoyer);
+                planifie = true;
+            } catch (RejectedExecutionException e) {
+                // Arrêt de l'application
+                planifie = false;
+            }
+        }
+
+        boolean bloque(long maintenant) {
+            long debut = debutEnvoi;
+            return debut != 0 && maintenant - debut > delaiEnvoi;
+        }
+
+        /**
+         * Tâche d'envoi: vide le tampon en un événement, puis se replanifie s'il s'est à nouveau rempli
+         * (les autres abonnés passent entre deux envois).
+         */
+        private void envoyer() {
+            boolean envoyerResync;
+            List<ChangementStock> aEnvoyer;
+            synchronized (this) {
+                if (termine) {
+                    planifie = false;
+                    fermer();
+                    return;
+                }
+                if (!resync && enAttente.isEmpty() && !battement) {
+                    planifie = false;
+                    return;
+                }
+                envoyerResync = resync;
+                aEnvoyer = new ArrayList<>(enAttente.values());
+                resync = false;
+                battement = false;
+                enAttente.clear();
+                envoyeur = Thread.currentThread();
+            }
+            boolean echec = false;
+            debutEnvoi = System.currentTimeMillis();
+            try {
+                if (envoyerResync) {
+                    emitter.send(SseEmitter.event().name(EVENEMENT_RESYNC).data(Map.of()));
+                } else if (!aEnvoyer.isEmpty()) {
+                    emitter.send(SseEmitter.event().name(EVENEMENT_CHANGEMENTS).data(aEnvoyer));
+                } else {
+                    emitter.send(SseEmitter.event().comment("ping"));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Client déconnecté, connexion expirée ou envoi interrompu par abandonner()
+                echec = true;
+            } finally {
+                debutEnvoi = 0;
+            }
+            if (echec) {
+                abonnes.remove(this);
+            }
+            synchronized (this) {
+                envoyeur = null;
+                // Une interruption destinée à cet envoi ne doit pas atteindre la tâche suivante du thread
+                Thread.interrupted();
+                if (echec || termine) {
+                    termine = true;
+                    enAttente.clear();
+                    planifie = false;
+                    fermer();
+                    return;
+                }
+                planifier();
+            }
+        }
+
+        // Terminée par la tâche d'envoi ou hors de tout envoi: jamais bloqué derrière un envoi en cours
+        private void fermer() {
+            emitter.complete();
+        }
+
+        /**
+         * Retire l'abonné de la diffusion et ferme sa connexion, par la tâche d'envoi si elle est planifiée.
+         * N'attend pas la fin d'un envoi en cours (client lent): il est interrompu.
+         */
+        void abandonner() {
+            abonnes.remove(this);
+            synchronized (this) {
+                if (termine) {
+                    return;
+                }
+                termine = true;
+                enAttente.clear();
+                if (envoyeur != null) {
+                    if (envoyeur != Thread.currentThread()) {
+                        envoyeur.interrupt();
+                    }
+                    return;
+                }
+                if (planifie) {
+                    return;
+                }
+            }
+            fermer();
+        }
+    }
+
+    private class SignalementApresValidation implements TransactionSynchronization {
+        private final Set<Cle> cles = new HashSet<>();
+
+        FluxStocksService flux() {
+            return FluxStocksService.this;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+                ajouter(cles);
+            }
+        }
+    }
+}
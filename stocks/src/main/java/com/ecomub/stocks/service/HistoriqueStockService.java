@@ -0,0 +1,162 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.ExecutionSnapshot;
+import com.ecomub.stocks.model.HistoriqueStock;
+import com.ecomub.stocks.repository.ExecutionSnapshotRepository;
+import com.ecomub.stocks.repository.HistoriqueStockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Historique journalier des quantités par (stock, produit).
+ *
+ * Un job planifié capture chaque jour produit_stock; seules les lignes modifiées depuis la veille sont
+ * écrites (voir {@link HistoriqueStock}). L'historique d'un produit ou d'un stock sur une période se lit
+ * par index: la valeur au début de la période, puis les changements de la période.
+ */
+@Service
+public class HistoriqueStockService {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoriqueStockService.class);
+
+    // Étendue maximale d'une requête d'historique
+    private static final long PERIODE_MAX_JOURS = 366;
+
+    // Associations capturées par transaction
+    private static final int TAILLE_TRANCHE = 1000;
+
+    @Autowired
+    private HistoriqueStockRepository historiqueStockRepository;
+
+    @Autowired
+    private ExecutionSnapshotRepository executionSnapshotRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Snapshot planifié (par défaut chaque soir à 23h30).
+     */
+    @Scheduled(cron = "${stocks.historique.cron:0 30 23 * * *}")
+    public void capturerSnapshotJournalier() {
+        try {
+            capturer(LocalDate.now());
+        } catch (RuntimeException e) {
+            log.error("Échec du snapshot journalier des stocks", e);
+        }
+    }
+
+    /**
+     * Capture l'état de produit_stock pour la date donnée (une nouvelle capture le même jour la remplace).
+     * Chaque tranche de {@value #TAILLE_TRANCHE} lignes est capturée dans sa propre transaction, pour ne
+     * pas verrouiller toute la table pendant la capture.
+     * @return Le nombre d'associations présentes et le nombre de lignes d'historique écrites
+     */
+    public Map<String, Long> capturer(LocalDate dateSnapshot) {
+        long debut = System.currentTimeMillis();
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long changements = 0;
+
+        // Créations et modifications, puis suppressions
+        long apres = 0;
+        Long fin;
+        while ((fin = historiqueStockRepository.findFinTrancheAssociations(apres, TAILLE_TRANCHE)) != null) {
+            long debutTranche = apres;
+            long finTranche = fin;
+            changements += transaction.execute(status ->
+                    historiqueStockRepository.capturerAssociations(dateSnapshot, debutTranche, finTranche));
+            apres = fin;
+        }
+        apres = 0;
+        while ((fin = historiqueStockRepository.findFinTrancheEtat(apres, TAILLE_TRANCHE)) != null) {
+            long debutTranche = apres;
+            long finTranche = fin;
+            changements += transaction.execute(status ->
+                    historiqueStockRepository.capturerSuppressions(dateSnapshot, debutTranche, finTranche));
+            apres = fin;
+        }
+
+        Map<String, Long> resultat = new LinkedHashMap<>();
+        resultat.put("lignes", historiqueStockRepository.countEtat());
+        resultat.put("changements", changements);
+        executionSnapshotRepository.save(new ExecutionSnapshot(
+                dateSnapshot, resultat.get("lignes"), resultat.get("changements"), LocalDateTime.now()));
+        log.info("Snapshot des stocks du {}: {} associations, {} changements ({} ms)",
+                dateSnapshot, resultat.get("lignes"), resultat.get("changements"), System.currentTimeMillis() - debut);
+        return resultat;
+    }
+
+    /**
+     * Historique des quantités sur une période, pour un produit et/ou un stock.
+     *
+     * @param produitId Le produit (null: tous les produits du stock)
+     * @param stockId   Le stock (null: tous les stocks du produit)
+     * @param debut     Premier jour de la période (inclus)
+     * @param fin       Dernier jour de la période (inclus)
+     * @return Une série par association: la quantité au début de la période puis chaque changement.
+     *         Une quantité null signifie que l'association n'existait pas à cette date.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getHistorique(Long produitId, Long stockId, LocalDate debut, LocalDate fin) {
+        if (produitId == null && stockId == null) {
+            throw new IllegalArgumentException("Un produit ou un stock doit être indiqué.");
+        }
+        if (debut == null || fin == null || fin.isBefore(debut)) {
+            throw new IllegalArgumentException("La période doit avoir un début et une fin, le début précédant la fin.");
+        }
+        if (ChronoUnit.DAYS.between(debut, fin) >= PERIODE_MAX_JOURS) {
+            throw new IllegalArgumentException("La période ne doit pas dépasser " + PERIODE_MAX_JOURS + " jours.");
+        }
+
+        // Séries par association, dans l'ordre (stock, produit) des deux requêtes
+        Map<String, Map<String, Object>> series = new LinkedHashMap<>();
+        Map<String, List<Map<String, Object>>> points = new HashMap<>();
+        for (HistoriqueStock etat : historiqueStockRepository.findEtatALaDate(produitId, stockId, debut)) {
+            ajouterPoint(series, points, etat, debut);
+        }
+        for (HistoriqueStock changement : historiqueStockRepository.findChangements(produitId, stockId, debut, fin)) {
+            ajouterPoint(series, points, changement, changement.getDateSnapshot());
+        }
+
+        Map<String, Object> resultat = new HashMap<>();
+        resultat.put("debut", debut);
+        resultat.put("fin", fin);
+        // Avant le premier snapshot, l'historique est inconnu
+        resultat.put("premierSnapshot", executionSnapshotRepository.findPremiereDate());
+        resultat.put("series", new ArrayList<>(series.values()));
+        return resultat;
+    }
+
+    private void ajouterPoint(Map<String, Map<String, Object>> series, Map<String, List<Map<String, Object>>> points,
+                              HistoriqueStock ligne, LocalDate date) {
+        String cle = ligne.getStockId() + "-" + ligne.getProduitId();
+        List<Map<String, Object>> pointsSerie = points.computeIfAbsent(cle, k -> {
+            List<Map<String, Object>> liste = new ArrayList<>();
+            Map<String, Object> serie = new LinkedHashMap<>();
+            serie.put("stockId", ligne.getStockId());
+            serie.put("produitId", ligne.getProduitId());
+            serie.put("points", liste);
+            series.put(k, serie);
+            return liste;
+        });
+        Map<String, Object> point = new HashMap<>();
+        point.put("date", date);
+        point.put("quantite", ligne.getQuantite());
+        pointsSerie.add(point);
+    }
+}
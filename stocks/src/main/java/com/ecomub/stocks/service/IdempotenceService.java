@@ -0,0 +1,250 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.IdempotenceRequete;
+import com.ecomub.stocks.repository.IdempotenceRequeteRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Gestion des clés d'idempotence (en-tête Idempotency-Key) des endpoints de mutation.
+ *
+ * Les réponses sont mémorisées dans un cache mémoire borné (LRU, expiration par TTL)
+ * adossé à la table idempotence_requete. L'enregistrement de la réponse est validé dans
+ * la même transaction que la mutation: une requête rejouée ne peut donc jamais être
+ * appliquée deux fois. La clé est liée à l'empreinte de la requête (une même clé réutilisée
+ * pour une autre requête est rejetée en 422) et réservée en base pendant l'exécution, si bien
+ * qu'une requête concurrente sur une autre instance reçoit 409.
+ */
+@Service
+public class IdempotenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotenceService.class);
+
+    public static final String EN_TETE = "Idempotency-Key";
+    private static final int LONGUEUR_MAX_CLE = 128;
+    private static final int STATUT_EN_COURS = 0;
+
+    @Value("${stocks.idempotence.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${stocks.idempotence.capacite:10000}")
+    private int capacite;
+
+    // Au-delà de ce délai, une clé restée en cours (instance arrêtée pendant l'exécution) peut être reprise
+    @Value("${stocks.idempotence.delai-en-cours-secondes:300}")
+    private long delaiEnCoursSecondes;
+
+    @Autowired
+    private IdempotenceRequeteRepository idempotenceRequeteRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private Map<String, IdempotenceRequete> cache;
+    private TransactionTemplate transaction;
+
+    @PostConstruct
+    public void initialiser() {
+        transaction = new TransactionTemplate(transactionManager);
+        cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotenceRequete> eldest) {
+                return size() > capacite;
+            }
+        };
+    }
+
+    /**
+     * Exécute une mutation une seule fois par clé d'idempotence.
+     *
+     * @param cleIdempotence Valeur de l'en-tête Idempotency-Key (sans clé, l'action est simplement exécutée)
+     * @param operation      Nom de l'opération, pour qu'une même clé ne se confonde pas entre endpoints
+     * @param requete        Paramètres et corps de la requête, dont l'empreinte est liée à la clé
+     * @param action         La mutation, qui produit la réponse HTTP
+     * @return La réponse de l'action, la réponse mémorisée si la clé a déjà été traitée,
+     *         409 si la clé est en cours de traitement, 422 si elle a servi pour une autre requête
+     */
+    public ResponseEntity<?> executer(String cleIdempotence, String operation, Object requete,
+                                      Supplier<ResponseEntity<?>> action) {
+        if (cleIdempotence == null || cleIdempotence.isBlank()) {
+            return action.get();
+        }
+        if (cleIdempotence.length() > LONGUEUR_MAX_CLE) {
+            return ResponseEntity.badRequest().body(Map.of(
+                "success", false,
+                "message", "La clé d'idempotence ne doit pas dépasser " + LONGUEUR_MAX_CLE + " caractères"
+            ));
+        }
+        String cle = utilisateurCourant() + "|" + operation + "|" + cleIdempotence;
+        String empreinte = empreinte(requete);
+
+        IdempotenceRequete memorisee = rechercher(cle);
+        if (memorisee != null) {
+            return repondre(memorisee, empreinte);
+        }
+
+        // Réservation validée en base avant l'exécution: visible par toutes les instances
+        if (!reserver(cle, empreinte)) {
+            memorisee = rechercher(cle);
+            return memorisee != null ? repondre(memorisee, empreinte) : enCours();
+        }
+
+        boolean terminee = false;
+        try {
+            IdempotenceRequete[] enregistree = new IdempotenceRequete[1];
+            ResponseEntity<?> reponse = transaction.execute(status -> {
+                ResponseEntity<?> resultat = action.get();
+                if (status.isRollbackOnly() || resultat.getStatusCode().is5xxServerError()) {
+                    // Mutation annulée: rien à mémoriser, une nouvelle tentative sera réexécutée
+                    status.setRollbackOnly();
+                    return resultat;
+                }
+                LocalDateTime maintenant = LocalDateTime.now();
+                int statut = resultat.getStatusCode().value();
+                String corps = serialiser(resultat.getBody());
+                if (idempotenceRequeteRepository.terminer(cle, empreinte, statut, corps, maintenant) == 0) {
+                    // Réservation reprise par une autre exécution (délai dépassé): annuler celle-ci
+                    status.setRollbackOnly();
+                    return enCours();
+                }
+                enregistree[0] = new IdempotenceRequete(cle, empreinte, statut, corps, maintenant);
+                return resultat;
+            });
+
+            if (enregistree[0] != null) {
+                terminee = true;
+                synchronized (cache) {
+                    cache.put(cle, enregistree[0]);
+                }
+            }
+            return reponse;
+        } finally {
+            if (!terminee) {
+                transaction.executeWithoutResult(status -> idempotenceRequeteRepository.liberer(cle, empreinte));
+            }
+        }
+    }
+
+    /**
+     * Purge les réponses expirées de la table.
+     */
+    @Scheduled(fixedDelayString = "${stocks.idempotence.purge-ms:3600000}")
+    public void purgerExpirees() {
+        int supprimees = transaction.execute(status -> idempotenceRequeteRepository.supprimerAnterieuresA(limiteExpiration()));
+        if (supprimees > 0) {
+            log.info("Purge idempotence: {} réponses expirées supprimées", supprimees);
+        }
+    }
+
+    private IdempotenceRequete rechercher(String cle) {
+        LocalDateTime limite = limiteExpiration();
+        synchronized (cache) {
+            IdempotenceRequete enMemoire = cache.get(cle);
+            if (enMemoire != null) {
+                if (enMemoire.getDateCreation().isAfter(limite)) {
+                    return enMemoire;
+                }
+                cache.remove(cle);
+            }
+        }
+        IdempotenceRequete enBase = idempotenceRequeteRepository.findById(cle)
+                .filter(r -> r.getDateCreation().isAfter(limite))
+                .orElse(null);
+        // Seules les réponses terminées sont mises en cache
+        if (enBase != null && enBase.getStatutHttp() != STATUT_EN_COURS) {
+            synchronized (cache) {
+                cache.put(cle, enBase);
+            }
+        }
+        return enBase;
+    }
+
+    private boolean reserver(String cle, String empreinte) {
+        LocalDateTime maintenant = LocalDateTime.now();
+        return transaction.execute(status ->
+                idempotenceRequeteRepository.reserver(cle, empreinte, maintenant) > 0
+                        || idempotenceRequeteRepository.reprendre(cle, empreinte, maintenant, limiteExpiration(),
+                                maintenant.minus(Duration.ofSeconds(delaiEnCoursSecondes))) > 0);
+    }
+
+    private ResponseEntity<?> repondre(IdempotenceRequete memorisee, String empreinte) {
+        // Les réponses mémorisées avant l'ajout de l'empreinte n'en ont pas
+        if (memorisee.getEmpreinte() != null && !memorisee.getEmpreinte().equals(empreinte)) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(Map.of(
+                "success", false,
+                "message", "Cette clé d'idempotence a déjà été utilisée pour une requête différente"
+            ));
+        }
+        if (memorisee.getStatutHttp() == STATUT_EN_COURS) {
+            return enCours();
+        }
+        log.debug("Requête rejouée pour la clé d'idempotence {}", memorisee.getCle());
+        return rejouer(memorisee);
+    }
+
+    private static ResponseEntity<?> enCours() {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+            "success", false,
+            "message", "Une requête avec cette clé d'idempotence est déjà en cours de traitement"
+        ));
+    }
+
+    private ResponseEntity<?> rejouer(IdempotenceRequete memorisee) {
+        return ResponseEntity.status(memorisee.getStatutHttp())
+                .header("Idempotent-Replayed", "true")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(memorisee.getReponse());
+    }
+
+    private String serialiser(Object corps) {
+        try {
+            return objectMapper.writeValueAsString(corps);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Impossible de mémoriser la réponse de la requête idempotente", e);
+        }
+    }
+
+    private String empreinte(Object requete) {
+        try {
+            byte[] condense = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(requete));
+            return HexFormat.of().formatHex(condense);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Impossible de calculer l'empreinte de la requête idempotente", e);
+        }
+    }
+
+    private LocalDateTime limiteExpiration() {
+        return LocalDateTime.now().minus(Duration.ofMinutes(ttlMinutes));
+    }
+
+    private String utilisateurCourant() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth != null ? auth.getName() : "anonyme";
+    }
+}
@@ -1,11 +1,13 @@
 package com.ecomub.stocks.service;
 
 import com.ecomub.stocks.model.MappingLivreur;
+import com.ecomub.stocks.model.PageCurseur;
 import com.ecomub.stocks.model.TypeStock; // Assurez-vous que cet import est présent
 import com.ecomub.stocks.repository.MappingLivreurRepository;
 import org.apache.poi.ss.usermodel.*; // Import générique pour POI
 import org.apache.poi.xssf.usermodel.XSSFWorkbook; // Ou HSSFWorkbook si .xls
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.transaction.annotation.Transactional; // Ajouté pour la cohérence
@@ -24,6 +26,13 @@ public class MappingLivreurService {
     @Autowired
     private MappingLivreurRepository mappingLivreurRepository;
 
+    // Clés de tri des listes paginées (colonnes indexées)
+    private static final Map<String, PaginationCurseur.CleTri<MappingLivreur>> TRIS = Map.of(
+            "nom", new PaginationCurseur.CleTri<>("nomLivreur", MappingLivreur::getNomLivreur, String.class),
+            "pays", new PaginationCurseur.CleTri<>("pays", MappingLivreur::getPays, String.class),
+            "ville", new PaginationCurseur.CleTri<>("ville", MappingLivreur::getVille, String.class),
+            "prestataire", new PaginationCurseur.CleTri<>("prestataire", MappingLivreur::getPrestataire, String.class));
+
     /**
      * Recherche un mapping par nom de livreur, prestataire et ville.
      *
@@ -120,10 +129,29 @@ public class MappingLivreurService {
      *
      * @return La liste de tous les mappings.
      */
+    @Transactional(readOnly = true)
     public List<MappingLivreur> getAllMappings() {
         return mappingLivreurRepository.findAll();
     }
 
+    /**
+     * Page de mappings par curseur (voir {@link PaginationCurseur}); un filtre null est ignoré.
+     * @param nom Préfixe du nom du livreur
+     * @param tri id, nom, pays, ville ou prestataire
+     */
+    @Transactional(readOnly = true)
+    public PageCurseur<MappingLivreur> getMappingsPage(String nom, String pays, String ville, TypeStock typeStock,
+                                                       String prestataire, String tri, String sens,
+                                                       String curseur, int taille) {
+        Specification<MappingLivreur> filtres = Specification
+                .where(PaginationCurseur.<MappingLivreur>commencePar("nomLivreur", nom))
+                .and(PaginationCurseur.egal("pays", pays))
+                .and(PaginationCurseur.egal("ville", ville))
+                .and(PaginationCurseur.egal("typeStock", typeStock))
+                .and(PaginationCurseur.egal("prestataire", prestataire));
+        return PaginationCurseur.page(mappingLivreurRepository, filtres, TRIS, tri, sens, curseur, taille, MappingLivreur::getId);
+    }
+
     /**
      * Importe des mappings livreur-stock depuis un fichier Excel.
      * Colonnes attendues : livreurs (0), prestataire (1), Pays (2), ville (3)
@@ -0,0 +1,177 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.PageCurseur;
+import jakarta.persistence.criteria.Expression;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Pagination par curseur (keyset) des listes: une page est lue par "WHERE (tri, id) > (dernière valeur,
+ * dernier id) ORDER BY tri, id LIMIT taille + 1", ce qui parcourt l'index (tri) (l'id y est inclus par InnoDB)
+ * depuis la position du curseur. Le coût d'une page ne dépend pas de sa position ni de la taille de la table,
+ * et aucune requête de comptage n'est faite.
+ *
+ * Les valeurs NULL sont triées en tête en ordre croissant et en fin en ordre décroissant (ordre MySQL).
+ */
+public final class PaginationCurseur {
+
+    public static final int TAILLE_MAX = 500;
+    public static final String TRI_ID = "id";
+
+    private PaginationCurseur() {
+    }
+
+    /**
+     * Clé de tri autorisée: attribut indexé de l'entité, son accesseur et son type (String ou Integer).
+     */
+    public record CleTri<T>(String attribut, Function<T, Object> valeur, Class<?> type) {
+    }
+
+    /**
+     * Lit une page.
+     *
+     * @param filtres  Les filtres (null: aucun)
+     * @param clesTri  Les clés de tri autorisées, par nom de paramètre (l'id est toujours autorisé)
+     * @param tri      La clé de tri (null: id)
+     * @param sens     "asc" (défaut) ou "desc"
+     * @param curseur  Le curseur renvoyé par la page précédente (null: première page)
+     * @param id       L'accesseur de l'id de l'entité
+     * @throws IllegalArgumentException si la taille, le tri ou le curseur sont invalides
+     */
+    public static <T> PageCurseur<T> page(JpaSpecificationExecutor<T> repository, Specification<T> filtres,
+                                          Map<String, CleTri<T>> clesTri, String tri, String sens,
+                                          String curseur, int taille, Function<T, Long> id) {
+        if (taille <= 0 || taille > TAILLE_MAX) {
+            throw new IllegalArgumentException("La taille de page doit être comprise entre 1 et " + TAILLE_MAX + ".");
+        }
+        String nomTri = tri == null || tri.isBlank() ? TRI_ID : tri;
+        CleTri<T> cle = TRI_ID.equals(nomTri) ? new CleTri<>(TRI_ID, t -> id.apply(t), Long.class) : clesTri.get(nomTri);
+        if (cle == null) {
+            throw new IllegalArgumentException("Tri '" + nomTri + "' non supporté. Valeurs possibles: "
+                    + TRI_ID + ", " + String.join(", ", clesTri.keySet()) + ".");
+        }
+        boolean croissant;
+        if (sens == null || sens.isBlank() || "asc".equalsIgnoreCase(sens)) {
+            croissant = true;
+        } else if ("desc".equalsIgnoreCase(sens)) {
+            croissant = false;
+        } else {
+            throw new IllegalArgumentException("Le sens de tri doit être 'asc' ou 'desc'.");
+        }
+
+        Specification<T> specification = filtres != null ? filtres : Specification.where(null);
+        if (curseur != null && !curseur.isBlank()) {
+            Position position = decoder(curseur, nomTri, croissant, cle.type());
+            specification = specification.and(apres(cle, croissant, position));
+        }
+        Sort.Direction direction = croissant ? Sort.Direction.ASC : Sort.Direction.DESC;
+        Sort ordre = TRI_ID.equals(cle.attribut()) ? Sort.by(direction, TRI_ID)
+                : Sort.by(direction, cle.attribut()).and(Sort.by(direction, TRI_ID));
+
+        // Une ligne de plus que la page: sa présence indique qu'il existe une page suivante
+        List<T> lignes = repository.findBy(specification, requete -> requete.sortBy(ordre).limit(taille + 1).all());
+        if (lignes.size() <= taille) {
+            return new PageCurseur<>(lignes, null);
+        }
+        List<T> elements = new ArrayList<>(lignes.subList(0, taille));
+        T derniere = elements.get(taille - 1);
+        return new PageCurseur<>(elements, encoder(nomTri, croissant, id.apply(derniere), cle.valeur().apply(derniere)));
+    }
+
+    /**
+     * Filtre "commence par" sur un attribut (chemin pointé possible, ex: produit.nom), qui peut utiliser
+     * son index. Ignoré si le préfixe est null ou vide; les jokers LIKE saisis sont échappés.
+     */
+    public static <T> Specification<T> commencePar(String attribut, String prefixe) {
+        if (prefixe == null || prefixe.isBlank()) {
+            return null;
+        }
+        String motif = prefixe.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        return (root, query, cb) -> cb.like(chemin(root, attribut), motif, '\\');
+    }
+
+    /**
+     * Filtre d'égalité sur un attribut (chemin pointé possible); ignoré si la valeur est null ou vide.
+     * Les chaînes sont comparées sans les espaces de début et de fin (collation MySQL insensible à la casse).
+     */
+    public static <T> Specification<T> egal(String attribut, Object valeur) {
+        if (valeur == null || (valeur instanceof String texte && texte.isBlank())) {
+            return null;
+        }
+        Object comparee = valeur instanceof String texte ? texte.trim() : valeur;
+        return (root, query, cb) -> cb.equal(chemin(root, attribut), comparee);
+    }
+
+    private static <X> Path<X> chemin(Path<?> racine, String attribut) {
+        Path<?> chemin = racine;
+        for (String partie : attribut.split("\\.")) {
+            chemin = chemin.get(partie);
+        }
+        @SuppressWarnings("unchecked")
+        Path<X> resultat = (Path<X>) chemin;
+        return resultat;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <T> Specification<T> apres(CleTri<T> cle, boolean croissant, Position position) {
+        return (root, query, cb) -> {
+            Path<Long> chemin = root.get(TRI_ID);
+            Predicate apresId = croissant ? cb.greaterThan(chemin, position.id()) : cb.lessThan(chemin, position.id());
+            if (TRI_ID.equals(cle.attribut())) {
+                return apresId;
+            }
+            Expression<Comparable> champ = root.get(cle.attribut());
+            if (position.valeur() == null) {
+                return croissant
+                        ? cb.or(cb.and(cb.isNull(champ), apresId), cb.isNotNull(champ))
+                        : cb.and(cb.isNull(champ), apresId);
+            }
+            Comparable valeur = position.valeur();
+            Predicate apresValeur = croissant ? cb.greaterThan(champ, valeur) : cb.lessThan(champ, valeur);
+            Predicate egal = cb.and(cb.equal(champ, valeur), apresId);
+            return croissant ? cb.or(apresValeur, egal) : cb.or(apresValeur, egal, cb.isNull(champ));
+        };
+    }
+
+    // Curseur: "tri,sens,id[,valeur]" en base64 (sans valeur: valeur NULL)
+    private static String encoder(String tri, boolean croissant, Long id, Object valeur) {
+        String brut = tri + "," + (croissant ? "asc" : "desc") + "," + id + (valeur != null ? "," + valeur : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(brut.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Position decoder(String curseur, String tri, boolean croissant, Class<?> type) {
+        String[] parties;
+        try {
+            parties = new String(Base64.getUrlDecoder().decode(curseur), StandardCharsets.UTF_8).split(",", 4);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Curseur invalide.", e);
+        }
+        if (parties.length < 3 || !parties[0].equals(tri) || !parties[1].equals(croissant ? "asc" : "desc")) {
+            throw new IllegalArgumentException("Le curseur ne correspond pas au tri demandé.");
+        }
+        try {
+            Long id = Long.valueOf(parties[2]);
+            Comparable<?> valeur = null;
+            if (parties.length == 4) {
+                valeur = type == String.class ? parties[3]
+                        : type == Integer.class ? Integer.valueOf(parties[3]) : Long.valueOf(parties[3]);
+            }
+            return new Position(id, valeur);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Curseur invalide.", e);
+        }
+    }
+
+    private record Position(Long id, Comparable<?> valeur) {
+    }
+}
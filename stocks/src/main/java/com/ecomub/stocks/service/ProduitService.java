@@ -1,8 +1,8 @@
 package com.ecomub.stocks.service;
 
+import com.ecomub.stocks.model.PageCurseur;
 import com.ecomub.stocks.model.Produit;
 import com.ecomub.stocks.repository.ProduitRepository;
-import com.ecomub.stocks.repository.ProduitStockRepository;
 
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
@@ -11,7 +11,9 @@ import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.usermodel.WorkbookFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -32,7 +34,12 @@ public class ProduitService {
     private ProduitRepository produitRepository;
 
     @Autowired
-    private ProduitStockRepository produitStockRepository;
+    private ProduitStockService produitStockService;
+
+    // Clés de tri des listes paginées (colonnes indexées)
+    private static final Map<String, PaginationCurseur.CleTri<Produit>> TRIS = Map.of(
+            "nom", new PaginationCurseur.CleTri<>("nom", Produit::getNom, String.class),
+            "reference", new PaginationCurseur.CleTri<>("reference", Produit::getReference, Integer.class));
 
     // Créer un produit
     public Produit createProduit(Produit produit) {
@@ -43,11 +50,26 @@ public class ProduitService {
         }
     }
 
-    // Récupérer tous les produits
+    // Récupérer tous les produits (lecture seule: pas de copie des entités pour le contrôle des modifications)
+    @Transactional(readOnly = true)
     public List<Produit> getAllProduits() {
         return produitRepository.findAll();
     }
 
+    /**
+     * Page de produits par curseur (voir {@link PaginationCurseur}).
+     * @param nom       Préfixe du nom (null: pas de filtre)
+     * @param reference Référence exacte (null: pas de filtre)
+     * @param tri       id, nom ou reference
+     */
+    @Transactional(readOnly = true)
+    public PageCurseur<Produit> getProduitsPage(String nom, Integer reference, String tri, String sens,
+                                                String curseur, int taille) {
+        Specification<Produit> filtres = Specification.where(PaginationCurseur.<Produit>commencePar("nom", nom))
+                .and(PaginationCurseur.egal("reference", reference));
+        return PaginationCurseur.page(produitRepository, filtres, TRIS, tri, sens, curseur, taille, Produit::getId);
+    }
+
     // Récupérer un produit par ID
     public Optional<Produit> getProduitById(Long id) {
         return produitRepository.findById(id);
@@ -71,17 +93,31 @@ public class ProduitService {
         }
     }
 
-    @Transactional
-    public void deleteProduit(Long id) {
-        // Récupérer le produit
+    // Définir (ou supprimer, si null) le seuil d'alerte d'un produit, appliqué à toutes ses associations sans seuil propre
+    public Produit modifierSeuilAlerte(Long id, Integer seuil) {
+        if (seuil != null && seuil < 0) {
+            throw new IllegalArgumentException("Le seuil d'alerte doit être positif.");
+        }
         Produit produit = produitRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Produit non trouvé avec l'ID : " + id));
+        produit.setSeuilAlerte(seuil);
+        Produit saved = produitRepository.save(produit);
+        produitStockService.repercuterSeuilProduit(id, seuil);
+        return saved;
+    }
+
+    // Pas de transaction englobante: les associations sont supprimées par lots, chacun dans sa transaction;
+    // une suppression interrompue peut être relancée et reprend là où elle s'était arrêtée
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void deleteProduit(Long id) {
+        // Vérifier l'existence du produit
+        if (!produitRepository.existsById(id)) {
+            throw new RuntimeException("Produit non trouvé avec l'ID : " + id);
+        }
         
-        // Supprimer d'abord toutes les associations produit-stock liées à ce produit
-        produitStockRepository.deleteByProduitId(id);
-        
-        // Maintenant que toutes les associations sont supprimées, supprimer le produit
-        produitRepository.delete(produit);
+        // Supprimer toutes les associations produit-stock liées à ce produit (par lots bornés),
+        // puis le produit dans la transaction du dernier lot
+        produitStockService.supprimerAssociationsParProduit(id, () -> produitRepository.deleteById(id));
     }
 
     /**
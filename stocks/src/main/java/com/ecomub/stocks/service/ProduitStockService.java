@@ -1,20 +1,41 @@
 package com.ecomub.stocks.service;
 
+import com.ecomub.stocks.model.AffectationLigne;
+import com.ecomub.stocks.model.DetailProduitStock;
+import com.ecomub.stocks.model.LigneCritique;
+import com.ecomub.stocks.model.LigneStockFaible;
+import com.ecomub.stocks.model.PageCurseur;
 import com.ecomub.stocks.model.Produit;
 import com.ecomub.stocks.model.ProduitStock;
+import com.ecomub.stocks.model.ProduitStockVue;
+import com.ecomub.stocks.model.StatistiquesStock;
 import com.ecomub.stocks.model.Stock;
+import com.ecomub.stocks.model.TransfertRequest;
+import com.ecomub.stocks.model.TypeStock;
 import com.ecomub.stocks.repository.ProduitRepository;
 import com.ecomub.stocks.repository.ProduitStockRepository;
 import com.ecomub.stocks.repository.StockRepository;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.slf4j.Logger; // Importer Logger
 import org.slf4j.LoggerFactory; // Importer LoggerFactory
 
 import java.util.*; // Importer java.util.*
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ProduitStockService {
@@ -22,6 +43,30 @@ public class ProduitStockService {
     // Ajouter un logger pour un meilleur suivi
     private static final Logger log = LoggerFactory.getLogger(ProduitStockService.class);
 
+    // Nombre de lignes envoyées par aller-retour lors des affectations en masse
+    private static final int TAILLE_LOT_AFFECTATION = 500;
+
+    // Nombre de tentatives d'un transfert victime d'un interblocage ou d'un délai de verrou
+    private static final int TENTATIVES_TRANSFERT = 3;
+
+    // Taille des lots de suppression: chaque lot est une transaction courte
+    private static final int TAILLE_LOT_SUPPRESSION = 1000;
+    // Au-delà de ce volume, la progression de la suppression est journalisée
+    private static final long SEUIL_PROGRESSION_SUPPRESSION = 10_000;
+
+    // Seuil de stock bas des statistiques, pour les lignes sans seuil d'alerte spécifique
+    static final int SEUIL_STOCK_BAS = 30;
+
+    // Taille maximale d'une page de détail des statistiques
+    private static final int TAILLE_PAGE_MAX = 500;
+
+    // Nombre maximal de lignes critiques demandées (par pays le cas échéant)
+    private static final int LIMITE_CRITIQUES_MAX = 1000;
+
+    // Clés de tri de la liste paginée des produits d'un stock (index (centre_stock_id, quantite))
+    private static final Map<String, PaginationCurseur.CleTri<ProduitStock>> TRIS_PRODUITS_STOCK = Map.of(
+            "quantite", new PaginationCurseur.CleTri<>("quantite", ProduitStock::getQuantite, Integer.class));
+
     @Autowired
     private ProduitStockRepository produitStockRepository;
 
@@ -32,6 +77,30 @@ public class ProduitStockService {
     @Lazy // Garder @Lazy si StockService a une dépendance circulaire potentielle
     private StockRepository stockRepository;
 
+    @Autowired
+    private EcritureDiffereeService ecritureDiffereeService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private CacheRapports cacheRapports;
+
+    @Autowired
+    private FluxStocksService fluxStocksService;
+
+    @PostConstruct
+    public void initialiser() {
+        // L'upsert en masse repose sur uk_produit_stock, que ddl-auto=update ne crée pas en présence de doublons
+        int doublons = produitStockRepository.assurerCleUnique();
+        if (doublons > 0) {
+            log.warn("{} associations produit/stock en double fusionnées avant la création de uk_produit_stock", doublons);
+        }
+    }
+
     @Transactional
     public ProduitStock affecterProduitAuStock(Long produitId, Long stockId, int nouvelleQuantite) {
         log.info("Tentative d'affectation - Produit ID: {}, Stock ID: {}, Quantité: {}", produitId, stockId, nouvelleQuantite);
@@ -69,6 +138,7 @@ public class ProduitStockService {
 
         try {
             ProduitStock saved = produitStockRepository.save(newProduitStock);
+            rollupService.rafraichirAssociation(stockId, produitId);
             log.info("✅ Affectation réussie - Produit ID: {}, Stock ID: {}", produitId, stockId);
             return saved;
         } catch (Exception e) {
@@ -79,6 +149,298 @@ public class ProduitStockService {
         }
     }
 
+    /**
+     * Affecte en masse une matrice (produit, stock, quantité), avec une sémantique d'upsert:
+     * une association existante voit sa quantité remplacée, une association absente est créée.
+     * Les lignes sont écrites par lots via INSERT ... ON DUPLICATE KEY UPDATE (un aller-retour par lot).
+     *
+     * @param lignes Les affectations à appliquer. En cas de doublon (produit, stock), la dernière ligne l'emporte.
+     * @return Une map contenant le nombre de lignes appliquées et de lots envoyés
+     * @throws IllegalArgumentException si une ligne est incomplète, a une quantité négative ou référence un
+     *         produit/stock inexistant
+     */
+    @Transactional
+    public Map<String, Object> affecterEnMasse(List<AffectationLigne> lignes) {
+        if (lignes == null || lignes.isEmpty()) {
+            throw new IllegalArgumentException("La liste des affectations est vide.");
+        }
+        log.info("Affectation en masse: {} lignes reçues", lignes.size());
+
+        // Dédoublonner par (produit, stock) en conservant l'ordre et la dernière quantité
+        Map<List<Long>, AffectationLigne> parCouple = new LinkedHashMap<>();
+        for (AffectationLigne ligne : lignes) {
+            if (ligne == null || ligne.getProduitId() == null || ligne.getStockId() == null || ligne.getQuantite() == null) {
+                throw new IllegalArgumentException("Chaque ligne doit contenir produitId, stockId et quantite.");
+            }
+            if (ligne.getQuantite() < 0) {
+                throw new IllegalArgumentException("La quantité doit être positive (Produit ID " + ligne.getProduitId()
+                        + ", Stock ID " + ligne.getStockId() + ").");
+            }
+            parCouple.put(List.of(ligne.getProduitId(), ligne.getStockId()), ligne);
+        }
+        List<AffectationLigne> aAppliquer = new ArrayList<>(parCouple.values());
+
+        // Vérifier l'existence des produits et stocks en deux requêtes
+        Set<Long> produitIds = aAppliquer.stream().map(AffectationLigne::getProduitId).collect(Collectors.toSet());
+        Set<Long> stockIds = aAppliquer.stream().map(AffectationLigne::getStockId).collect(Collectors.toSet());
+        Set<Long> produitsManquants = new TreeSet<>(produitIds);
+        produitRepository.findIdsExistants(produitIds).forEach(produitsManquants::remove);
+        Set<Long> stocksManquants = new TreeSet<>(stockIds);
+        stockRepository.findIdsExistants(stockIds).forEach(stocksManquants::remove);
+        if (!produitsManquants.isEmpty() || !stocksManquants.isEmpty()) {
+            log.warn("Affectation en masse refusée - Produits inconnus: {}, Stocks inconnus: {}", produitsManquants, stocksManquants);
+            throw new IllegalArgumentException("Références inconnues - Produits: " + produitsManquants + ", Stocks: " + stocksManquants);
+        }
+
+        int lots = 0;
+        for (int debut = 0; debut < aAppliquer.size(); debut += TAILLE_LOT_AFFECTATION) {
+            List<AffectationLigne> lot = aAppliquer.subList(debut, Math.min(debut + TAILLE_LOT_AFFECTATION, aAppliquer.size()));
+            produitStockRepository.upsertQuantites(lot);
+            // Écritures JDBC: non vues par le listener JPA
+            lot.forEach(ligne -> {
+                fluxStocksService.signaler(ligne.getStockId(), ligne.getProduitId());
+                ecritureDiffereeService.invalider(ligne.getStockId(), ligne.getProduitId());
+            });
+            rollupService.rafraichir(
+                    lot.stream().map(AffectationLigne::getStockId).collect(Collectors.toSet()),
+                    lot.stream().map(AffectationLigne::getProduitId).collect(Collectors.toSet()));
+            lots++;
+        }
+
+        log.info("✅ Affectation en masse réussie: {} lignes en {} lots", aAppliquer.size(), lots);
+        Map<String, Object> resultat = new HashMap<>();
+        resultat.put("lignesRecues", lignes.size());
+        resultat.put("lignesAppliquees", aAppliquer.size());
+        resultat.put("lots", lots);
+        return resultat;
+    }
+
+    /**
+     * Transfère des quantités de plusieurs produits d'un stock source vers un stock destination,
+     * en une seule transaction: soit toutes les lignes sont appliquées, soit aucune.
+     * Les lignes concernées sont créées si besoin puis verrouillées dans un ordre déterministe (stock, produit),
+     * ce qui évite les interblocages entre transferts. Les autres écritures (affectations en masse, imports)
+     * ne suivent pas cet ordre et l'insertion d'une association prend des verrous d'intervalle: un interblocage
+     * reste possible, le transfert victime est alors retenté.
+     *
+     * @param demande Le stock source, le stock destination et les lignes (produit, quantité)
+     * @return Une map résumant le transfert (lignes, quantité totale, associations créées)
+     * @throws IllegalArgumentException si la demande est invalide
+     * @throws RuntimeException si un produit n'est pas affecté au stock source ou si la quantité est insuffisante
+     */
+    public Map<String, Object> transfererStock(TransfertRequest demande) {
+        // Regrouper les quantités par produit (ordre trié pour des insertions déterministes)
+        Map<Long, Integer> quantitesParProduit = validerTransfert(demande);
+        Long sourceId = demande.getStockSourceId();
+        Long destinationId = demande.getStockDestinationId();
+        log.info("Transfert Stock {} -> Stock {}: {} produits", sourceId, destinationId, quantitesParProduit.size());
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        // Dans une transaction englobante (requête idempotente), un conflit de verrou la marque
+        // en rollback-only: une nouvelle tentative est alors inutile
+        int tentativesMax = TransactionSynchronizationManager.isActualTransactionActive() ? 1 : TENTATIVES_TRANSFERT;
+        for (int tentative = 1; ; tentative++) {
+            try {
+                Map<String, Object> resultat = transaction.execute(status ->
+                        appliquerTransfert(sourceId, destinationId, quantitesParProduit));
+                log.info("✅ Transfert réussi Stock {} -> Stock {}", sourceId, destinationId);
+                return resultat;
+            } catch (PessimisticLockingFailureException e) {
+                if (tentative >= tentativesMax) {
+                    log.error("❌ Transfert Stock {} -> Stock {} abandonné après {} tentatives", sourceId, destinationId, tentative, e);
+                    throw new RuntimeException("Transfert impossible: ressources verrouillées, veuillez réessayer.");
+                }
+                log.warn("Conflit de verrou sur le transfert Stock {} -> Stock {}, tentative {}", sourceId, destinationId, tentative);
+            }
+        }
+    }
+
+    private Map<Long, Integer> validerTransfert(TransfertRequest demande) {
+        if (demande == null || demande.getStockSourceId() == null || demande.getStockDestinationId() == null) {
+            throw new IllegalArgumentException("Les stocks source et destination sont requis.");
+        }
+        if (demande.getStockSourceId().equals(demande.getStockDestinationId())) {
+            throw new IllegalArgumentException("Les stocks source et destination doivent être différents.");
+        }
+        if (demande.getLignes() == null || demande.getLignes().isEmpty()) {
+            throw new IllegalArgumentException("Le transfert ne contient aucune ligne.");
+        }
+        Map<Long, Integer> quantitesParProduit = new TreeMap<>();
+        for (TransfertRequest.Ligne ligne : demande.getLignes()) {
+            if (ligne == null || ligne.getProduitId() == null || ligne.getQuantite() == null || ligne.getQuantite() <= 0) {
+                throw new IllegalArgumentException("Chaque ligne doit contenir un produitId et une quantité positive.");
+            }
+            quantitesParProduit.merge(ligne.getProduitId(), ligne.getQuantite(), Integer::sum);
+        }
+        return quantitesParProduit;
+    }
+
+    private Map<String, Object> appliquerTransfert(Long sourceId, Long destinationId, Map<Long, Integer> quantitesParProduit) {
+        List<Long> stockIds = new ArrayList<>(stockRepository.findIdsExistants(List.of(sourceId, destinationId)));
+        if (stockIds.size() < 2) {
+            throw new RuntimeException("Stock source ou destination introuvable.");
+        }
+        Set<Long> produitIds = quantitesParProduit.keySet();
+        Set<Long> produitsInconnus = new TreeSet<>(produitIds);
+        produitRepository.findIdsExistants(produitIds).forEach(produitsInconnus::remove);
+        if (!produitsInconnus.isEmpty()) {
+            throw new RuntimeException("Produits non trouvés: " + produitsInconnus);
+        }
+
+        // 1. Parcourir les stocks puis les produits dans l'ordre croissant: les associations manquantes
+        // côté destination (quantité 0) sont créées dans ce même parcours, juste avant leur verrouillage
+        Set<Long> manquants = new TreeSet<>(produitIds);
+        produitStockRepository.findProduitIdsAffectes(destinationId, produitIds).forEach(manquants::remove);
+        Map<Long, Integer> quantitesSource = new HashMap<>();
+        Map<Long, Integer> quantitesDestination = new HashMap<>();
+        for (Long stockId : new TreeSet<>(stockIds)) {
+            boolean estSource = stockId.equals(sourceId);
+            if (!estSource && !manquants.isEmpty()) {
+                List<AffectationLigne> nouvelles = manquants.stream()
+                        .map(produitId -> new AffectationLigne(produitId, destinationId, 0))
+                        .collect(Collectors.toList());
+                produitStockRepository.upsertQuantitesSiAbsentes(nouvelles);
+            }
+            Map<Long, Integer> quantites = estSource ? quantitesSource : quantitesDestination;
+            for (Object[] ligne : produitStockRepository.findQuantitesVerrouillees(stockId, produitIds)) {
+                quantites.put(((Number) ligne[0]).longValue(), ((Number) ligne[1]).intValue());
+            }
+        }
+
+        // 2. Vérifier toutes les lignes avant d'appliquer le moindre mouvement
+        long quantiteTotale = 0;
+        for (Map.Entry<Long, Integer> entree : quantitesParProduit.entrySet()) {
+            Long produitId = entree.getKey();
+            int quantite = entree.getValue();
+            Integer source = quantitesSource.get(produitId);
+            if (source == null) {
+                throw new RuntimeException("Le produit " + produitId + " n'est pas affecté au stock source");
+            }
+            if (!quantitesDestination.containsKey(produitId)) {
+                throw new RuntimeException("Association introuvable pour le produit " + produitId + " dans le stock destination");
+            }
+            if (ecritureDiffereeService.isActive()) {
+                // Contrôle et réservation sur la quantité projetée (base + deltas non appliqués);
+                // un refus annule la transaction, et avec elle les réservations déjà faites
+                try {
+                    ecritureDiffereeService.decrementer(sourceId, produitId, quantite);
+                } catch (EcritureDiffereeService.MouvementRefuseException e) {
+                    throw new RuntimeException("Produit " + produitId + ": " + e.getMessage());
+                }
+            } else if (source < quantite) {
+                throw new RuntimeException("Stock insuffisant pour le produit " + produitId + ". Disponible: " + source);
+            }
+            quantiteTotale += quantite;
+        }
+
+        // 3. Appliquer les mouvements sur les lignes déjà verrouillées (mises à jour directes,
+        // hors listener JPA: le flux temps réel est signalé explicitement). En écriture différée,
+        // les retraits sont déjà réservés et les ajouts sont journalisés avec la transaction
+        for (Map.Entry<Long, Integer> entree : quantitesParProduit.entrySet()) {
+            Long produitId = entree.getKey();
+            if (ecritureDiffereeService.isActive()) {
+                ecritureDiffereeService.incrementer(destinationId, produitId, entree.getValue());
+                continue;
+            }
+            produitStockRepository.ajouterDelta(sourceId, produitId, -entree.getValue());
+            produitStockRepository.ajouterDelta(destinationId, produitId, entree.getValue());
+            fluxStocksService.signaler(sourceId, produitId);
+            fluxStocksService.signaler(destinationId, produitId);
+        }
+        if (!ecritureDiffereeService.isActive()) {
+            rollupService.rafraichir(stockIds, produitIds);
+        }
+
+        Map<String, Object> resultat = new HashMap<>();
+        resultat.put("stockSourceId", sourceId);
+        resultat.put("stockDestinationId", destinationId);
+        resultat.put("lignes", quantitesParProduit.size());
+        resultat.put("quantiteTotale", quantiteTotale);
+        resultat.put("associationsCreees", manquants.size());
+        return resultat;
+    }
+
+    /**
+     * Supprime toutes les associations d'un stock par lots bornés, chaque lot dans sa propre transaction,
+     * puis le stock lui-même dans la transaction du dernier lot (voir {@link #supprimerParLots}).
+     * @param supprimerStock La suppression du stock, exécutée dans la transaction du dernier lot
+     * @return Le nombre d'associations supprimées
+     */
+    public long supprimerAssociationsParStock(Long stockId, Runnable supprimerStock) {
+        return supprimerParLots("Stock", stockId,
+                produitStockRepository.countByStock_Id(stockId), supprimerStock,
+                () -> {
+                    List<Long> produitIds = produitStockRepository.findLotProduitIdsParStock(stockId, TAILLE_LOT_SUPPRESSION);
+                    if (produitIds.isEmpty()) {
+                        return 0;
+                    }
+                    int supprimes = produitStockRepository.supprimerParStockEtProduits(stockId, produitIds);
+                    produitIds.forEach(produitId -> {
+                        fluxStocksService.signaler(stockId, produitId);
+                        ecritureDiffereeService.invalider(stockId, produitId);
+                    });
+                    rollupService.rafraichir(List.of(stockId), produitIds);
+                    return supprimes;
+                });
+    }
+
+    /**
+     * Supprime toutes les associations d'un produit par lots bornés, chaque lot dans sa propre transaction,
+     * puis le produit lui-même dans la transaction du dernier lot (voir {@link #supprimerParLots}).
+     * @param supprimerProduit La suppression du produit, exécutée dans la transaction du dernier lot
+     * @return Le nombre d'associations supprimées
+     */
+    public long supprimerAssociationsParProduit(Long produitId, Runnable supprimerProduit) {
+        return supprimerParLots("Produit", produitId,
+                produitStockRepository.countByProduit_Id(produitId), supprimerProduit,
+                () -> {
+                    List<Long> stockIds = produitStockRepository.findLotStockIdsParProduit(produitId, TAILLE_LOT_SUPPRESSION);
+                    if (stockIds.isEmpty()) {
+                        return 0;
+                    }
+                    int supprimes = produitStockRepository.supprimerParProduitEtStocks(produitId, stockIds);
+                    stockIds.forEach(stockId -> {
+                        fluxStocksService.signaler(stockId, produitId);
+                        ecritureDiffereeService.invalider(stockId, produitId);
+                    });
+                    rollupService.rafraichir(stockIds, List.of(produitId));
+                    return supprimes;
+                });
+    }
+
+    /**
+     * Suppression par lots, reprenable: les lots déjà validés ne sont pas annulés si un lot suivant échoue.
+     * L'entité parente n'est supprimée que dans la transaction du dernier lot (celui qui ne trouve plus
+     * de lot complet), si bien qu'elle ne disparaît jamais en laissant des associations derrière elle.
+     * Après un échec, l'entité existe toujours avec une partie de ses associations: relancer la suppression
+     * reprend là où elle s'était arrêtée.
+     */
+    private long supprimerParLots(String type, Long id, long totalAttendu, Runnable supprimerParent, IntSupplier supprimerLot) {
+        boolean suivreProgression = totalAttendu >= SEUIL_PROGRESSION_SUPPRESSION;
+        log.info("Suppression des associations - {} ID: {}, {} lignes attendues", type, id, totalAttendu);
+
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long totalSupprime = 0;
+        int supprimes;
+        do {
+            supprimes = transaction.execute(status -> {
+                int lot = supprimerLot.getAsInt();
+                if (lot < TAILLE_LOT_SUPPRESSION) {
+                    supprimerParent.run();
+                }
+                return lot;
+            });
+            totalSupprime += supprimes;
+            if (suivreProgression) {
+                log.info("Suppression {} ID {}: {}/{} lignes ({}%)", type, id, totalSupprime, totalAttendu,
+                        Math.min(100, totalSupprime * 100 / Math.max(1, totalAttendu)));
+            }
+        } while (supprimes == TAILLE_LOT_SUPPRESSION);
+
+        log.info("✅ {} ID {} supprimé avec {} associations", type, id, totalSupprime);
+        return totalSupprime;
+    }
+
     public Optional<ProduitStock> findByStockAndProduit(Long stockId, Long produitId) {
         // Cette méthode est simple et correcte
         return produitStockRepository.findByStock_IdAndProduit_Id(stockId, produitId);
@@ -105,6 +467,7 @@ public class ProduitStockService {
 
             // 3. Sauvegarder la modification
             ProduitStock result = produitStockRepository.save(produitStock); // Sauvegarde l'entité modifiée
+            rollupService.rafraichirAssociation(stockId, produitId);
             log.info("✅ Modification quantité réussie - Produit ID: {}, Stock ID: {}", produitId, stockId);
             return result;
 
@@ -127,6 +490,14 @@ public class ProduitStockService {
         }
 
         try {
+            if (ecritureDiffereeService.isActive()) {
+                // Mode écriture différée: contrôle sur la quantité projetée en mémoire, sans lecture en base;
+                // le delta est journalisé à la validation et appliqué au prochain vidage
+                int quantiteProjetee = ecritureDiffereeService.decrementer(stockId, produitId, quantiteADecrémenter);
+                log.info("✅ Décrémentation journalisée - Produit ID: {}, Stock ID: {}, Quantité projetée: {}", produitId, stockId, quantiteProjetee);
+                return associationProjetee(produitId, stockId, quantiteProjetee);
+            }
+
             // 1. Récupérer l'association
             ProduitStock produitStock = produitStockRepository
                 .findByStock_IdAndProduit_Id(stockId, produitId)
@@ -154,6 +525,7 @@ public class ProduitStockService {
 
             // 4. Sauvegarder la modification
             ProduitStock result = produitStockRepository.save(produitStock);
+            rollupService.rafraichirAssociation(stockId, produitId);
             log.info("✅ Décrémentation réussie - Produit ID: {}, Stock ID: {}", produitId, stockId);
             return result;
 
@@ -178,6 +550,7 @@ public class ProduitStockService {
 
             // Supprimer l'association trouvée
             produitStockRepository.delete(produitStock);
+            rollupService.rafraichirAssociation(stockId, produitId);
             log.info("✅ Affectation annulée avec succès - Produit ID: {}, Stock ID: {}", produitId, stockId);
 
         } catch (RuntimeException e) { // Attraper les exceptions spécifiques d'abord
@@ -191,16 +564,34 @@ public class ProduitStockService {
 
     // Utiliser @Transactional(readOnly = true) pour les opérations de lecture
     @Transactional(readOnly = true)
-    public List<ProduitStock> getProduitsByStock(Long stockId) {
+    public List<ProduitStockVue> getProduitsByStock(Long stockId) {
         log.debug("Récupération des produits pour Stock ID: {}", stockId);
-        // Attention: Cette méthode peut causer le problème N+1 si Produit est LAZY.
-        // Envisager une requête JOIN FETCH dans le repository si les performances sont un problème.
-        // Exemple dans ProduitStockRepository:
-        // @Query("SELECT ps FROM ProduitStock ps JOIN FETCH ps.produit p WHERE ps.stock.id = :stockId")
-        // List<ProduitStock> findByStockIdWithProduit(@Param("stockId") Long stockId);
+        // Projection en une requête jointe: ni entité ProduitStock, ni Produit/Stock chargés un par un
+        return produitStockRepository.findVuesParStock(stockId);
+    }
 
-        // Retourne directement la liste des entités ProduitStock
-        return produitStockRepository.findByStock_Id(stockId);
+    /**
+     * Page par curseur des produits d'un stock (voir {@link PaginationCurseur}), produit chargé par jointure.
+     * @param nom       Préfixe du nom du produit (null: pas de filtre)
+     * @param reference Référence exacte du produit (null: pas de filtre)
+     * @param tri       id ou quantite
+     */
+    @Transactional(readOnly = true)
+    public PageCurseur<ProduitStockVue> getProduitsByStockPage(Long stockId, String nom, Integer reference, String tri,
+                                                               String sens, String curseur, int taille) {
+        Specification<ProduitStock> chargerProduit = (root, query, cb) -> {
+            root.fetch("produit");
+            return null;
+        };
+        Specification<ProduitStock> filtres = Specification.where(chargerProduit)
+                .and(PaginationCurseur.egal("stock.id", stockId))
+                .and(PaginationCurseur.commencePar("produit.nom", nom))
+                .and(PaginationCurseur.egal("produit.reference", reference));
+        // Transaction en lecture seule: les entités de la page ne sont pas gardées pour le contrôle des modifications
+        PageCurseur<ProduitStock> page = PaginationCurseur.page(produitStockRepository, filtres, TRIS_PRODUITS_STOCK,
+                tri, sens, curseur, taille, ProduitStock::getId);
+        return new PageCurseur<>(page.getElements().stream().map(ProduitStockVue::de).collect(Collectors.toList()),
+                page.getCurseurSuivant());
     }
 
     /**
@@ -209,157 +600,160 @@ public class ProduitStockService {
      */
     @Transactional(readOnly = true) // Opération de lecture
     public Map<String, Object> genererRapportParPays() {
-        log.info("Génération du rapport par pays...");
-        // Récupérer tous les stocks (peut être optimisé si beaucoup de stocks)
-        List<Stock> stocks = stockRepository.findAll();
-
-        // Grouper les stocks par pays
-        Map<String, List<Stock>> stocksByCountry = stocks.stream()
-                .collect(Collectors.groupingBy(
-                    stock -> {
-                        String pays = stock.getPays();
-                        // Gérer les cas null/vide de manière plus concise
-                        return (pays != null && !pays.trim().isEmpty()) ? pays.trim() : "Non défini";
-                    }
-                ));
+        // Servi depuis le cache tant que ni les stocks ni les associations n'ont changé
+        return cacheRapports.obtenir("rapport-par-pays",
+                EnumSet.of(TypeDonnee.STOCK, TypeDonnee.PRODUIT_STOCK), this::calculerRapportParPays);
+    }
 
-        Map<String, Object> rapport = new HashMap<>();
-        Map<String, Map<String, Object>> statsByCountry = new HashMap<>();
-        long totalProduitsGlobal = 0; // Utiliser long pour éviter dépassement
-        long totalQuantiteGlobal = 0; // Utiliser long
+    private Map<String, Object> calculerRapportParPays() {
+        log.info("Génération du rapport par pays...");
 
-        // Pour chaque pays, calculer les statistiques
-        for (Map.Entry<String, List<Stock>> entry : stocksByCountry.entrySet()) {
-            String pays = entry.getKey();
-            List<Stock> stocksDuPays = entry.getValue();
-            log.debug("Traitement du pays: {} ({} stocks)", pays, stocksDuPays.size());
-
-            Map<String, Object> countryStats = new HashMap<>();
-            countryStats.put("nombreStocks", stocksDuPays.size());
-
-            // Liste des villes uniques dans ce pays
-            List<String> villesUniques = stocksDuPays.stream()
-                    .map(Stock::getVille)
-                    .filter(Objects::nonNull) // Filtrer les villes nulles
-                    .map(String::trim)         // Enlever les espaces
-                    .filter(ville -> !ville.isEmpty()) // Filtrer les villes vides
-                    .distinct()
-                    .sorted(String.CASE_INSENSITIVE_ORDER) // Trier sans tenir compte de la casse
-                    .collect(Collectors.toList());
-            countryStats.put("villes", villesUniques);
-            countryStats.put("nombreVilles", villesUniques.size());
-
-            // Compter les produits et les quantités totales par pays
-            long totalProduitsPays = 0; // Utiliser long
-            long totalQuantitePays = 0; // Utiliser long
-            Map<String, Long> quantiteParType = new HashMap<>(); // Utiliser Long pour les quantités
-
-            for (Stock stock : stocksDuPays) {
-                // Attention: Appels multiples au repository dans une boucle (problème N+1 potentiel)
-                // Il serait préférable de récupérer tous les ProduitStock en une fois si possible
-                List<ProduitStock> produitsEnStock = produitStockRepository.findByStock(stock); // Ou findByStock_Id
-
-                totalProduitsPays += produitsEnStock.size();
-
-                for (ProduitStock ps : produitsEnStock) {
-                    Integer quantite = ps.getQuantite();
-                    if (quantite != null) { // Vérifier si la quantité est nulle
-                        totalQuantitePays += quantite;
-
-                        // Compter par type de stock (vérifier si typeStock peut être null)
-                        if (stock.getTypeStock() != null) {
-                            String typeStock = stock.getTypeStock().name();
-                            quantiteParType.put(typeStock, quantiteParType.getOrDefault(typeStock, 0L) + quantite);
-                        }
-                    } else {
-                         log.warn("Quantité nulle trouvée pour ProduitStock ID: {}", ps.getId());
-                    }
-                }
+        // 1. Deux lectures en masse: stocks partitionnés par pays (valeur Java, comme l'ancien rapport:
+        // "France" et "france" restent distincts), puis totaux par stock rattachés à leur partition
+        Map<String, PartitionPays> partitions = new HashMap<>();
+        Map<Long, PartitionPays> partitionParStock = new HashMap<>();
+        Map<Long, TypeStock> typeParStock = new HashMap<>();
+        List<Object[]> localisations = stockRepository.findLocalisations();
+        for (Object[] localisation : localisations) {
+            Long stockId = (Long) localisation[0];
+            String pays = (String) localisation[1];
+            pays = (pays != null && !pays.trim().isEmpty()) ? pays.trim() : "Non défini";
+            PartitionPays partition = partitions.computeIfAbsent(pays, PartitionPays::new);
+            partition.villes.add((String) localisation[2]);
+            partitionParStock.put(stockId, partition);
+            if (localisation[3] != null) {
+                typeParStock.put(stockId, (TypeStock) localisation[3]);
             }
+        }
+        // [stockId, nombre d'associations, somme des quantités, nombre de quantités renseignées]
+        for (Object[] total : produitStockRepository.findTotauxParStock()) {
+            Long stockId = (Long) total[0];
+            PartitionPays partition = partitionParStock.get(stockId);
+            if (partition == null) {
+                continue;
+            }
+            long quantite = ((Number) total[2]).longValue();
+            partition.totalProduits += ((Number) total[1]).longValue();
+            partition.totalQuantite += quantite;
+            // Comme l'ancien rapport: un type n'apparaît que si le stock a au moins une quantité renseignée
+            TypeStock typeStock = typeParStock.get(stockId);
+            if (typeStock != null && ((Number) total[3]).longValue() > 0) {
+                partition.quantiteParType.merge(typeStock.name(), quantite, Long::sum);
+            }
+        }
 
-            countryStats.put("totalProduits", totalProduitsPays); // Nombre d'associations produit-stock
-            countryStats.put("totalQuantite", totalQuantitePays);
-            countryStats.put("quantiteParType", quantiteParType);
+        // 2. Agrégation de chaque pays
+        List<ResultatPays> resultats = partitions.values().stream().map(this::agregerPays).collect(Collectors.toList());
 
-            statsByCountry.put(pays, countryStats);
-            totalProduitsGlobal += totalProduitsPays;
-            totalQuantiteGlobal += totalQuantitePays;
+        // 3. Fusion
+        Map<String, Map<String, Object>> statsByCountry = new HashMap<>();
+        long totalProduitsGlobal = 0; // Utiliser long pour éviter dépassement
+        long totalQuantiteGlobal = 0; // Utiliser long
+        for (ResultatPays resultat : resultats) {
+            statsByCountry.put(resultat.pays(), resultat.stats());
+            totalProduitsGlobal += resultat.totalProduits();
+            totalQuantiteGlobal += resultat.totalQuantite();
         }
 
+        Map<String, Object> rapport = new HashMap<>();
         rapport.put("statsByCountry", statsByCountry);
 
-        // Ajouter les totaux globaux (calculés pendant la boucle pour éviter requêtes supplémentaires)
         Map<String, Object> globalStats = new HashMap<>();
-        globalStats.put("totalStocks", stocks.size());
+        globalStats.put("totalStocks", localisations.size());
         globalStats.put("totalProduits", totalProduitsGlobal); // Total des associations
         globalStats.put("totalQuantite", totalQuantiteGlobal);
-        globalStats.put("nombrePays", stocksByCountry.size());
+        globalStats.put("nombrePays", partitions.size());
 
         rapport.put("globalStats", globalStats);
         log.info("Rapport par pays généré avec succès.");
         return rapport;
     }
 
+    // Stocks (villes) et totaux d'un pays
+    private static class PartitionPays {
+        private final String pays;
+        private final List<String> villes = new ArrayList<>();
+        private long totalProduits;
+        private long totalQuantite;
+        private final Map<String, Long> quantiteParType = new HashMap<>();
+
+        PartitionPays(String pays) {
+            this.pays = pays;
+        }
+    }
+
+    private record ResultatPays(String pays, Map<String, Object> stats, long totalProduits, long totalQuantite) {}
+
+    private ResultatPays agregerPays(PartitionPays partition) {
+        Map<String, Object> countryStats = new HashMap<>();
+        countryStats.put("nombreStocks", partition.villes.size());
+
+        // Liste des villes uniques dans ce pays
+        List<String> villesUniques = partition.villes.stream()
+                .filter(Objects::nonNull) // Filtrer les villes nulles
+                .map(String::trim)         // Enlever les espaces
+                .filter(ville -> !ville.isEmpty()) // Filtrer les villes vides
+                .distinct()
+                .sorted(String.CASE_INSENSITIVE_ORDER) // Trier sans tenir compte de la casse
+                .collect(Collectors.toList());
+        countryStats.put("villes", villesUniques);
+        countryStats.put("nombreVilles", villesUniques.size());
+
+        countryStats.put("totalProduits", partition.totalProduits); // Nombre d'associations produit-stock
+        countryStats.put("totalQuantite", partition.totalQuantite);
+        countryStats.put("quantiteParType", partition.quantiteParType);
+        return new ResultatPays(partition.pays, countryStats, partition.totalProduits, partition.totalQuantite);
+    }
+
     /**
-     * Récupère les produits dont la quantité est inférieure au seuil spécifié
-     * @param seuil Le seuil minimal de quantité
+     * Récupère les produits dont la quantité est inférieure à leur seuil d'alerte: seuil du stock,
+     * sinon seuil du produit, sinon le seuil global spécifié
+     * @param seuil Le seuil global, pour les lignes sans seuil spécifique
      * @return Une map contenant les produits à stock faible groupés par pays
      */
     @Transactional(readOnly = true) // Opération de lecture
     public Map<String, Object> getProduitsBelowThreshold(int seuil) {
-        log.info("Recherche des produits avec quantité < {}", seuil);
-        // Attention: Récupérer TOUS les ProduitStock peut être très coûteux en mémoire.
-        // Envisager une requête spécifique dans le repository:
-        // @Query("SELECT ps FROM ProduitStock ps JOIN FETCH ps.produit JOIN FETCH ps.stock WHERE ps.quantite < :seuil")
-        // List<ProduitStock> findBelowThresholdWithDetails(@Param("seuil") int seuil);
-        List<ProduitStock> produitsBelowThreshold = produitStockRepository.findAll().stream()
-                .filter(ps -> ps.getQuantite() != null && ps.getQuantite() < seuil) // Vérifier null et < seuil
-                .collect(Collectors.toList());
+        return cacheRapports.obtenir("stock-faible:" + seuil,
+                EnumSet.of(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT), () -> calculerProduitsBelowThreshold(seuil));
+    }
+
+    private Map<String, Object> calculerProduitsBelowThreshold(int seuil) {
+        log.info("Recherche des produits sous leur seuil d'alerte (seuil global: {})", seuil);
+        // Deux parcours d'index: seuls les lignes en alerte sont lues, avec produit et stock joints
+        List<LigneStockFaible> lignes = new ArrayList<>(produitStockRepository.findSousSeuilSpecifique());
+        lignes.addAll(produitStockRepository.findSousSeuilGlobal(seuil));
 
         // Grouper les produits par pays
         Map<String, List<Map<String, Object>>> produitsByCountry = new HashMap<>();
 
-        for (ProduitStock ps : produitsBelowThreshold) {
-            // Accéder aux entités liées (peut causer N+1 si non chargées par la requête initiale)
-            Stock stock = ps.getStock();
-            Produit produit = ps.getProduit();
-
-            // Vérifier si les entités liées sont nulles (si les relations sont optionnelles ou s'il y a un problème de données)
-            if (stock == null || produit == null) {
-                 log.warn("Données Produit ou Stock manquantes pour ProduitStock ID: {}", ps.getId());
-                 continue; // Ignorer cette entrée
-            }
-
-
-            String pays = stock.getPays();
+        for (LigneStockFaible ligne : lignes) {
+            String pays = ligne.getPays();
             if (pays == null || pays.trim().isEmpty()) {
                 pays = "Non défini";
             }
-
-            // Utiliser computeIfAbsent pour simplifier l'ajout à la map
-            produitsByCountry.computeIfAbsent(pays, k -> new ArrayList<>());
+            int seuilLigne = ligne.getSeuil() != null ? ligne.getSeuil() : seuil;
 
             Map<String, Object> produitInfo = new HashMap<>();
-            produitInfo.put("produitStockId", ps.getId()); // ID de l'association
-            produitInfo.put("id", produit.getId());
-            produitInfo.put("nom", produit.getNom());
-            produitInfo.put("reference", produit.getReference());
-            produitInfo.put("stockId", stock.getId());
-            produitInfo.put("stockNom", stock.getNom());
-            produitInfo.put("ville", stock.getVille());
-            produitInfo.put("typeStock", stock.getTypeStock() != null ? stock.getTypeStock().name() : "N/A");
-            produitInfo.put("quantite", ps.getQuantite());
-            // Pas de note ici
-            produitInfo.put("seuil", seuil);
-            // Calculer le manquant (gérer null pour quantité)
-            produitInfo.put("manquant", Math.max(0, seuil - (ps.getQuantite() != null ? ps.getQuantite() : 0)));
-
-            produitsByCountry.get(pays).add(produitInfo);
+            produitInfo.put("produitStockId", ligne.getProduitStockId()); // ID de l'association
+            produitInfo.put("id", ligne.getProduitId());
+            produitInfo.put("nom", ligne.getProduitNom());
+            produitInfo.put("reference", ligne.getProduitReference());
+            produitInfo.put("stockId", ligne.getStockId());
+            produitInfo.put("stockNom", ligne.getStockNom());
+            produitInfo.put("ville", ligne.getVille());
+            produitInfo.put("typeStock", ligne.getTypeStock() != null ? ligne.getTypeStock().name() : "N/A");
+            int quantite = ligne.getQuantite() != null ? ligne.getQuantite() : 0;
+            produitInfo.put("quantite", quantite);
+            produitInfo.put("seuil", seuilLigne);
+            produitInfo.put("seuilSpecifique", ligne.getSeuil() != null);
+            produitInfo.put("manquant", Math.max(0, seuilLigne - quantite));
+
+            produitsByCountry.computeIfAbsent(pays, k -> new ArrayList<>()).add(produitInfo);
         }
 
         Map<String, Object> rapport = new HashMap<>();
         rapport.put("seuil", seuil);
-        rapport.put("totalProduits", produitsBelowThreshold.size());
+        rapport.put("totalProduits", lignes.size());
         rapport.put("produitsByCountry", produitsByCountry);
 
         // Ajouter les totaux par pays
@@ -369,77 +763,253 @@ public class ProduitStockService {
         }
         rapport.put("totalsByCountry", totalsByCountry);
 
-        log.info("Rapport stock faible généré: {} produits trouvés.", produitsBelowThreshold.size());
+        log.info("Rapport stock faible généré: {} produits trouvés.", lignes.size());
         return rapport;
     }
 
     /**
-     * Get stock statistics including product counts and status
+     * Les lignes les plus critiques sous leur seuil d'alerte: plus faible rapport quantité / seuil d'abord,
+     * puis plus grand manquant. Les candidates sont lues en flux (deux parcours d'index) et seules les N plus
+     * critiques sont conservées dans un tas borné: la mémoire est en O(N) (O(N) par pays si parPays),
+     * quel que soit le nombre de lignes en alerte. Produit et stock ne sont chargés que pour les lignes retenues.
+     *
+     * @param limite  Nombre de lignes retenues (N), par pays si parPays
+     * @param seuil   Le seuil global, pour les lignes sans seuil spécifique
+     * @param pays    Filtre sur le pays du stock (null ou vide: tous les pays)
+     * @param parPays true: les N lignes les plus critiques de chaque pays; false: les N plus critiques au total
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getLignesCritiques(int limite, int seuil, String pays, boolean parPays) {
+        if (limite <= 0 || limite > LIMITE_CRITIQUES_MAX) {
+            throw new IllegalArgumentException("La limite doit être comprise entre 1 et " + LIMITE_CRITIQUES_MAX + ".");
+        }
+        String filtrePays = pays == null || pays.isBlank() ? null : pays.trim().toLowerCase();
+        return cacheRapports.obtenir("critiques:" + limite + ":" + seuil + ":" + filtrePays + ":" + parPays,
+                EnumSet.of(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT),
+                () -> calculerLignesCritiques(limite, seuil, filtrePays, parPays));
+    }
+
+    private Map<String, Object> calculerLignesCritiques(int limite, int seuil, String filtrePays, boolean parPays) {
+        long debut = System.currentTimeMillis();
+        Comparator<LigneCritique> ordre = ordreCriticite(seuil);
+        // Tas inversé: la tête est la moins critique des lignes retenues, remplacée par toute ligne plus critique
+        Map<String, PriorityQueue<LigneCritique>> selections = new HashMap<>();
+        long[] lues = new long[1];
+        Consumer<LigneCritique> retenir = ligne -> {
+            lues[0]++;
+            PriorityQueue<LigneCritique> tas = selections.computeIfAbsent(parPays ? nomPays(ligne.getPays()) : "",
+                    k -> new PriorityQueue<>(limite + 1, ordre.reversed()));
+            if (tas.size() < limite) {
+                tas.add(ligne);
+            } else if (ordre.compare(ligne, tas.peek()) < 0) {
+                tas.poll();
+                tas.add(ligne);
+            }
+        };
+        // Deux curseurs successifs: un seul peut être ouvert à la fois sur la connexion
+        try (Stream<LigneCritique> lignes = produitStockRepository.streamCritiquesSeuilSpecifique(filtrePays)) {
+            lignes.forEach(retenir);
+        }
+        try (Stream<LigneCritique> lignes = produitStockRepository.streamCritiquesSeuilGlobal(seuil, filtrePays)) {
+            lignes.forEach(retenir);
+        }
+
+        Set<Long> ids = new HashSet<>();
+        selections.values().forEach(tas -> tas.forEach(ligne -> ids.add(ligne.getProduitStockId())));
+        Map<Long, LigneStockFaible> details = new HashMap<>();
+        if (!ids.isEmpty()) {
+            produitStockRepository.findLignesStockFaibleParIds(ids).forEach(d -> details.put(d.getProduitStockId(), d));
+        }
+
+        Map<String, List<Map<String, Object>>> resultats = new TreeMap<>();
+        selections.forEach((cle, tas) -> {
+            List<LigneCritique> triees = new ArrayList<>(tas);
+            triees.sort(ordre);
+            List<Map<String, Object>> liste = new ArrayList<>(triees.size());
+            for (LigneCritique ligne : triees) {
+                LigneStockFaible detail = details.get(ligne.getProduitStockId());
+                if (detail != null) { // Association supprimée entre les deux lectures
+                    liste.add(ligneCritique(detail, seuil));
+                }
+            }
+            resultats.put(cle, liste);
+        });
+
+        Map<String, Object> rapport = new HashMap<>();
+        rapport.put("limite", limite);
+        rapport.put("seuil", seuil);
+        rapport.put("pays", filtrePays);
+        rapport.put("lignesEnAlerte", lues[0]);
+        if (parPays) {
+            rapport.put("lignesParPays", resultats);
+        } else {
+            rapport.put("lignes", resultats.getOrDefault("", List.of()));
+        }
+        log.info("Lignes critiques: {} retenues parmi {} lignes en alerte ({} ms)",
+                ids.size(), lues[0], System.currentTimeMillis() - debut);
+        return rapport;
+    }
+
+    // Plus faible taux de couverture du seuil, puis plus grand manquant, puis identifiant (ordre stable)
+    private static Comparator<LigneCritique> ordreCriticite(int seuilGlobal) {
+        return Comparator.<LigneCritique>comparingDouble(l -> tauxSeuil(quantite(l), seuilLigne(l, seuilGlobal)))
+                .thenComparing(Comparator.<LigneCritique>comparingInt(l -> seuilLigne(l, seuilGlobal) - quantite(l)).reversed())
+                .thenComparing(LigneCritique::getProduitStockId);
+    }
+
+    private static int quantite(LigneCritique ligne) {
+        return ligne.getQuantite() != null ? ligne.getQuantite() : 0;
+    }
+
+    private static int seuilLigne(LigneCritique ligne, int seuilGlobal) {
+        return ligne.getSeuil() != null ? ligne.getSeuil() : seuilGlobal;
+    }
+
+    private static double tauxSeuil(int quantite, int seuil) {
+        return seuil > 0 ? (double) quantite / seuil : 0;
+    }
+
+    private static String nomPays(String pays) {
+        return pays == null || pays.trim().isEmpty() ? "Non défini" : pays.trim();
+    }
+
+    private Map<String, Object> ligneCritique(LigneStockFaible ligne, int seuil) {
+        int seuilLigne = ligne.getSeuil() != null ? ligne.getSeuil() : seuil;
+        int quantite = ligne.getQuantite() != null ? ligne.getQuantite() : 0;
+        Map<String, Object> produitInfo = new HashMap<>();
+        produitInfo.put("produitStockId", ligne.getProduitStockId());
+        produitInfo.put("id", ligne.getProduitId());
+        produitInfo.put("nom", ligne.getProduitNom());
+        produitInfo.put("reference", ligne.getProduitReference());
+        produitInfo.put("stockId", ligne.getStockId());
+        produitInfo.put("stockNom", ligne.getStockNom());
+        produitInfo.put("ville", ligne.getVille());
+        produitInfo.put("pays", nomPays(ligne.getPays()));
+        produitInfo.put("typeStock", ligne.getTypeStock() != null ? ligne.getTypeStock().name() : "N/A");
+        produitInfo.put("quantite", quantite);
+        produitInfo.put("seuil", seuilLigne);
+        produitInfo.put("seuilSpecifique", ligne.getSeuil() != null);
+        produitInfo.put("manquant", Math.max(0, seuilLigne - quantite));
+        produitInfo.put("taux", tauxSeuil(quantite, seuilLigne));
+        return produitInfo;
+    }
+
+    /**
+     * Répercute le seuil d'alerte d'un produit sur ses associations qui n'ont pas de seuil propre.
+     */
+    @Transactional
+    public int repercuterSeuilProduit(Long produitId, Integer seuil) {
+        int lignes = produitStockRepository.majSeuilEffectifProduit(produitId, seuil);
+        log.info("Seuil d'alerte du produit {} ({}) répercuté sur {} associations", produitId, seuil, lignes);
+        return lignes;
+    }
+
+    /**
+     * Définit (ou supprime, si seuil est null) le seuil d'alerte propre à un produit dans un stock.
+     * Ce seuil est prioritaire sur celui du produit et sur le seuil global.
+     */
+    @Transactional
+    public ProduitStock modifierSeuilAlerte(Long produitId, Long stockId, Integer seuil) {
+        if (seuil != null && seuil < 0) {
+            throw new IllegalArgumentException("Le seuil d'alerte doit être positif.");
+        }
+        ProduitStock produitStock = produitStockRepository
+            .findByStock_IdAndProduit_Id(stockId, produitId)
+            .orElseThrow(() -> new RuntimeException("Ce produit n'est pas affecté à ce stock"));
+        produitStock.setSeuilAlerte(seuil);
+        log.info("Seuil d'alerte - Produit ID: {}, Stock ID: {}: {}", produitId, stockId, seuil);
+        return produitStockRepository.save(produitStock);
+    }
+
+    /**
+     * Get stock statistics including product counts and status (per-product details: getDetailsStatistiques)
      * @return Map containing statistics for each stock
      */
     @Transactional(readOnly = true) // Opération de lecture
     public Map<String, Object> getStockStatistics() {
+        return cacheRapports.obtenir("statistics",
+                EnumSet.of(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT), this::calculerStockStatistics);
+    }
+
+    private Map<String, Object> calculerStockStatistics() {
         log.info("Calcul des statistiques de stock...");
         Map<String, Object> result = new HashMap<>();
-        List<Stock> allStocks = stockRepository.findAll(); // Attention N+1 potentiel si accès aux relations de Stock plus tard
-
-        final int LOW_STOCK_THRESHOLD = 30; // Utiliser une constante pour le seuil
-
-        for (Stock stock : allStocks) {
-            // Attention: N+1 potentiel ici. Envisager une requête optimisée.
-            List<ProduitStock> produitStocks = produitStockRepository.findByStock(stock); // Ou findByStock_Id
-            Map<String, Object> stockStats = new HashMap<>();
 
-            int totalProducts = produitStocks.size();
-            int lowStockCount = 0;
-            int zeroStockCount = 0;
-
-            for (ProduitStock ps : produitStocks) {
-                Integer quantite = ps.getQuantite(); // Utiliser Integer
-                // int seuilAlerte = ps.getProduit().getSeuilAlerte(); // Attention N+1 si Produit est LAZY
-
-                if (quantite == null || quantite <= 0) { // Gérer null et zéro
-                    zeroStockCount++;
-                } else if (quantite <= LOW_STOCK_THRESHOLD) { // Utiliser la constante
-                    lowStockCount++;
-                }
-            }
+        // Une seule requête groupée pour tous les stocks; le détail par produit est paginé (getDetailsStatistiques)
+        List<StatistiquesStock> statistiques = produitStockRepository.findStatistiquesParStock(SEUIL_STOCK_BAS);
+        for (StatistiquesStock statistique : statistiques) {
+            int totalProducts = statistique.getTotalProduits().intValue();
+            int lowStockCount = statistique.getProduitsStockBas() != null ? statistique.getProduitsStockBas().intValue() : 0;
+            int zeroStockCount = statistique.getProduitsEnRupture() != null ? statistique.getProduitsEnRupture().intValue() : 0;
 
             Map<String, Object> stats = new HashMap<>();
             stats.put("totalProducts", totalProducts);
             stats.put("lowStockCount", lowStockCount);
             stats.put("zeroStockCount", zeroStockCount);
-            // Calcul correct pour normalStockCount
             stats.put("normalStockCount", totalProducts - lowStockCount - zeroStockCount);
             stats.put("stockStatus", calculateStockStatus(totalProducts, lowStockCount, zeroStockCount));
-
-            // Add product details (Attention N+1 potentiel si Produit est LAZY)
-            List<Map<String, Object>> productDetails = produitStocks.stream()
-                .filter(ps -> ps.getProduit() != null) // Vérifier que Produit n'est pas null
-                .map(ps -> {
-                    Map<String, Object> detail = new HashMap<>();
-                    detail.put("produitStockId", ps.getId()); // ID de l'association
-                    detail.put("id", ps.getProduit().getId());
-                    detail.put("nom", ps.getProduit().getNom());
-                    detail.put("reference", ps.getProduit().getReference());
-                    detail.put("quantite", ps.getQuantite());
-                    // Pas de note ici
-                    // detail.put("seuilAlerte", ps.getProduit().getSeuilAlerte()); // Décommenter si seuilAlerte existe et est chargé
-                    detail.put("status", getProductStatus(ps.getQuantite() != null ? ps.getQuantite() : 0, LOW_STOCK_THRESHOLD)); // Gérer null et utiliser constante
-                    return detail;
-                })
-                .collect(Collectors.toList());
-
-            stats.put("products", productDetails);
             // Utiliser l'ID comme clé est plus fiable que le nom
-            result.put(stock.getId().toString(), stats);
+            result.put(statistique.getStockId().toString(), stats);
         }
-        log.info("Statistiques de stock calculées pour {} stocks.", allStocks.size());
+        log.info("Statistiques de stock calculées pour {} stocks.", statistiques.size());
         return result;
     }
 
+    /**
+     * Détail paginé des produits d'un stock pour les statistiques, trié par référence produit.
+     * @param stockId L'ID du stock
+     * @param page    Numéro de page (à partir de 0)
+     * @param taille  Nombre de produits par page (borné à TAILLE_PAGE_MAX)
+     * @return Une map contenant les produits de la page et les informations de pagination
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getDetailsStatistiques(Long stockId, int page, int taille) {
+        if (page < 0 || taille <= 0) {
+            throw new IllegalArgumentException("La page doit être positive et la taille strictement positive.");
+        }
+        Page<DetailProduitStock> details = produitStockRepository.findDetailsParStock(
+                stockId, PageRequest.of(page, Math.min(taille, TAILLE_PAGE_MAX)));
+
+        List<Map<String, Object>> productDetails = new ArrayList<>(details.getNumberOfElements());
+        for (DetailProduitStock detail : details) {
+            int seuil = detail.getSeuil() != null ? detail.getSeuil() : SEUIL_STOCK_BAS;
+            Map<String, Object> produit = new HashMap<>();
+            produit.put("produitStockId", detail.getProduitStockId()); // ID de l'association
+            produit.put("id", detail.getProduitId());
+            produit.put("nom", detail.getNom());
+            produit.put("reference", detail.getReference());
+            produit.put("quantite", detail.getQuantite());
+            produit.put("seuilAlerte", seuil);
+            produit.put("status", getProductStatus(detail.getQuantite() != null ? detail.getQuantite() : 0, seuil));
+            productDetails.add(produit);
+        }
+
+        Map<String, Object> resultat = new HashMap<>();
+        resultat.put("products", productDetails);
+        resultat.put("page", details.getNumber());
+        resultat.put("taille", details.getSize());
+        resultat.put("totalElements", details.getTotalElements());
+        resultat.put("totalPages", details.getTotalPages());
+        return resultat;
+    }
+
     // Méthodes utilitaires privées
-    private String calculateStockStatus(int total, int low, int zero) {
+
+    // Association non gérée par JPA portant la quantité projetée; produit et stock réduits à leur id
+    // (rien n'est lu en base)
+    private ProduitStock associationProjetee(Long produitId, Long stockId, int quantite) {
+        Produit produit = new Produit();
+        produit.setId(produitId);
+        Stock stock = new Stock();
+        stock.setId(stockId);
+        ProduitStock association = new ProduitStock();
+        association.setProduit(produit);
+        association.setStock(stock);
+        association.setQuantite(quantite);
+        return association;
+    }
+
+    static String calculateStockStatus(int total, int low, int zero) {
         // Utiliser des constantes pour les statuts
         final String STATUS_EMPTY = "EMPTY";
         final String STATUS_CRITICAL = "CRITICAL";
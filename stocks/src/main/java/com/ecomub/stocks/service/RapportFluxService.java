@@ -0,0 +1,317 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.LigneRapportLocalisation;
+import com.ecomub.stocks.model.Produit;
+import com.ecomub.stocks.model.ProduitStockVue;
+import com.ecomub.stocks.model.StatistiquesStock;
+import com.ecomub.stocks.model.Stock;
+import com.ecomub.stocks.repository.ProduitRepository;
+import com.ecomub.stocks.repository.ProduitStockRepository;
+import com.ecomub.stocks.repository.RollupLocalisationRepository;
+import com.ecomub.stocks.repository.StockRepository;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Écriture en continu (mode ?stream=true) des listes et rapports volumineux.
+ *
+ * Les lignes sont lues par un curseur serveur (fetch size MIN_VALUE côté MySQL) et écrites une à une
+ * dans la réponse par un JsonGenerator: ni la liste des entités ni l'arbre JSON complet ne sont
+ * matérialisés en mémoire. Tant qu'un curseur MySQL est ouvert, aucune autre requête ne peut être
+ * exécutée sur la connexion: tout ce qui est nécessaire à l'écriture est chargé avant son ouverture.
+ * Les méthodes sont appelées depuis un StreamingResponseBody, donc hors du thread de la requête.
+ */
+@Service
+public class RapportFluxService {
+
+    private static final Logger log = LoggerFactory.getLogger(RapportFluxService.class);
+
+    private static final String GROUP_BY_VILLE = "ville";
+    private static final String GROUP_BY_PAYS = "pays";
+
+    @Autowired
+    private ProduitRepository produitRepository;
+
+    @Autowired
+    private StockRepository stockRepository;
+
+    @Autowired
+    private ProduitStockRepository produitStockRepository;
+
+    @Autowired
+    private RollupLocalisationRepository rollupLocalisationRepository;
+
+    @Autowired
+    private ProduitStockService produitStockService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Transactional(readOnly = true)
+    public void ecrireProduits(OutputStream sortie) {
+        try (Stream<Produit> produits = produitRepository.streamTous()) {
+            ecrireTableau(sortie, produits);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void ecrireStocks(OutputStream sortie) {
+        try (Stream<Stock> stocks = stockRepository.streamTous()) {
+            ecrireTableau(sortie, stocks);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public void ecrireProduitsParStock(Long stockId, OutputStream sortie) {
+        try (Stream<ProduitStockVue> associations = produitStockRepository.streamVuesParStock(stockId)) {
+            ecrireTableau(sortie, associations, false);
+        }
+    }
+
+    /**
+     * Même contenu que GET /api/produit-stock/statistics, une entrée par stock écrite au fil du curseur.
+     */
+    @Transactional(readOnly = true)
+    public void ecrireStatistiques(OutputStream sortie) {
+        try (JsonGenerator gen = creerGenerateur(sortie);
+             Stream<StatistiquesStock> statistiques =
+                     produitStockRepository.streamStatistiquesParStock(ProduitStockService.SEUIL_STOCK_BAS)) {
+            gen.writeStartObject();
+            gen.writeBooleanField("success", true);
+            gen.writeObjectFieldStart("statistics");
+            for (StatistiquesStock statistique : (Iterable<StatistiquesStock>) statistiques::iterator) {
+                int totalProducts = statistique.getTotalProduits().intValue();
+                int lowStockCount = statistique.getProduitsStockBas() != null ? statistique.getProduitsStockBas().intValue() : 0;
+                int zeroStockCount = statistique.getProduitsEnRupture() != null ? statistique.getProduitsEnRupture().intValue() : 0;
+
+                gen.writeObjectFieldStart(statistique.getStockId().toString());
+                gen.writeNumberField("totalProducts", totalProducts);
+                gen.writeNumberField("lowStockCount", lowStockCount);
+                gen.writeNumberField("zeroStockCount", zeroStockCount);
+                gen.writeNumberField("normalStockCount", totalProducts - lowStockCount - zeroStockCount);
+                gen.writeStringField("stockStatus", ProduitStockService.calculateStockStatus(totalProducts, lowStockCount, zeroStockCount));
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Le rapport par pays est borné par le nombre de pays (un total par produit et par pays):
+     * il est écrit depuis l'agrégat en cache, seule l'écriture de la réponse se fait en continu.
+     */
+    public void ecrireRapportParPays(OutputStream sortie) {
+        Map<String, Object> rapport = produitStockService.genererRapportParPays();
+        try (JsonGenerator gen = creerGenerateur(sortie)) {
+            gen.writeStartObject();
+            gen.writeBooleanField("success", true);
+            gen.writeStringField("message", "Rapport généré avec succès");
+            gen.writeFieldName("rapport");
+            gen.writeObject(rapport);
+            gen.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Même format que GET /api/stocks/report/by-location, écrit produit par produit.
+     *
+     * Les colonnes (stocks nommés de chaque localisation) sont chargées d'abord; les lignes de l'agrégat
+     * arrivent ensuite triées par localisation puis par référence, de sorte qu'une seule ligne produit
+     * est en mémoire à la fois. Le tri MySQL ignorant la casse, deux localisations qui ne diffèrent que
+     * par la casse sont regroupées sous la première orthographe rencontrée.
+     */
+    @Transactional(readOnly = true)
+    public void ecrireRapportParLocalisation(String groupBy, OutputStream sortie) {
+        final String finalGroupBy = verifierGroupBy(groupBy);
+        final boolean parVille = GROUP_BY_VILLE.equals(finalGroupBy);
+
+        // Groupes de la collation de la base: le flux trié par localisation y entrelace les variantes
+        // (casse, accents) d'une même localisation, qui ne doivent produire qu'une seule clé JSON
+        Map<String, String> noms = rollupLocalisationRepository.findNomsLocalisations(parVille);
+        Map<String, ColonnesLocalisation> colonnes = chargerColonnes(parVille
+                ? rollupLocalisationRepository.findStocksParVille()
+                : rollupLocalisationRepository.findStocksParPays(), noms);
+
+        try (JsonGenerator gen = creerGenerateur(sortie);
+             Stream<LigneRapportLocalisation> lignes = parVille
+                     ? rollupLocalisationRepository.streamLignesRapportParVille()
+                     : rollupLocalisationRepository.streamLignesRapportParPays()) {
+            gen.writeStartObject();
+            gen.writeStringField("groupBy", finalGroupBy);
+            gen.writeObjectFieldStart("locations");
+
+            String localisationCourante = null;
+            ColonnesLocalisation colonnesCourantes = null;
+            LigneRapportLocalisation produitCourant = null;
+            int[] quantites = null;
+            long nbLignes = 0;
+
+            for (LigneRapportLocalisation ligne : (Iterable<LigneRapportLocalisation>) lignes::iterator) {
+                String variante = parVille ? ligne.getVille() : ligne.getPays();
+                String localisation = noms.getOrDefault(variante, variante);
+                if (!localisation.equals(localisationCourante)) {
+                    if (produitCourant != null) {
+                        ecrireLigneProduit(gen, produitCourant, colonnesCourantes, quantites);
+                        gen.writeEndArray();
+                        gen.writeEndObject();
+                    }
+                    localisationCourante = localisation;
+                    colonnesCourantes = colonnes.getOrDefault(localisation, ColonnesLocalisation.VIDE);
+                    quantites = new int[colonnesCourantes.entetes.length];
+                    produitCourant = null;
+
+                    gen.writeObjectFieldStart(localisation);
+                    gen.writeArrayFieldStart("stocks");
+                    for (String entete : colonnesCourantes.entetes) {
+                        gen.writeString(entete);
+                    }
+                    gen.writeEndArray();
+                    gen.writeArrayFieldStart("products");
+                }
+                if (produitCourant != null && !produitCourant.getProduitId().equals(ligne.getProduitId())) {
+                    ecrireLigneProduit(gen, produitCourant, colonnesCourantes, quantites);
+                    Arrays.fill(quantites, 0);
+                    produitCourant = null;
+                }
+                if (produitCourant == null) {
+                    produitCourant = ligne;
+                }
+                Integer colonne = colonnesCourantes.colonneParStock.get(ligne.getStockId());
+                if (colonne != null) {
+                    quantites[colonne] = ligne.getQuantite() != null ? ligne.getQuantite() : 0;
+                }
+                nbLignes++;
+            }
+            if (produitCourant != null) {
+                ecrireLigneProduit(gen, produitCourant, colonnesCourantes, quantites);
+                gen.writeEndArray();
+                gen.writeEndObject();
+            }
+            gen.writeEndObject();
+            if (nbLignes == 0) {
+                gen.writeStringField("message", "Aucune donnée de stock produit trouvée.");
+            }
+            gen.writeEndObject();
+            log.debug("Rapport par {} écrit en continu: {} lignes", finalGroupBy, nbLignes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Valide le paramètre groupBy avant l'ouverture de la réponse (une erreur ne peut plus
+     * être renvoyée en 400 une fois l'écriture commencée).
+     * @return Le critère de regroupement en minuscules
+     */
+    public String verifierGroupBy(String groupBy) {
+        if (!GROUP_BY_VILLE.equalsIgnoreCase(groupBy) && !GROUP_BY_PAYS.equalsIgnoreCase(groupBy)) {
+            throw new IllegalArgumentException("Le paramètre 'groupBy' doit être '" + GROUP_BY_VILLE + "' ou '" + GROUP_BY_PAYS + "'.");
+        }
+        return groupBy.toLowerCase();
+    }
+
+    private void ecrireLigneProduit(JsonGenerator gen, LigneRapportLocalisation produit,
+                                    ColonnesLocalisation colonnes, int[] quantites) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("ref", produit.getProduitReference() != null ? produit.getProduitReference() : 0);
+        gen.writeStringField("nom", produit.getProduitNom());
+        gen.writeObjectFieldStart("quantities");
+        for (int colonne = 0; colonne < colonnes.entetes.length; colonne++) {
+            gen.writeNumberField(colonnes.entetes[colonne], quantites[colonne]);
+        }
+        gen.writeEndObject();
+        gen.writeEndObject();
+    }
+
+    /**
+     * Colonnes par localisation, avec les mêmes règles que PivotQuantites: stocks nommés triés
+     * sans tenir compte de la casse, le premier l'emportant en cas d'homonymie.
+     */
+    private Map<String, ColonnesLocalisation> chargerColonnes(List<Object[]> stocksParLocalisation, Map<String, String> noms) {
+        Map<String, List<Object[]>> parLocalisation = new HashMap<>();
+        for (Object[] ligne : stocksParLocalisation) {
+            String variante = (String) ligne[0];
+            parLocalisation.computeIfAbsent(noms.getOrDefault(variante, variante), k -> new ArrayList<>()).add(ligne);
+        }
+        Map<String, ColonnesLocalisation> colonnes = new HashMap<>();
+        parLocalisation.forEach((localisation, stocks) -> {
+            // Tri stable: à nom égal, l'ordre des identifiants est conservé
+            stocks.sort(Comparator.comparing(s -> (String) s[2], Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+            List<String> entetes = new ArrayList<>();
+            Map<Long, Integer> colonneParStock = new HashMap<>();
+            for (Object[] stock : stocks) {
+                String nom = (String) stock[2];
+                if (nom == null || nom.trim().isEmpty()) {
+                    continue; // Les stocks sans nom n'ont pas de colonne
+                }
+                if (!entetes.isEmpty() && entetes.get(entetes.size() - 1).equalsIgnoreCase(nom)) {
+                    continue;
+                }
+                colonneParStock.put((Long) stock[1], entetes.size());
+                entetes.add(nom);
+            }
+            colonnes.put(localisation, new ColonnesLocalisation(entetes.toArray(new String[0]), colonneParStock));
+        });
+        return colonnes;
+    }
+
+    private <T> void ecrireTableau(OutputStream sortie, Stream<T> elements) {
+        ecrireTableau(sortie, elements, true);
+    }
+
+    /**
+     * @param entites true si les éléments sont des entités, détachées une fois écrites (faux pour des projections)
+     */
+    private <T> void ecrireTableau(OutputStream sortie, Stream<T> elements, boolean entites) {
+        try (JsonGenerator gen = creerGenerateur(sortie)) {
+            gen.writeStartArray();
+            for (T element : (Iterable<T>) elements::iterator) {
+                gen.writeObject(element);
+                // Le contexte de persistance ne doit pas grossir avec le curseur
+                if (entites) {
+                    entityManager.detach(element);
+                }
+            }
+            gen.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JsonGenerator creerGenerateur(OutputStream sortie) throws IOException {
+        // La réponse est fermée par le conteneur, pas par le générateur
+        return objectMapper.getFactory().createGenerator(sortie, JsonEncoding.UTF8)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    private record ColonnesLocalisation(String[] entetes, Map<Long, Integer> colonneParStock) {
+        static final ColonnesLocalisation VIDE = new ColonnesLocalisation(new String[0], Map.of());
+    }
+}
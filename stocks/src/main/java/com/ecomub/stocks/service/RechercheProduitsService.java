@@ -0,0 +1,513 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.Produit;
+import com.ecomub.stocks.repository.ProduitRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Index en mémoire pour la recherche de produits (autocomplétion).
+ *
+ * Les noms sont normalisés (minuscules, sans accents) et découpés en mots: chaque mot est rangé dans
+ * un index mot -> produits, et un trie sur les mots donne les mots commençant par un préfixe. Les
+ * références sont dans une table int -> id à adressage ouvert (pas d'objets Integer/Long).
+ *
+ * L'index est construit au démarrage puis tenu à jour par {@link SuiviModificationsListener}: les
+ * produits créés, modifiés ou supprimés (formulaires et imports) y sont reportés après validation
+ * de leur transaction.
+ */
+@Service
+public class RechercheProduitsService {
+
+    private static final Logger log = LoggerFactory.getLogger(RechercheProduitsService.class);
+
+    public static final int LIMITE_MAX = 100;
+
+    private static final Pattern DIACRITIQUES = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATEURS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    @Autowired
+    private ProduitRepository produitRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Produit tel qu'indexé
+    private record Entree(long id, String nom, int reference, String nomNormalise, String[] mots) {
+    }
+
+    // Résultat d'une recherche, avec son rang pour la requête
+    private record Candidat(int rang, Entree entree) {
+    }
+
+    private static final Comparator<Candidat> ORDRE = Comparator
+            .comparingInt(Candidat::rang)
+            .thenComparingInt((Candidat candidat) -> candidat.entree().nom().length())
+            .thenComparing(candidat -> candidat.entree().nomNormalise())
+            .thenComparingLong(candidat -> candidat.entree().id());
+
+    private final ReadWriteLock verrou = new ReentrantReadWriteLock();
+
+    // Protégés par verrou
+    private final Map<Long, Entree> entrees = new HashMap<>();
+    private final Map<String, Set<Long>> produitsParMot = new HashMap<>();
+    private final Noeud racine = new Noeud();
+    private final TableReferences references = new TableReferences();
+
+    // Tant que l'index n'est pas construit, les changements validés sont mis en attente (protégés par this)
+    private boolean construit;
+    private Map<Long, Entree> changementsEnAttente = new LinkedHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void construire() {
+        long debut = System.currentTimeMillis();
+        List<Entree> lues = new ArrayList<>();
+        TransactionTemplate lecture = new TransactionTemplate(transactionManager);
+        lecture.setReadOnly(true);
+        lecture.executeWithoutResult(status -> {
+            try (Stream<Produit> produits = produitRepository.streamTous()) {
+                produits.forEach(produit -> lues.add(entree(produit)));
+            }
+        });
+
+        verrou.writeLock().lock();
+        try {
+            lues.forEach(this::indexer);
+        } finally {
+            verrou.writeLock().unlock();
+        }
+        // Les changements validés pendant la lecture sont rejoués: ils reflètent le dernier état
+        Map<Long, Entree> enAttente;
+        synchronized (this) {
+            enAttente = changementsEnAttente;
+            changementsEnAttente = null;
+            construit = true;
+        }
+        appliquer(enAttente);
+        log.info("Index de recherche des produits construit: {} produits ({} ms)",
+                lues.size(), System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Signale l'écriture d'un produit; dans une transaction, l'index n'est modifié qu'après validation.
+     * @param supprime true si le produit a été supprimé
+     */
+    public void signaler(Produit produit, boolean supprime) {
+        if (produit.getId() == null) {
+            return;
+        }
+        // null: produit retiré de l'index
+        Entree entree = supprime || produit.getNom() == null || produit.getReference() == null
+                ? null : entree(produit);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            Map<Long, Entree> changement = new HashMap<>();
+            changement.put(produit.getId(), entree);
+            recevoir(changement);
+            return;
+        }
+        for (TransactionSynchronization synchronisation : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronisation instanceof IndexationApresValidation indexation && indexation.index() == this) {
+                indexation.changements.put(produit.getId(), entree);
+                return;
+            }
+        }
+        IndexationApresValidation indexation = new IndexationApresValidation();
+        indexation.changements.put(produit.getId(), entree);
+        TransactionSynchronizationManager.registerSynchronization(indexation);
+    }
+
+    private void recevoir(Map<Long, Entree> changements) {
+        synchronized (this) {
+            if (!construit) {
+                // Supprimer puis remettre la clé conserve l'ordre des changements
+                changements.forEach((id, entree) -> {
+                    changementsEnAttente.remove(id);
+                    changementsEnAttente.put(id, entree);
+                });
+                return;
+            }
+        }
+        appliquer(changements);
+    }
+
+    private void appliquer(Map<Long, Entree> changements) {
+        verrou.writeLock().lock();
+        try {
+            changements.forEach((id, entree) -> {
+                desindexer(id);
+                if (entree != null) {
+                    indexer(entree);
+                }
+            });
+        } finally {
+            verrou.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Produits dont la référence est la requête, ou dont le nom contient des mots commençant par chacun
+     * des mots de la requête (accents et casse ignorés).
+     *
+     * Classement: référence exacte, nom identique, nom commençant par la requête, mots entiers, puis
+     * nom le plus court.
+     * @return Liste de {id, nom, reference}
+     */
+    public List<Map<String, Object>> rechercher(String requete, int limite) {
+        if (limite < 1 || limite > LIMITE_MAX) {
+            throw new IllegalArgumentException("La limite doit être comprise entre 1 et " + LIMITE_MAX + ".");
+        }
+        String requeteNormalisee = normaliser(requete);
+        String[] motsRequete = decouper(requeteNormalisee);
+        if (motsRequete.length == 0) {
+            return List.of();
+        }
+
+        List<Candidat> resultats;
+        verrou.readLock().lock();
+        try {
+            Set<Long> candidats = candidats(motsRequete);
+            Long parReference = requete.trim().matches("\\d{1,9}")
+                    ? references.get(Integer.parseInt(requete.trim())) : null;
+            if (parReference != null) {
+                candidats = new HashSet<>(candidats);
+                candidats.add(parReference);
+            }
+            // Rang calculé une fois par candidat; le tas (pire en tête) ne garde que les limite meilleurs
+            PriorityQueue<Candidat> meilleurs = new PriorityQueue<>(Math.min(limite, candidats.size()) + 1,
+                    ORDRE.reversed());
+            for (Long id : candidats) {
+                Entree entree = entrees.get(id);
+                Candidat candidat = new Candidat(rang(entree, parReference, requeteNormalisee, motsRequete), entree);
+                if (meilleurs.size() < limite) {
+                    meilleurs.add(candidat);
+                } else if (ORDRE.compare(candidat, meilleurs.peek()) < 0) {
+                    meilleurs.poll();
+                    meilleurs.add(candidat);
+                }
+            }
+            resultats = new ArrayList<>(meilleurs);
+        } finally {
+            verrou.readLock().unlock();
+        }
+        resultats.sort(ORDRE);
+
+        List<Map<String, Object>> produits = new ArrayList<>(resultats.size());
+        for (Candidat candidat : resultats) {
+            Entree entree = candidat.entree();
+            Map<String, Object> produit = new LinkedHashMap<>();
+            produit.put("id", entree.id());
+            produit.put("nom", entree.nom());
+            produit.put("reference", entree.reference());
+            produits.add(produit);
+        }
+        return produits;
+    }
+
+    public int getNombreProduits() {
+        verrou.readLock().lock();
+        try {
+            return entrees.size();
+        } finally {
+            verrou.readLock().unlock();
+        }
+    }
+
+    // Intersection, pour chaque mot de la requête, des produits ayant un mot qui commence par lui
+    private Set<Long> candidats(String[] motsRequete) {
+        Set<Long> candidats = null;
+        for (String prefixe : motsRequete) {
+            Set<Long> produits = new HashSet<>();
+            Noeud noeud = racine.descendre(prefixe);
+            if (noeud != null) {
+                noeud.parcourir(mot -> produits.addAll(produitsParMot.get(mot)));
+            }
+            if (candidats == null) {
+                candidats = produits;
+            } else {
+                candidats.retainAll(produits);
+            }
+            if (candidats.isEmpty()) {
+                break;
+            }
+        }
+        return candidats;
+    }
+
+    private static int rang(Entree entree, Long parReference, String requete, String[] motsRequete) {
+        if (parReference != null && parReference == entree.id()) {
+            return 0;
+        }
+        if (entree.nomNormalise().equals(requete)) {
+            return 1;
+        }
+        if (entree.nomNormalise().startsWith(requete)) {
+            return 2;
+        }
+        List<String> mots = Arrays.asList(entree.mots());
+        for (String mot : motsRequete) {
+            if (!mots.contains(mot)) {
+                return 4;
+            }
+        }
+        return 3;
+    }
+
+    private void indexer(Entree entree) {
+        entrees.put(entree.id(), entree);
+        references.put(entree.reference(), entree.id());
+        for (String mot : entree.mots()) {
+            Set<Long> produits = produitsParMot.get(mot);
+            if (produits == null) {
+                produits = new HashSet<>();
+                produitsParMot.put(mot, produits);
+                racine.ajouter(mot);
+            }
+            produits.add(entree.id());
+        }
+    }
+
+    private void desindexer(long id) {
+        Entree entree = entrees.remove(id);
+        if (entree == null) {
+            return;
+        }
+        references.remove(entree.reference(), id);
+        for (String mot : entree.mots()) {
+            Set<Long> produits = produitsParMot.get(mot);
+            if (produits != null && produits.remove(id) && produits.isEmpty()) {
+                produitsParMot.remove(mot);
+                racine.retirer(mot);
+            }
+        }
+    }
+
+    private static Entree entree(Produit produit) {
+        String nomNormalise = normaliser(produit.getNom());
+        String[] mots = Arrays.stream(decouper(nomNormalise)).distinct().toArray(String[]::new);
+        return new Entree(produit.getId(), produit.getNom(), produit.getReference(), nomNormalise, mots);
+    }
+
+    static String normaliser(String texte) {
+        if (texte == null) {
+            return "";
+        }
+        String sansAccents = DIACRITIQUES.matcher(Normalizer.normalize(texte, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATEURS.matcher(sansAccents.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static String[] decouper(String texteNormalise) {
+        return texteNormalise.isEmpty() ? new String[0] : texteNormalise.split(" ");
+    }
+
+    /**
+     * Nœud du trie des mots: enfants triés par caractère, terminal si un mot s'y arrête.
+     */
+    private static final class Noeud {
+        private char[] caracteres = new char[0];
+        private Noeud[] enfants = new Noeud[0];
+        private boolean terminal;
+        private String mot;
+
+        Noeud descendre(String prefixe) {
+            Noeud noeud = this;
+            for (int i = 0; i < prefixe.length() && noeud != null; i++) {
+                int position = Arrays.binarySearch(noeud.caracteres, prefixe.charAt(i));
+                noeud = position >= 0 ? noeud.enfants[position] : null;
+            }
+            return noeud;
+        }
+
+        void ajouter(String motAjoute) {
+            Noeud noeud = this;
+            for (int i = 0; i < motAjoute.length(); i++) {
+                char c = motAjoute.charAt(i);
+                int position = Arrays.binarySearch(noeud.caracteres, c);
+                if (position < 0) {
+                    position = -position - 1;
+                    noeud.inserer(position, c);
+                }
+                noeud = noeud.enfants[position];
+            }
+            noeud.terminal = true;
+            noeud.mot = motAjoute;
+        }
+
+        void retirer(String motRetire) {
+            retirer(motRetire, 0);
+        }
+
+        // @return true si ce nœud est devenu inutile (ni mot ni enfant)
+        private boolean retirer(String motRetire, int profondeur) {
+            if (profondeur == motRetire.length()) {
+                terminal = false;
+                mot = null;
+            } else {
+                int position = Arrays.binarySearch(caracteres, motRetire.charAt(profondeur));
+                if (position < 0) {
+                    return false;
+                }
+                if (enfants[position].retirer(motRetire, profondeur + 1)) {
+                    supprimer(position);
+                }
+            }
+            return !terminal && caracteres.length == 0;
+        }
+
+        void parcourir(Consumer<String> visiteur) {
+            if (terminal) {
+                visiteur.accept(mot);
+            }
+            for (Noeud enfant : enfants) {
+                enfant.parcourir(visiteur);
+            }
+        }
+
+        private void inserer(int position, char c) {
+            char[] nouveauxCaracteres = new char[caracteres.length + 1];
+            Noeud[] nouveauxEnfants = new Noeud[enfants.length + 1];
+            System.arraycopy(caracteres, 0, nouveauxCaracteres, 0, position);
+            System.arraycopy(enfants, 0, nouveauxEnfants, 0, position);
+            nouveauxCaracteres[position] = c;
+            nouveauxEnfants[position] = new Noeud();
+            System.arraycopy(caracteres, position, nouveauxCaracteres, position + 1, caracteres.length - position);
+            System.arraycopy(enfants, position, nouveauxEnfants, position + 1, enfants.length - position);
+            caracteres = nouveauxCaracteres;
+            enfants = nouveauxEnfants;
+        }
+
+        private void supprimer(int position) {
+            char[] nouveauxCaracteres = new char[caracteres.length - 1];
+            Noeud[] nouveauxEnfants = new Noeud[enfants.length - 1];
+            System.arraycopy(caracteres, 0, nouveauxCaracteres, 0, position);
+            System.arraycopy(enfants, 0, nouveauxEnfants, 0, position);
+            System.arraycopy(caracteres, position + 1, nouveauxCaracteres, position, caracteres.length - position - 1);
+            System.arraycopy(enfants, position + 1, nouveauxEnfants, position, enfants.length - position - 1);
+            caracteres = nouveauxCaracteres;
+            enfants = nouveauxEnfants;
+        }
+    }
+
+    /**
+     * Table référence -> id de produit à adressage ouvert (sondage linéaire), sur tableaux primitifs.
+     */
+    private static final class TableReferences {
+        private static final long VIDE = 0;
+        private static final long SUPPRIME = -1;
+
+        private int[] cles = new int[64];
+        private long[] valeurs = new long[64];
+        private int occupees;
+
+        Long get(int reference) {
+            for (int i = indice(reference); valeurs[i] != VIDE; i = (i + 1) & (cles.length - 1)) {
+                if (valeurs[i] != SUPPRIME && cles[i] == reference) {
+                    return valeurs[i];
+                }
+            }
+            return null;
+        }
+
+        void put(int reference, long id) {
+            if ((occupees + 1) * 2 > cles.length) {
+                redimensionner();
+            }
+            int libre = -1;
+            int i = indice(reference);
+            for (; valeurs[i] != VIDE; i = (i + 1) & (cles.length - 1)) {
+                if (valeurs[i] == SUPPRIME) {
+                    if (libre < 0) {
+                        libre = i;
+                    }
+                } else if (cles[i] == reference) {
+                    valeurs[i] = id;
+                    return;
+                }
+            }
+            if (libre < 0) {
+                libre = i;
+                occupees++;
+            }
+            cles[libre] = reference;
+            valeurs[libre] = id;
+        }
+
+        // Ne retire la référence que si elle désigne encore ce produit (elle a pu être reprise par un autre)
+        void remove(int reference, long id) {
+            for (int i = indice(reference); valeurs[i] != VIDE; i = (i + 1) & (cles.length - 1)) {
+                if (valeurs[i] != SUPPRIME && cles[i] == reference) {
+                    if (valeurs[i] == id) {
+                        valeurs[i] = SUPPRIME;
+                    }
+                    return;
+                }
+            }
+        }
+
+        private int indice(int reference) {
+            int h = reference * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & (cles.length - 1);
+        }
+
+        private void redimensionner() {
+            int[] anciennesCles = cles;
+            long[] anciennesValeurs = valeurs;
+            int vivantes = 0;
+            for (long valeur : anciennesValeurs) {
+                if (valeur != VIDE && valeur != SUPPRIME) {
+                    vivantes++;
+                }
+            }
+            int capacite = Integer.highestOneBit(Math.max(64, vivantes * 4 - 1)) << 1;
+            cles = new int[capacite];
+            valeurs = new long[capacite];
+            occupees = 0;
+            for (int i = 0; i < anciennesCles.length; i++) {
+                if (anciennesValeurs[i] != VIDE && anciennesValeurs[i] != SUPPRIME) {
+                    put(anciennesCles[i], anciennesValeurs[i]);
+                }
+            }
+        }
+    }
+
+    private class IndexationApresValidation implements TransactionSynchronization {
+        private final Map<Long, Entree> changements = new LinkedHashMap<>();
+
+        RechercheProduitsService index() {
+            return RechercheProduitsService.this;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+                recevoir(changements);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.repository.ProduitStockRepository;
+import com.ecomub.stocks.repository.RollupLocalisationRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintenance des agrégats matérialisés par localisation (rollup_localisation, rollup_pays).
+ *
+ * Chaque mutation de ProduitStock appelle {@link #rafraichir} dans la transaction de la mutation
+ * (propagation REQUIRED, pas de transaction séparée): les agrégats sont validés ou annulés avec elle.
+ * Les associations touchées sont recalculées depuis produit_stock, ce qui reste exact quelle que
+ * soit la nature de la mutation (upsert JDBC, delta SQL, entité JPA, suppression par lots).
+ */
+@Service
+public class RollupService {
+
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+
+    // Reconstruction complète au démarrage (vérification ponctuelle des agrégats)
+    @Value("${stocks.rollups.reconstruire-au-demarrage:false}")
+    private boolean reconstruireAuDemarrage;
+
+    @Autowired
+    private RollupLocalisationRepository rollupLocalisationRepository;
+
+    @Autowired
+    private ProduitStockRepository produitStockRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Recalcule les agrégats des associations (stock, produit) touchées par une mutation.
+     * Une liste null signifie "tous" (ex: tous les produits d'un stock dont la localisation a changé).
+     */
+    @Transactional
+    public void rafraichir(Collection<Long> stockIds, Collection<Long> produitIds) {
+        // Les modifications JPA en attente doivent être visibles des requêtes SQL qui suivent
+        entityManager.flush();
+        rollupLocalisationRepository.rafraichir(stockIds, produitIds);
+        // Point de passage de toutes les mutations de produit_stock, y compris les écritures SQL ensemblistes
+        versionsDonnees.modifie(VersionsDonnees.TypeDonnee.PRODUIT_STOCK);
+    }
+
+    @Transactional
+    public void rafraichirAssociation(Long stockId, Long produitId) {
+        rafraichir(List.of(stockId), List.of(produitId));
+    }
+
+    /**
+     * Recalcule les agrégats de toutes les associations d'un stock (changement de pays, ville ou type).
+     */
+    @Transactional
+    public void rafraichirStock(Long stockId) {
+        rafraichir(List.of(stockId), null);
+    }
+
+    /**
+     * Reconstruit entièrement les agrégats depuis produit_stock, après avoir compté les écarts
+     * avec l'état maintenu incrémentalement (0 écart attendu).
+     */
+    @Transactional
+    public Map<String, Long> reconstruire() {
+        entityManager.flush();
+        Map<String, Long> resultat = rollupLocalisationRepository.reconstruire();
+        versionsDonnees.modifie(VersionsDonnees.TypeDonnee.PRODUIT_STOCK);
+        if (resultat.get("ecartsLocalisation") > 0 || resultat.get("ecartsPays") > 0) {
+            log.warn("Agrégats par localisation divergents, reconstruits: {}", resultat);
+        } else {
+            log.info("Agrégats par localisation vérifiés et reconstruits: {}", resultat);
+        }
+        return resultat;
+    }
+
+    /**
+     * Premier remplissage des agrégats au démarrage (tables vides alors que des associations existent),
+     * ou reconstruction demandée par stocks.rollups.reconstruire-au-demarrage.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialiser() {
+        boolean vides = rollupLocalisationRepository.count() == 0 && produitStockRepository.count() > 0;
+        if (vides || reconstruireAuDemarrage) {
+            log.info("Construction des agrégats par localisation au démarrage (tables vides: {})", vides);
+            new TransactionTemplate(transactionManager).execute(status -> reconstruire());
+        }
+    }
+}
@@ -1,45 +1,121 @@
 package com.ecomub.stocks.service;
 
-import com.ecomub.stocks.model.Produit;
-import com.ecomub.stocks.model.ProduitStock;
+import com.ecomub.stocks.model.LigneExportStock;
+import com.ecomub.stocks.model.LigneRapportLocalisation;
+import com.ecomub.stocks.model.PageCurseur;
+import com.ecomub.stocks.model.PivotQuantites;
 import com.ecomub.stocks.model.Stock;
 import com.ecomub.stocks.model.TypeStock;
+import com.ecomub.stocks.repository.RollupLocalisationRepository;
 import com.ecomub.stocks.repository.StockRepository;
+import com.ecomub.stocks.service.VersionsDonnees.TypeDonnee;
 import com.ecomub.stocks.repository.ProduitStockRepository; // Correct import
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 // import org.springframework.context.annotation.Lazy; // Lazy not strictly needed here unless circular dependency
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 // Ajouter les imports nécessaires
 import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.time.LocalDateTime; // Importer LocalDateTime
 import java.time.format.DateTimeFormatter; // Importer DateTimeFormatter
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
 import java.util.ArrayList;
 import java.util.Optional;
 import java.util.stream.Collectors;
-import java.util.Comparator;
+import java.util.stream.Stream;
 import java.util.Collections;
 import java.util.Set;
+import java.util.EnumSet;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class StockService {
 
+    private static final Logger log = LoggerFactory.getLogger(StockService.class);
+
+    // Nombre de lignes gardées en mémoire par le classeur SXSSF de l'export
+    private static final int FENETRE_LIGNES_EXCEL = 100;
+
+    // Largeurs des colonnes de l'export, en caractères (libellés / réf., produit, quantité)
+    private static final int[] LARGEURS_COLONNES_EXPORT = {22, 50, 14};
+
+    // Clés de tri des listes paginées (colonnes indexées)
+    private static final Map<String, PaginationCurseur.CleTri<Stock>> TRIS = Map.of(
+            "nom", new PaginationCurseur.CleTri<>("nom", Stock::getNom, String.class),
+            "pays", new PaginationCurseur.CleTri<>("pays", Stock::getPays, String.class),
+            "ville", new PaginationCurseur.CleTri<>("ville", Stock::getVille, String.class),
+            "prestataire", new PaginationCurseur.CleTri<>("prestataire", Stock::getPrestataire, String.class));
+
     @Autowired
     private StockRepository stockRepository;
 
     @Autowired
     private ProduitStockRepository produitStockRepository; // Correct repository
 
+    @Autowired
+    private ProduitStockService produitStockService;
+
+    @Autowired
+    private RollupLocalisationRepository rollupLocalisationRepository;
+
+    @Autowired
+    private RollupService rollupService;
+
+    @Autowired
+    private CacheRapports cacheRapports;
+
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    // Stocks groupés par pays, figés et associés à la version des stocks lue avant leur calcul.
+    // Jamais modifiés: après chaque écriture de stock validée (création, modification, suppression,
+    // correction des pays, import), un seul thread recalcule l'instantané puis le publie; les lecteurs
+    // servent l'ancien jusqu'à la publication.
+    public record StocksParPays(long version, Map<String, List<Stock>> groupes) {}
+
+    private final AtomicReference<StocksParPays> stocksParPays = new AtomicReference<>();
+
+    // Un recalcul est demandé et pas encore commencé
+    private final AtomicBoolean recalculStocksParPaysDemande = new AtomicBoolean();
+
+    private ExecutorService recalculStocksParPays;
+
+    @PostConstruct
+    public void initialiser() {
+        recalculStocksParPays = Executors.newSingleThreadExecutor(tache -> {
+            Thread thread = new Thread(tache, "stocks-par-pays");
+            thread.setDaemon(true);
+            return thread;
+        });
+        versionsDonnees.abonner(TypeDonnee.STOCK, this::demanderRecalculStocksParPays);
+    }
+
+    @PreDestroy
+    public void arreter() {
+        recalculStocksParPays.shutdownNow();
+    }
+
     // Créer un stock
     @Transactional // Added @Transactional for consistency
     public Stock createStock(Stock stock) {
@@ -62,11 +138,28 @@ public class StockService {
         }
     }
 
-    // Récupérer tous les stocks
+    // Récupérer tous les stocks (lecture seule: pas de copie des entités pour le contrôle des modifications)
+    @Transactional(readOnly = true)
     public List<Stock> getAllStocks() {
         return stockRepository.findAll();
     }
 
+    /**
+     * Page de stocks par curseur (voir {@link PaginationCurseur}); un filtre null est ignoré.
+     * @param nom Préfixe du nom
+     * @param tri id, nom, pays, ville ou prestataire
+     */
+    @Transactional(readOnly = true)
+    public PageCurseur<Stock> getStocksPage(String nom, String pays, String ville, TypeStock typeStock,
+                                            String prestataire, String tri, String sens, String curseur, int taille) {
+        Specification<Stock> filtres = Specification.where(PaginationCurseur.<Stock>commencePar("nom", nom))
+                .and(PaginationCurseur.egal("pays", pays))
+                .and(PaginationCurseur.egal("ville", ville))
+                .and(PaginationCurseur.egal("typeStock", typeStock))
+                .and(PaginationCurseur.egal("prestataire", prestataire));
+        return PaginationCurseur.page(stockRepository, filtres, TRIS, tri, sens, curseur, taille, Stock::getId);
+    }
+
     // Récupérer un stock par ID
     public Optional<Stock> getStockById(Long id) {
         return stockRepository.findById(id);
@@ -104,7 +197,10 @@ public class StockService {
         }
 
         try {
-            return stockRepository.save(stock);
+            Stock saved = stockRepository.save(stock);
+            // Pays, ville et type sont dénormalisés dans les agrégats par localisation
+            rollupService.rafraichirStock(id);
+            return saved;
         } catch (DataIntegrityViolationException e) {
             // This exception might still occur if another transaction creates a stock with the same name concurrently
             // Log the error
@@ -115,36 +211,81 @@ public class StockService {
         }
     }
 
-    // Récupérer les stocks groupés par pays
-    public Map<String, List<Stock>> getStocksByCountry() {
-        List<Stock> allStocks = getAllStocks();
+    /**
+     * Récupérer les stocks groupés par pays (pays triés, "Non défini" pour un pays absent).
+     * Lecture sans verrou de l'instantané publié, éventuellement antérieur à la dernière écriture
+     * tant que son recalcul n'est pas terminé; sa version donne l'ETag de la réponse.
+     * @return Un instantané non modifiable, partagé entre les appels
+     */
+    public StocksParPays getStocksByCountry() {
+        StocksParPays courant = stocksParPays.get();
+        if (courant == null) {
+            // Premier appel: calcul direct, publié sauf si le recalcul a déjà publié
+            courant = calculerStocksParPays();
+            if (!stocksParPays.compareAndSet(null, courant)) {
+                courant = stocksParPays.get();
+            }
+        }
+        if (courant.version() != versionsDonnees.version(TypeDonnee.STOCK)) {
+            // Recalcul perdu (échec de lecture, arrêt): le prochain lecteur le redemande
+            demanderRecalculStocksParPays();
+        }
+        return courant;
+    }
+
+    private void demanderRecalculStocksParPays() {
+        if (recalculStocksParPaysDemande.compareAndSet(false, true)) {
+            try {
+                recalculStocksParPays.execute(this::recalculerStocksParPays);
+            } catch (RejectedExecutionException e) {
+                recalculStocksParPaysDemande.set(false);
+            }
+        }
+    }
+
+    private void recalculerStocksParPays() {
+        // Remis à false avant de lire la version: une écriture validée pendant le calcul en redemande un
+        recalculStocksParPaysDemande.set(false);
+        try {
+            StocksParPays nouveau = calculerStocksParPays();
+            // Ne remplace jamais un instantané plus récent (premier appel concurrent)
+            stocksParPays.accumulateAndGet(nouveau,
+                    (ancien, calcule) -> ancien == null || calcule.version() >= ancien.version() ? calcule : ancien);
+        } catch (RuntimeException e) {
+            log.warn("Recalcul des stocks par pays impossible, l'instantané précédent reste servi", e);
+        }
+    }
 
+    private StocksParPays calculerStocksParPays() {
+        long version = versionsDonnees.version(TypeDonnee.STOCK);
+        return new StocksParPays(version, grouperParPays(getAllStocks()));
+    }
+
+    private static Map<String, List<Stock>> grouperParPays(List<Stock> stocks) {
         // Grouper les stocks par pays, en gérant les pays null ou vides
-        Map<String, List<Stock>> stocksByCountry = allStocks.stream()
-                .collect(Collectors.groupingBy(
-                    stock -> {
-                        String pays = stock.getPays();
-                        // Use Objects.toString(pays, "Non défini") for cleaner null handling?
-                        return (pays != null && !pays.trim().isEmpty()) ? pays.trim() : "Non défini";
-                    }
-                ));
-
-        return stocksByCountry;
+        Map<String, List<Stock>> parPays = new TreeMap<>();
+        for (Stock stock : stocks) {
+            String pays = stock.getPays();
+            String cle = (pays != null && !pays.trim().isEmpty()) ? pays.trim() : "Non défini";
+            parPays.computeIfAbsent(cle, k -> new ArrayList<>()).add(stock);
+        }
+        Map<String, List<Stock>> groupes = new LinkedHashMap<>();
+        parPays.forEach((pays, stocksDuPays) -> groupes.put(pays, List.copyOf(stocksDuPays)));
+        return Collections.unmodifiableMap(groupes);
     }
 
-    @Transactional
+    // Pas de transaction englobante: les associations sont supprimées par lots, chacun dans sa transaction;
+    // une suppression interrompue peut être relancée et reprend là où elle s'était arrêtée
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void deleteStock(Long id) {
         // Vérifier l'existence avant de tenter la suppression pour une meilleure sémantique
         if (!stockRepository.existsById(id)) {
             throw new RuntimeException("Stock non trouvé avec l'ID : " + id); // Consider custom NotFoundException
         }
 
-        // Supprimer d'abord toutes les associations produit-stock liées à ce stock
-        // Ensure cascading delete isn't set up in JPA entity if manual deletion is intended
-        produitStockRepository.deleteByStockId(id);
-
-        // Maintenant que toutes les associations sont supprimées, supprimer le stock
-        stockRepository.deleteById(id); // Use deleteById for efficiency if the entity isn't needed
+        // Supprimer toutes les associations produit-stock liées à ce stock (par lots bornés),
+        // puis le stock dans la transaction du dernier lot
+        produitStockService.supprimerAssociationsParStock(id, () -> stockRepository.deleteById(id));
     }
 
     /**
@@ -189,32 +330,55 @@ public class StockService {
         // Batch save for potentially better performance
         if (!stocksToUpdate.isEmpty()) {
             stockRepository.saveAll(stocksToUpdate);
+            rollupService.rafraichir(stocksToUpdate.stream().map(Stock::getId).collect(Collectors.toList()), null);
         }
 
         return updatedCount;
     }
 
     /**
-     * Exporte les détails d'un stock (informations + liste des produits) au format Excel.
+     * Exporte les détails d'un stock (informations + liste des produits) au format Excel,
+     * écrits directement dans le flux de sortie.
+     *
+     * Le classeur SXSSF ne garde en mémoire qu'une fenêtre de FENETRE_LIGNES_EXCEL lignes (les autres
+     * sont vidées dans un fichier temporaire compressé) et les produits sont lus par un curseur:
+     * la mémoire reste constante quel que soit le nombre de lignes. Les largeurs de colonnes sont fixes
+     * (autoSizeColumn mesurerait chaque cellule, et n'a de toute façon plus accès aux lignes vidées).
      * @param stockId L'ID du stock à exporter.
-     * @return Un ByteArrayInputStream contenant les données du fichier Excel.
+     * @param sortie  Le flux de la réponse.
      * @throws IOException Si une erreur d'écriture se produit.
      * @throws RuntimeException Si le stock n'est pas trouvé.
      */
-    public ByteArrayInputStream exportStockDetails(Long stockId) throws IOException {
+    @Transactional(readOnly = true)
+    public void exportStockDetails(Long stockId, OutputStream sortie) throws IOException {
         Stock stock = stockRepository.findById(stockId)
             .orElseThrow(() -> new RuntimeException("Stock non trouvé avec l'ID : " + stockId)); // Consider custom NotFoundException
 
-        // Fetch ProduitStock with associated Produit eagerly if possible (e.g., using JOIN FETCH in repository)
-        List<ProduitStock> produitStocks = produitStockRepository.findByStock_Id(stockId);
+        try (Stream<LigneExportStock> lignes = produitStockRepository.streamLignesExport(List.of(stockId))) {
+            ecrireClasseurStock(stock, lignes::iterator, sortie);
+        }
+    }
 
-        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            Sheet sheet = workbook.createSheet("Détails Stock " + stock.getNom()); // Nom de feuille plus spécifique
+    /**
+     * Écrit le classeur Excel d'un stock (utilisé aussi par l'export global, un classeur par stock).
+     * @param stock  Le stock exporté.
+     * @param lignes Ses lignes produits, triées par référence.
+     * @param sortie Le flux de destination (non fermé).
+     */
+    void ecrireClasseurStock(Stock stock, Iterable<LigneExportStock> lignes, OutputStream sortie) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(FENETRE_LIGNES_EXCEL);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet(WorkbookUtil.createSafeSheetName("Détails Stock " + stock.getNom())); // Nom de feuille plus spécifique
 
             // --- Styles ---
             CellStyle headerStyle = createHeaderStyle(workbook);
             CellStyle defaultStyle = workbook.createCellStyle(); // Style par défaut si besoin
-            // Consider adding more styles (e.g., for numbers, dates)
+
+            // --- Largeurs de colonnes fixes (en 1/256 de caractère) ---
+            for (int i = 0; i < LARGEURS_COLONNES_EXPORT.length; i++) {
+                sheet.setColumnWidth(i, LARGEURS_COLONNES_EXPORT[i] * 256);
+            }
 
             // --- Informations du stock ---
             int currentRowIndex = 0;
@@ -263,52 +427,26 @@ public class StockService {
                 createCell(headerRow, i, COLUMNS[i], headerStyle);
             }
 
-            // --- Données des produits ---
-            if (produitStocks.isEmpty()) {
+            // --- Données des produits, triées par référence par la requête ---
+            int premiereLigneProduits = currentRowIndex;
+            for (LigneExportStock ligne : lignes) {
+                Row row = sheet.createRow(currentRowIndex++);
+                createCell(row, 0, ligne.getReference() != null ? ligne.getReference() : 0, defaultStyle); // Consider number style
+                createCell(row, 1, ligne.getNom(), defaultStyle);
+                createCell(row, 2, ligne.getQuantite() != null ? ligne.getQuantite() : 0, defaultStyle);    // Consider number style
+            }
+            if (currentRowIndex == premiereLigneProduits) {
                  Row emptyRow = sheet.createRow(currentRowIndex++);
                  createCell(emptyRow, 0, "Aucun produit affecté à ce stock.", null); // Message si vide
-                 // Ensure merge range is correct
-                 if (COLUMNS.length > 0) {
-                    sheet.addMergedRegion(new org.apache.poi.ss.util.CellRangeAddress(currentRowIndex - 1, currentRowIndex - 1, 0, COLUMNS.length - 1));
-                 }
-            } else {
-                // Trier les produits par référence ou nom si souhaité
-                // Ensure getProduit() doesn't return null
-                produitStocks.sort(Comparator.comparingInt(ps -> ps.getProduit() != null ? ps.getProduit().getReference() : 0));
-
-                for (ProduitStock ps : produitStocks) {
-                    Row row = sheet.createRow(currentRowIndex++);
-                    Produit produit = ps.getProduit(); // Check for null if relationship is optional
-
-                    if (produit != null) {
-                        createCell(row, 0, produit.getReference(), defaultStyle); // Consider number style
-                        createCell(row, 1, produit.getNom(), defaultStyle);
-                        createCell(row, 2, ps.getQuantite(), defaultStyle);    // Consider number style
-                    } else {
-                        // Handle case where Produit is null (if possible)
-                        createCell(row, 0, "Produit Inconnu", defaultStyle);
-                        createCell(row, 1, "N/A", defaultStyle);
-                        createCell(row, 2, ps.getQuantite(), defaultStyle);
-                    }
-                }
+                 sheet.addMergedRegion(new org.apache.poi.ss.util.CellRangeAddress(currentRowIndex - 1, currentRowIndex - 1, 0, COLUMNS.length - 1));
             }
 
-            // Ajuster la largeur des colonnes
-            for (int i = 0; i < COLUMNS.length; i++) {
-                sheet.autoSizeColumn(i);
-                // Add a small buffer to autosized columns
-                sheet.setColumnWidth(i, sheet.getColumnWidth(i) + 512);
-            }
-            // Specific width adjustment if needed
-            // if (COLUMNS.length > 1) {
-            //     sheet.setColumnWidth(1, Math.max(sheet.getColumnWidth(1), 4000)); // Example: min width
-            // }
-
-
-            workbook.write(outputStream);
-            return new ByteArrayInputStream(outputStream.toByteArray());
+            workbook.write(sortie);
+        } finally {
+            // Supprime les fichiers temporaires des lignes vidées
+            workbook.dispose();
+            workbook.close();
         }
-        // Catch specific IOExceptions and rethrow as needed, or handle them
     }
 
     /**
@@ -333,6 +471,12 @@ public class StockService {
      * @throws IllegalArgumentException si groupBy n'est pas "ville" ou "pays".
      */
     public Map<String, Object> generateStockReportByLocation(String groupBy) {
+        // Servi depuis le cache tant qu'aucun stock, produit ou association n'a changé
+        return cacheRapports.obtenir("by-location:" + (groupBy != null ? groupBy.toLowerCase() : null),
+                EnumSet.of(TypeDonnee.PRODUIT_STOCK, TypeDonnee.STOCK, TypeDonnee.PRODUIT), () -> calculerStockReportByLocation(groupBy));
+    }
+
+    private Map<String, Object> calculerStockReportByLocation(String groupBy) {
         final String GROUP_BY_VILLE = "ville";
         final String GROUP_BY_PAYS = "pays";
         final String LOCATION_UNDEFINED = "Non défini";
@@ -340,122 +484,38 @@ public class StockService {
         if (!GROUP_BY_VILLE.equalsIgnoreCase(groupBy) && !GROUP_BY_PAYS.equalsIgnoreCase(groupBy)) {
             throw new IllegalArgumentException("Le paramètre 'groupBy' doit être '" + GROUP_BY_VILLE + "' ou '" + GROUP_BY_PAYS + "'.");
         }
-        final String finalGroupBy = groupBy.toLowerCase(); // Pour utilisation dans lambda
+        final String finalGroupBy = groupBy.toLowerCase();
+        final boolean parVille = GROUP_BY_VILLE.equals(finalGroupBy);
 
-        // *** CORRECTED LINE ***
-        // Replace the non-existent method with findAll()
-        // Consider creating a custom repository method with JOIN FETCH for performance
-        List<ProduitStock> allProduitStocks = produitStockRepository.findAll();
-        // List<ProduitStock> allProduitStocks = produitStockRepository.findAllWithProduitAndStock(); // Original line with error
+        // Lecture de l'agrégat matérialisé (localisations normalisées), triée par localisation puis par référence
+        List<LigneRapportLocalisation> lignes = parVille
+                ? rollupLocalisationRepository.findLignesRapportParVille()
+                : rollupLocalisationRepository.findLignesRapportParPays();
 
-        if (allProduitStocks.isEmpty()) {
+        if (lignes.isEmpty()) {
             return Map.of("groupBy", finalGroupBy, "locations", Collections.emptyMap(), "message", "Aucune donnée de stock produit trouvée.");
         }
 
-        // 1. Grouper les ProduitStock par la localisation choisie (ville ou pays)
-        Map<String, List<ProduitStock>> groupedByLocation = allProduitStocks.stream()
-            .filter(ps -> ps.getStock() != null && ps.getProduit() != null) // Filtrer données potentiellement invalides
-            .collect(Collectors.groupingBy(ps -> {
-                Stock stock = ps.getStock();
-                String location;
-                if (GROUP_BY_VILLE.equals(finalGroupBy)) {
-                    location = stock.getVille();
-                } else { // pays
-                    location = stock.getPays();
-                }
-                // Gérer les localisations null ou vides
-                return (location != null && !location.trim().isEmpty()) ? location.trim() : LOCATION_UNDEFINED;
-            }));
-
-        Map<String, Object> report = new HashMap<>();
-        Map<String, Map<String, Object>> locationsReport = new HashMap<>();
-
-        // 2. Traiter chaque localisation trouvée (triée par nom de localisation)
-        List<String> sortedLocationNames = new ArrayList<>(groupedByLocation.keySet());
-        Collections.sort(sortedLocationNames); // Consider case-insensitive sort: Collections.sort(sortedLocationNames, String.CASE_INSENSITIVE_ORDER);
-
-        for (String locationName : sortedLocationNames) {
-            List<ProduitStock> psList = groupedByLocation.get(locationName);
-
-            if (psList == null || psList.isEmpty()) continue; // Should not happen with groupingBy result, but safe check
-
-            Map<String, Object> locationData = new HashMap<>();
-
-            // 3. Identifier les stocks uniques (par ID) et leurs noms triés pour cette localisation
-            // Use a Map to collect unique stocks by ID first
-            Map<Long, Stock> uniqueStocksMap = psList.stream()
-                                                .map(ProduitStock::getStock)
-                                                .filter(Objects::nonNull) // Ensure stock is not null
-                                                .collect(Collectors.toMap(Stock::getId, stock -> stock, (existing, replacement) -> existing)); // Keep first encountered
-
-            // Then get sorted names from the unique stocks
-            List<String> stockNamesSorted = uniqueStocksMap.values().stream()
-                                                .map(Stock::getNom)
-                                                .filter(name -> name != null && !name.trim().isEmpty()) // Filtrer noms vides
-                                                .distinct() // Ensure distinct names
-                                                .sorted(String.CASE_INSENSITIVE_ORDER) // Tri insensible à la casse
-                                                .collect(Collectors.toList());
-            locationData.put("stocks", stockNamesSorted); // Noms des stocks pour les colonnes du tableau
-
-            // 4. Identifier les produits uniques (par ID) et les trier (par référence) pour cette localisation
-            Map<Long, Produit> uniqueProductsMap = psList.stream()
-                                                .map(ProduitStock::getProduit)
-                                                .filter(Objects::nonNull) // Ensure produit is not null
-                                                .collect(Collectors.toMap(Produit::getId, prod -> prod, (existing, replacement) -> existing));
-
-            List<Produit> sortedProducts = uniqueProductsMap.values().stream()
-                                                .sorted(Comparator.comparingInt(Produit::getReference))
-                                                .collect(Collectors.toList());
-
-            // 5. Créer une structure de recherche rapide pour les quantités: Map<productId, Map<stockId, quantity>>
-            Map<Long, Map<Long, Integer>> quantityLookup = new HashMap<>();
-            for (ProduitStock ps : psList) {
-                 // Assurer que produit et stock ne sont pas null et have IDs
-                 if(ps.getProduit() != null && ps.getProduit().getId() != null &&
-                    ps.getStock() != null && ps.getStock().getId() != null) {
-                     quantityLookup
-                        .computeIfAbsent(ps.getProduit().getId(), k -> new HashMap<>())
-                        .put(ps.getStock().getId(), ps.getQuantite());
-                 }
-            }
-
-            // 6. Construire les lignes de produits pour le rapport de cette localisation
-            List<Map<String, Object>> productRows = new ArrayList<>();
-            for (Produit product : sortedProducts) {
-                Map<String, Object> productRow = new HashMap<>();
-                productRow.put("ref", product.getReference());
-                productRow.put("nom", product.getNom());
-
-                // Map pour stocker les quantités {NomStock -> Quantité}
-                // Use a LinkedHashMap if the insertion order (which matches stockNamesSorted) is important
-                Map<String, Integer> quantities = new HashMap<>();
-                // Itérer sur les noms de stock triés pour garantir l'ordre des colonnes
-                for(String stockName : stockNamesSorted){
-                    // Trouver le stock correspondant à ce nom dans cette localisation
-                    // This lookup inside the loop can be inefficient if many stocks per location.
-                    // Consider creating a Map<String, Long> stockNameToIdMap earlier.
-                    Optional<Stock> stockOpt = uniqueStocksMap.values().stream()
-                                                    .filter(s -> stockName.equals(s.getNom()))
-                                                    .findFirst();
-
-                    int quantity = 0; // Default quantity is 0
-                    if(stockOpt.isPresent() && product.getId() != null){
-                        // Récupérer la quantité depuis la lookup map
-                         quantity = quantityLookup
-                                        .getOrDefault(product.getId(), Collections.emptyMap())
-                                        .getOrDefault(stockOpt.get().getId(), 0);
-                    }
-                     quantities.put(stockName, quantity);
-                }
-
-                productRow.put("quantities", quantities);
-                productRows.add(productRow);
-            }
-
-            locationData.put("products", productRows); // Ajouter les lignes de produits
-            locationsReport.put(locationName, locationData); // Ajouter les données de cette localisation au rapport global
+        // 1. Regroupement en une seule passe dans un tableau croisé dense par localisation,
+        // les variantes égales pour la collation de la base formant une seule localisation
+        Map<String, String> noms = rollupLocalisationRepository.findNomsLocalisations(parVille);
+        Map<String, PivotQuantites> parLocalisation = new HashMap<>();
+        for (LigneRapportLocalisation ligne : lignes) {
+            String location = parVille ? ligne.getVille() : ligne.getPays();
+            // Gérer les localisations null ou vides
+            String locationName = (location != null && !location.trim().isEmpty())
+                    ? noms.getOrDefault(location, location.trim()) : LOCATION_UNDEFINED;
+            parLocalisation.computeIfAbsent(locationName, k -> new PivotQuantites()).ajouter(
+                    ligne.getStockId(), ligne.getStockNom(),
+                    ligne.getProduitId(), ligne.getProduitReference(), ligne.getProduitNom(),
+                    ligne.getQuantite());
         }
 
+        // 2. Chaque localisation est sérialisée directement depuis sa matrice
+        Map<String, PivotQuantites> locationsReport = new HashMap<>();
+        parLocalisation.forEach((locationName, pivot) -> locationsReport.put(locationName, pivot.figer()));
+
+        Map<String, Object> report = new HashMap<>();
         report.put("groupBy", finalGroupBy);
         report.put("locations", locationsReport);
 
@@ -0,0 +1,60 @@
+package com.ecomub.stocks.service;
+
+import com.ecomub.stocks.model.MappingLivreur;
+import com.ecomub.stocks.model.Produit;
+import com.ecomub.stocks.model.ProduitStock;
+import com.ecomub.stocks.model.Stock;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Listener JPA signalant à {@link VersionsDonnees} toute écriture d'entité Produit, Stock, ProduitStock
+ * ou MappingLivreur, à {@link FluxStocksService} et {@link EcritureDiffereeService} les associations
+ * ProduitStock écrites et à {@link RechercheProduitsService} les produits écrits.
+ * Instancié par Hibernate via le conteneur de beans Spring, ce qui permet l'injection.
+ * Les écritures SQL ensemblistes sur produit_stock sont signalées par RollupService.
+ */
+public class SuiviModificationsListener {
+
+    @Autowired
+    private VersionsDonnees versionsDonnees;
+
+    @Autowired
+    private FluxStocksService fluxStocksService;
+
+    @Autowired
+    private RechercheProduitsService rechercheProduitsService;
+
+    @Autowired
+    private EcritureDiffereeService ecritureDiffereeService;
+
+    @PostPersist
+    @PostUpdate
+    public void modifie(Object entite) {
+        signaler(entite, false);
+    }
+
+    @PostRemove
+    public void supprime(Object entite) {
+        signaler(entite, true);
+    }
+
+    private void signaler(Object entite, boolean supprime) {
+        if (entite instanceof ProduitStock produitStock) {
+            versionsDonnees.modifie(VersionsDonnees.TypeDonnee.PRODUIT_STOCK);
+            if (produitStock.getStock() != null && produitStock.getProduit() != null) {
+                fluxStocksService.signaler(produitStock.getStock().getId(), produitStock.getProduit().getId());
+                ecritureDiffereeService.invalider(produitStock.getStock().getId(), produitStock.getProduit().getId());
+            }
+        } else if (entite instanceof Stock) {
+            versionsDonnees.modifie(VersionsDonnees.TypeDonnee.STOCK);
+        } else if (entite instanceof Produit produit) {
+            versionsDonnees.modifie(VersionsDonnees.TypeDonnee.PRODUIT);
+            rechercheProduitsService.signaler(produit, supprime);
+        } else if (entite instanceof MappingLivreur) {
+            versionsDonnees.modifie(VersionsDonnees.TypeDonnee.MAPPING_LIVREUR);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.ecomub.stocks.service;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Compteurs de version par type de donnée (ProduitStock, Stock, Produit, MappingLivreur), utilisés pour
+ * invalider le cache des rapports et pour les ETag des réponses GET. Un compteur n'est incrémenté qu'après
+ * la validation de la transaction qui a modifié la donnée: un rapport calculé pendant la transaction est
+ * donc toujours invalidé.
+ */
+@Service
+public class VersionsDonnees {
+
+    public enum TypeDonnee { PRODUIT_STOCK, STOCK, PRODUIT, MAPPING_LIVREUR }
+
+    private final AtomicLongArray versions = new AtomicLongArray(TypeDonnee.values().length);
+
+    // Actions appelées après chaque incrément d'un type (donc après validation)
+    private final Map<TypeDonnee, List<Runnable>> abonnes = new EnumMap<>(TypeDonnee.class);
+
+    public VersionsDonnees() {
+        for (TypeDonnee type : TypeDonnee.values()) {
+            abonnes.put(type, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    // Les compteurs repartent de zéro à chaque démarrage: l'époque distingue les ETag de deux exécutions
+    private final String epoque = Long.toString(System.currentTimeMillis(), 36);
+
+    /**
+     * Signale la modification d'un type de donnée. Dans une transaction, l'incrément est différé
+     * après validation (une seule fois par type et par transaction); il est ignoré en cas d'annulation.
+     */
+    public void modifie(TypeDonnee type) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+                || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            incrementer(type);
+            return;
+        }
+        // Les synchronisations suivent la suspension/reprise des transactions imbriquées (REQUIRES_NEW)
+        for (TransactionSynchronization synchronisation : TransactionSynchronizationManager.getSynchronizations()) {
+            if (synchronisation instanceof IncrementApresValidation increment && increment.compteurs() == this) {
+                increment.types.add(type);
+                return;
+            }
+        }
+        IncrementApresValidation increment = new IncrementApresValidation();
+        increment.types.add(type);
+        TransactionSynchronizationManager.registerSynchronization(increment);
+    }
+
+    /**
+     * Appelle l'action après chaque changement de version du type, dans le thread qui valide la
+     * transaction: l'action doit être brève (par exemple confier un recalcul à un autre thread).
+     */
+    public void abonner(TypeDonnee type, Runnable action) {
+        abonnes.get(type).add(action);
+    }
+
+    private void incrementer(TypeDonnee type) {
+        versions.incrementAndGet(type.ordinal());
+        abonnes.get(type).forEach(Runnable::run);
+    }
+
+    public long version(TypeDonnee type) {
+        return versions.get(type.ordinal());
+    }
+
+    /**
+     * Versions courantes des types demandés, dans l'ordre de l'énumération.
+     */
+    public long[] versions(Set<TypeDonnee> types) {
+        long[] resultat = new long[types.size()];
+        int i = 0;
+        for (TypeDonnee type : types) {
+            resultat[i++] = version(type);
+        }
+        return resultat;
+    }
+
+    /**
+     * ETag faible des données des types demandés: il change dès qu'une de ces données est modifiée.
+     * À lire avant d'exécuter la requête, pour qu'une écriture concurrente ne puisse que rendre l'ETag périmé.
+     */
+    public String etag(TypeDonnee... types) {
+        StringBuilder etag = new StringBuilder("W/\"").append(epoque);
+        for (TypeDonnee type : types) {
+            etag.append('-').append(version(type));
+        }
+        return etag.append('"').toString();
+    }
+
+    /**
+     * ETag faible d'une donnée calculée à une version lue d'un seul type: identique à
+     * {@link #etag(TypeDonnee...)} pour ce type tant que la version n'a pas changé.
+     */
+    public String etag(long version) {
+        return "W/\"" + epoque + '-' + version + '"';
+    }
+
+    private class IncrementApresValidation implements TransactionSynchronization {
+        private final Set<TypeDonnee> types = EnumSet.noneOf(TypeDonnee.class);
+
+        VersionsDonnees compteurs() {
+            return VersionsDonnees.this;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            if (status == STATUS_COMMITTED) {
+                types.forEach(VersionsDonnees.this::incrementer);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.ecomub.stocks.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare le tableau croisé dense {@link PivotQuantites} à l'ancien rapport par localisation
+ * (une Map par ligne produit, quantités en Integer), construction et sérialisation JSON comprises.
+ *
+ * Hors tests unitaires: lancer {@link #main} depuis l'IDE, ou
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.ecomub.stocks.model.PivotQuantitesBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PivotQuantitesBenchmark {
+
+    @Param({"20"})
+    private int nombreStocks;
+
+    @Param({"2000", "20000"})
+    private int nombreProduits;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private List<LigneRapportLocalisation> lignes;
+
+    @Setup
+    public void preparer() {
+        // Une localisation, chaque produit présent dans ~60 % des stocks, lignes triées par référence
+        Random aleatoire = new Random(42);
+        lignes = new ArrayList<>();
+        for (long produit = 1; produit <= nombreProduits; produit++) {
+            for (long stock = 1; stock <= nombreStocks; stock++) {
+                if (aleatoire.nextInt(10) < 6) {
+                    lignes.add(new LigneRapportLocalisation(stock, "Stock " + stock, "Kinshasa", "RDC",
+                            produit, (int) produit, "Produit " + produit, aleatoire.nextInt(500)));
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] matriceDense() throws Exception {
+        PivotQuantites pivot = new PivotQuantites();
+        for (LigneRapportLocalisation ligne : lignes) {
+            pivot.ajouter(ligne.getStockId(), ligne.getStockNom(), ligne.getProduitId(),
+                    ligne.getProduitReference(), ligne.getProduitNom(), ligne.getQuantite());
+        }
+        return objectMapper.writeValueAsBytes(pivot.figer());
+    }
+
+    @Benchmark
+    public byte[] mapsParLigne() throws Exception {
+        // Reprise de l'implémentation précédente (StockService.LocalisationRapport)
+        Map<String, Long> stockIdParNom = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<Long, Object[]> produits = new LinkedHashMap<>();
+        for (LigneRapportLocalisation ligne : lignes) {
+            stockIdParNom.putIfAbsent(ligne.getStockNom(), ligne.getStockId());
+            Object[] produit = produits.computeIfAbsent(ligne.getProduitId(),
+                    id -> new Object[]{ligne.getProduitReference(), ligne.getProduitNom(), new HashMap<Long, Integer>()});
+            @SuppressWarnings("unchecked")
+            Map<Long, Integer> quantitesParStock = (Map<Long, Integer>) produit[2];
+            quantitesParStock.putIfAbsent(ligne.getStockId(), ligne.getQuantite());
+        }
+
+        List<Map<String, Object>> productRows = new ArrayList<>(produits.size());
+        for (Object[] produit : produits.values()) {
+            @SuppressWarnings("unchecked")
+            Map<Long, Integer> quantitesParStock = (Map<Long, Integer>) produit[2];
+            Map<String, Integer> quantities = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> stock : stockIdParNom.entrySet()) {
+                quantities.put(stock.getKey(), quantitesParStock.getOrDefault(stock.getValue(), 0));
+            }
+            Map<String, Object> productRow = new HashMap<>();
+            productRow.put("ref", produit[0]);
+            productRow.put("nom", produit[1]);
+            productRow.put("quantities", quantities);
+            productRows.add(productRow);
+        }
+        Map<String, Object> locationData = new HashMap<>();
+        locationData.put("stocks", new ArrayList<>(stockIdParNom.keySet()));
+        locationData.put("products", productRows);
+        return objectMapper.writeValueAsBytes(locationData);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PivotQuantitesBenchmark.class.getSimpleName()).build()).run();
+    }
+}